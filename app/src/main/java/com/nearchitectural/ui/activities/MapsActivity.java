@@ -23,6 +23,7 @@ import androidx.databinding.DataBindingUtil;
 import androidx.drawerlayout.widget.DrawerLayout;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
+import androidx.fragment.app.FragmentTransaction;
 
 import com.google.android.material.navigation.NavigationView;
 import com.nearchitectural.R;
@@ -34,13 +35,15 @@ import com.nearchitectural.ui.fragments.MapFragment;
 import com.nearchitectural.ui.fragments.SettingsFragment;
 import com.nearchitectural.ui.fragments.TimelineFragment;
 import com.nearchitectural.utilities.CurrentCoordinates;
+import com.nearchitectural.utilities.LocationRepository;
+import com.nearchitectural.utilities.ReportRepository;
 import com.nearchitectural.utilities.Settings;
 import com.nearchitectural.utilities.SettingsManager;
 
 
 /* Author:  Kristiyan Doykov, Joel Bell-Wilding
  * Since:   10/12/19
- * Version: 1.2
+ * Version: 1.5
  * Purpose: Handle initialisation of application, and events and presentation of locations on Maps home screen
  */
 public class MapsActivity extends AppCompatActivity implements NavigationView.OnNavigationItemSelectedListener {
@@ -66,6 +69,10 @@ public class MapsActivity extends AppCompatActivity implements NavigationView.On
         // Instantiate settings singleton with user's saved settings for use across child fragments
         final SettingsManager settingsManager = new SettingsManager(getApplicationContext());
         settingsManager.retrieveSettings();
+        // Restore saved locations and retrieve the latest locations from the database (once per application instance)
+        LocationRepository.getInstance().initialise(getApplicationContext());
+        // Restore the report search index and index any reports changed since it was saved
+        ReportRepository.getInstance().initialise(getApplicationContext());
 
         // Apply user's chosen font size across activity and child fragments
         getTheme().applyStyle(Settings.getInstance().getFontSize(), true);
@@ -145,9 +152,9 @@ public class MapsActivity extends AppCompatActivity implements NavigationView.On
             }
         }
 
-        // Opens the appropriate fragment (Map by default)
-        fragmentManager.beginTransaction().replace(R.id.fragment_container,
-                fragmentToOpen).commit();
+        // Opens the appropriate fragment (Map by default, tagged so it can be found when hidden)
+        fragmentManager.beginTransaction().replace(R.id.fragment_container, fragmentToOpen,
+                fragmentToOpen instanceof MapFragment ? MapFragment.TAG : null).commit();
     }
 
     @Override
@@ -306,34 +313,59 @@ public class MapsActivity extends AppCompatActivity implements NavigationView.On
         switch (item.getItemId()) {
 
             case R.id.nav_timeline:
-                fragmentManager.beginTransaction().replace(R.id.fragment_container,
-                        new TimelineFragment()).addToBackStack(TimelineFragment.TAG).commit();
+                openFragment(new TimelineFragment(), TimelineFragment.TAG);
                 break;
 
             case R.id.nav_map:
-                fragmentManager.beginTransaction().replace(R.id.fragment_container,
-                        new MapFragment(false)).addToBackStack(MapFragment.TAG).commit();
+                openMap();
                 break;
 
             case R.id.nav_settings:
-                fragmentManager.beginTransaction().replace(R.id.fragment_container,
-                        new SettingsFragment()).addToBackStack(SettingsFragment.TAG).commit();
+                openFragment(new SettingsFragment(), SettingsFragment.TAG);
                 break;
 
             case R.id.nav_info:
-                fragmentManager.beginTransaction().replace(R.id.fragment_container,
-                        new AboutFragment()).addToBackStack(AboutFragment.TAG).commit();
+                openFragment(new AboutFragment(), AboutFragment.TAG);
                 break;
 
             case R.id.nav_help:
-                fragmentManager.beginTransaction().replace(R.id.fragment_container,
-                        new HelpFragment()).addToBackStack(HelpFragment.TAG).commit();
+                openFragment(new HelpFragment(), HelpFragment.TAG);
                 break;
         }
         drawer.closeDrawer(GravityCompat.START);
         return true;
     }
 
+    /* Opens a fragment in place of the active one (adding the change to the back stack under the
+     * provided tag). The map is hidden rather than replaced so that its markers are kept, and only
+     * the markers affected by any settings changes are updated when the user returns to it. Other
+     * pages are removed individually, as replacing them would also remove the hidden map */
+    public void openFragment(Fragment fragment, String tag) {
+        Fragment activeFragment = fragmentManager.findFragmentById(R.id.fragment_container);
+        FragmentTransaction transaction = fragmentManager.beginTransaction();
+        if (activeFragment instanceof MapFragment) {
+            transaction.hide(activeFragment);
+        } else if (activeFragment != null) {
+            transaction.remove(activeFragment);
+        }
+        transaction.add(R.id.fragment_container, fragment, tag).addToBackStack(tag).commit();
+    }
+
+    // Returns to the map, reusing the hidden map beneath the active page if there is one
+    private void openMap() {
+        Fragment activeFragment = fragmentManager.findFragmentById(R.id.fragment_container);
+        Fragment hiddenMap = fragmentManager.findFragmentByTag(MapFragment.TAG);
+        if (activeFragment instanceof MapFragment) {
+            return; // Map is already shown
+        }
+        if (activeFragment != null && hiddenMap != null && hiddenMap.isAdded() && hiddenMap.isHidden()) {
+            fragmentManager.beginTransaction().remove(activeFragment).show(hiddenMap)
+                    .addToBackStack(MapFragment.TAG).commit();
+        } else {
+            openFragment(new MapFragment(false), MapFragment.TAG);
+        }
+    }
+
     /* Starts search activity when the magnifying glass icon in the action bar is tapped  */
     public void openSearch(View view) {
         Intent myIntent = new Intent(MapsActivity.this, SearchableActivity.class);
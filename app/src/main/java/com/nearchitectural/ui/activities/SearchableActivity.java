@@ -22,42 +22,73 @@ import androidx.appcompat.widget.Toolbar;
 import androidx.core.view.GravityCompat;
 import androidx.databinding.DataBindingUtil;
 import androidx.drawerlayout.widget.DrawerLayout;
+import androidx.fragment.app.Fragment;
 import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProviders;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.google.android.gms.maps.model.LatLng;
 import com.google.android.material.navigation.NavigationView;
 import com.google.android.material.slider.Slider;
 import com.nearchitectural.R;
 import com.nearchitectural.databinding.ActivitySearchBinding;
 import com.nearchitectural.databinding.ActivitySearchLandscapeBinding;
 import com.nearchitectural.ui.adapters.LocationSearchResultAdapter;
+import com.nearchitectural.ui.fragments.OptionsDialogFragment;
 import com.nearchitectural.ui.fragments.TagSelectorFragment;
 import com.nearchitectural.ui.models.LocationModel;
 import com.nearchitectural.ui.models.SearchResultsModel;
+import com.nearchitectural.utilities.AppExecutors;
 import com.nearchitectural.utilities.CurrentCoordinates;
-import com.nearchitectural.utilities.Filter;
+import com.nearchitectural.utilities.FilterCriteria;
+import com.nearchitectural.utilities.FilterEngine;
+import com.nearchitectural.utilities.FilterResultCache;
+import com.nearchitectural.utilities.FilterResults;
+import com.nearchitectural.utilities.LocationRepository;
+import com.nearchitectural.utilities.ReportRepository;
 import com.nearchitectural.utilities.Settings;
+import com.nearchitectural.utilities.SortOrder;
+import com.nearchitectural.utilities.SortRanks;
 import com.nearchitectural.utilities.TagID;
 import com.nearchitectural.utilities.TagMapper;
-import com.nearchitectural.utilities.comparators.AlphabeticComparator;
-import com.nearchitectural.utilities.comparators.ShortestDistanceComparator;
+import com.nearchitectural.utilities.TopKRanker;
 import com.nearchitectural.utilities.models.Location;
+import com.nearchitectural.utilities.search.ReportIndex;
+import com.nearchitectural.utilities.search.SearchIndex;
+import com.nearchitectural.utilities.search.SearchScheduler;
+import com.nearchitectural.utilities.spatial.SpatialIndex;
 
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 /* Author:  Kristyan Doykov, Joel Bell-Wilding
  * Since:   12/12/19
- * Version: 1.2
+ * Version: 2.4
  * Purpose: Activity which handles searching through list of locations through numerous approaches
  *          i.e. text search, tag filtration, distance to user
  */
 public class SearchableActivity extends AppCompatActivity implements NavigationView.OnNavigationItemSelectedListener {
 
     public static final String TAG = "SearchableActivity"; // Tag used for logging status of application
+    private static final long INPUT_DEBOUNCE_MILLIS = 150; // Pause in typing/sliding after which results update
+    private static final int PAGE_LOAD_THRESHOLD = 10; // Results from the end at which the next page is shown
+
+    // Reads the location and distance held by a location card when filtering and ranking
+    private static final FilterEngine.ItemAccessor<LocationModel> MODEL_ACCESSOR =
+            new FilterEngine.ItemAccessor<LocationModel>() {
+                @Override
+                public Location getLocation(LocationModel model) {
+                    return model.getLocationInfo();
+                }
+
+                @Override
+                public double getDistance(LocationModel model) {
+                    return model.getMDistanceFromCurrentPos();
+                }
+            };
 
     // LAYOUT ELEMENTS
     private RecyclerView searchResultsRecyclerView;
@@ -70,14 +101,20 @@ public class SearchableActivity extends AppCompatActivity implements NavigationV
     private TextView actionBarTitle;
     private TextView resultsCount;
     private Toolbar searchViewToolbar;
+    private SearchView searchView; // Search field in the action bar (null until the options menu is created)
+    private Menu optionsMenu; // Options menu holding the sort orders (null until created)
     private SearchResultsModel searchResults; // UI model for list of location search results
     private LocationSearchResultAdapter searchResultsAdapter; // Adapter for filtering search results
 
     private List<LocationModel> mModels; // Location cards
+    private SortRanks<LocationModel> mSortRanks; // Rank of each location card in every sort order
     private double distanceSelected; // The user-selected distance outside of which locations will not be displayed
     private String currentQuery; // The string value stored in the text search bar
     private List<Location> locationsToShow; // List of all locations to show
     private TagMapper searchTagMapper; // Utility object used to aid in handling search by tag
+    private FilterEngine<LocationModel> filterEngine; // Filters location cards by the search criteria (search thread only)
+    private SearchScheduler<FilterResults<LocationModel>> searchScheduler; // Runs filters off the main thread
+    private Map<TagID, Integer> tagCounts; // Number of the shown results with each tag (null until filtered)
 
     /* Variables used to determine if search results must be updated (i.e. if a
     * current value is different from its 'last' value, search results need updating */
@@ -169,6 +206,18 @@ public class SearchableActivity extends AppCompatActivity implements NavigationV
         // Sets all active search tags to false (i.e. not activated by the user)
         searchTagMapper = new TagMapper();
 
+        // Location cards are filtered by the location and distance they hold
+        filterEngine = new FilterEngine<>(MODEL_ACCESSOR);
+
+        // Filters run on the search thread and only the newest filtered results are shown
+        searchScheduler = new SearchScheduler<>(AppExecutors.getInstance().search(),
+                new SearchScheduler.OnResultListener<FilterResults<LocationModel>>() {
+                    @Override
+                    public void onResult(FilterResults<LocationModel> filterResults) {
+                        showFilteredResults(filterResults);
+                    }
+                });
+
         /* Set listeners to be able to apply tags when the user checks/unchecks a checkbox */
         likedLocationsCheckBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
             @Override
@@ -188,9 +237,9 @@ public class SearchableActivity extends AppCompatActivity implements NavigationV
 
         // If locations are granted order by results by distance to user, else order alphabetically by name
         if (Settings.getInstance().locationPermissionsAreGranted()) {
-            searchResultsAdapter = new LocationSearchResultAdapter(this, new ShortestDistanceComparator());
+            searchResultsAdapter = new LocationSearchResultAdapter(this, SortOrder.NEAREST_FIRST);
         } else {
-            searchResultsAdapter = new LocationSearchResultAdapter(this, new AlphabeticComparator());
+            searchResultsAdapter = new LocationSearchResultAdapter(this, SortOrder.ALPHABETICAL);
         }
 
         // Query string is empty in the beginning
@@ -198,6 +247,18 @@ public class SearchableActivity extends AppCompatActivity implements NavigationV
         // Set adapter for recycler view
         searchResultsRecyclerView.setAdapter(searchResultsAdapter);
 
+        // Results are shown a page at a time, so the next page is shown as the user nears the end
+        searchResultsRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                GridLayoutManager layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+                if (layoutManager != null && layoutManager.findLastVisibleItemPosition()
+                        >= searchResultsAdapter.getItemCount() - PAGE_LOAD_THRESHOLD) {
+                    searchResultsAdapter.loadNextPage();
+                }
+            }
+        });
+
         // Retrieve locations from database using live data (i.e. results will appear when retrieved from database)
         locationsToShow = new ArrayList<>();
         searchResults.getLocationsToShow().observe(this, new Observer<List<Location>>() {
@@ -207,6 +268,14 @@ public class SearchableActivity extends AppCompatActivity implements NavigationV
             }
         });
 
+        // Ranks of the location models in each sort order (updated just before the models they rank)
+        searchResults.getSortRanks().observe(this, new Observer<SortRanks<LocationModel>>() {
+            @Override
+            public void onChanged(SortRanks<LocationModel> sortRanks) {
+                mSortRanks = sortRanks;
+            }
+        });
+
         // Create locations models from database using live data (i.e. results will appear when retrieved from database)
         mModels = new ArrayList<>();
         searchResults.getLocationModels().observe(this, new Observer<List<LocationModel>>() {
@@ -217,9 +286,6 @@ public class SearchableActivity extends AppCompatActivity implements NavigationV
             }
         });
 
-        // Add all models to the search results adapter
-        searchResultsAdapter.add(mModels);
-
         /* When the user uses the slider to choose max distance, update the list of locations shown */
         slider.addOnChangeListener(new Slider.OnChangeListener() {
             @Override
@@ -243,7 +309,8 @@ public class SearchableActivity extends AppCompatActivity implements NavigationV
                     // Slider not moved - show all locations
                     sliderText.setText(R.string.slider_unset_text);
                 }
-                filterAndRearrange();
+                // Results are updated once the slider stops moving
+                scheduleFilter(INPUT_DEBOUNCE_MILLIS);
             }
         });
 
@@ -262,7 +329,7 @@ public class SearchableActivity extends AppCompatActivity implements NavigationV
         // Associate searchable configuration with the SearchView
         MenuItem searchItem = menu.findItem(R.id.search_item);
         SearchManager searchManager = (SearchManager) getSystemService(Context.SEARCH_SERVICE);
-        SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView = (SearchView) searchItem.getActionView();
 
         // Make sure search field takes up whole action bar even in landscape
         searchView.setMaxWidth(Integer.MAX_VALUE);
@@ -273,7 +340,8 @@ public class SearchableActivity extends AppCompatActivity implements NavigationV
         SearchView.OnQueryTextListener queryTextListener = new SearchView.OnQueryTextListener() {
             public boolean onQueryTextChange(String newText) {
                 currentQuery = newText;
-                filterAndRearrange();
+                // Results are updated once the user stops typing
+                scheduleFilter(INPUT_DEBOUNCE_MILLIS);
                 return true;
             }
 
@@ -286,10 +354,109 @@ public class SearchableActivity extends AppCompatActivity implements NavigationV
         // Use the above custom query Listener
         searchView.setOnQueryTextListener(queryTextListener);
 
+        optionsMenu = menu;
+        updateSortMenu();
+
         // Returns true, because we are using a custom listener
         return true;
     }
 
+    /* Handles a search submitted from the search field or a chosen suggestion (the activity is single top,
+     * so the search is delivered here rather than opening another search screen) */
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        if (Intent.ACTION_SEARCH.equals(intent.getAction()) && searchView != null) {
+            // Setting the text updates the results through the query listener
+            searchView.setQuery(intent.getStringExtra(SearchManager.QUERY), false);
+            searchView.clearFocus();
+        }
+    }
+
+    /* Handles selection of a sort order from the options menu */
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        SortOrder sortOrder;
+        switch (item.getItemId()) {
+            case R.id.sort_relevance:
+                sortOrder = SortOrder.RELEVANCE;
+                break;
+            case R.id.sort_alphabetical:
+                sortOrder = SortOrder.ALPHABETICAL;
+                break;
+            case R.id.sort_nearest:
+                sortOrder = SortOrder.NEAREST_FIRST;
+                break;
+            case R.id.sort_newest:
+                sortOrder = SortOrder.NEWEST_FIRST;
+                break;
+            case R.id.sort_oldest:
+                sortOrder = SortOrder.OLDEST_FIRST;
+                break;
+            case R.id.sort_most_liked:
+                sortOrder = SortOrder.MOST_LIKED;
+                break;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+        item.setChecked(true);
+        // Results are rearranged by their precomputed ranks or relevance, then the list returns to the top
+        searchResultsAdapter.setSortOrder(sortOrder, new Runnable() {
+            @Override
+            public void run() {
+                searchResultsRecyclerView.scrollToPosition(0);
+            }
+        });
+        return true;
+    }
+
+    /* Ticks the current sort order in the options menu. Results can only be sorted by relevance while
+     * searching and by distance if location is enabled (the menu is updated in place, as recreating
+     * it would also recreate the search field) */
+    private void updateSortMenu() {
+        if (optionsMenu == null) {
+            return;
+        }
+        optionsMenu.findItem(R.id.sort_relevance).setVisible(searchResultsAdapter.canSortByRelevance());
+        optionsMenu.findItem(R.id.sort_nearest).setVisible(Settings.getInstance().locationPermissionsAreGranted());
+        optionsMenu.findItem(getSortMenuItemID(searchResultsAdapter.getSortOrder())).setChecked(true);
+    }
+
+    // Returns the ID of the options menu item which selects the provided sort order
+    private static int getSortMenuItemID(SortOrder sortOrder) {
+        switch (sortOrder) {
+            case RELEVANCE:
+                return R.id.sort_relevance;
+            case NEAREST_FIRST:
+                return R.id.sort_nearest;
+            case NEWEST_FIRST:
+                return R.id.sort_newest;
+            case OLDEST_FIRST:
+                return R.id.sort_oldest;
+            case MOST_LIKED:
+                return R.id.sort_most_liked;
+            default:
+                return R.id.sort_alphabetical;
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        // Results of any filter still running are no longer needed
+        searchScheduler.cancel();
+        // Log how often filters were answered from the result cache (read on the search thread which owns it)
+        final FilterResultCache<FilterResults<LocationModel>> resultCache = filterEngine.getResultCache();
+        AppExecutors.getInstance().search().execute(new Runnable() {
+            @Override
+            public void run() {
+                Log.d(TAG, "Filter result cache: " + resultCache.getHitCount() + " hits, "
+                        + resultCache.getMissCount() + " misses");
+            }
+        });
+        super.onDestroy();
+    }
+
     @Override
     protected void onPause() {
 
@@ -323,8 +490,8 @@ public class SearchableActivity extends AppCompatActivity implements NavigationV
         } else if ((lastLatitude != CurrentCoordinates.getCoords().latitude
                 || lastLongitude != CurrentCoordinates.getCoords().longitude)
                 && searchResults != null) {
-            // Update all locations with new distances
-            searchResults.refineSearchResults(locationsToShow);
+            // Update all locations with new distances (calculated locally as locations are unchanged)
+            searchResults.updateDistances();
         }
         super.onResume();
     }
@@ -348,13 +515,15 @@ public class SearchableActivity extends AppCompatActivity implements NavigationV
     /* Handle the popup for more tags*/
     public void openTagSelector(View view) {
         // Remove tags that are handled through separate UI elements
-        final boolean likedByYou = searchTagMapper.getTagValuesMap().get(TagID.LIKED_BY_YOU);
-        final boolean wheelchairAccessible = searchTagMapper.getTagValuesMap().get(TagID.WHEELCHAIR_ACCESSIBLE);
+        final boolean likedByYou = searchTagMapper.getTagValue(TagID.LIKED_BY_YOU);
+        final boolean wheelchairAccessible = searchTagMapper.getTagValue(TagID.WHEELCHAIR_ACCESSIBLE);
         searchTagMapper.removeTagFromMapper(TagID.LIKED_BY_YOU);
         searchTagMapper.removeTagFromMapper(TagID.WHEELCHAIR_ACCESSIBLE);
 
         // Create an instance of the tag selector fragment and show it
         TagSelectorFragment tagSelector = new TagSelectorFragment(searchTagMapper);
+        // Each tag shows how many of the current results would remain if it were selected
+        tagSelector.setTagCounts(tagCounts);
         tagSelector.setDismissListener(new DialogInterface.OnDismissListener() {
             @Override
             public void onDismiss(DialogInterface dialog) {
@@ -372,18 +541,69 @@ public class SearchableActivity extends AppCompatActivity implements NavigationV
         searchTagMapper.addTagToMapper(tag, isActive);
     }
 
-    /* Use Filter with current search criteria and update search results */
+    /* Use filter engine with current search criteria and update search results (as soon as possible) */
     public void filterAndRearrange() {
-        List<LocationModel> filteredModelList =
-                Filter.apply(mModels, currentQuery, distanceSelected,
-                        searchTagMapper.getTagValuesMap());
-        searchResultsAdapter.replaceAll(filteredModelList);
-        searchResultsRecyclerView.scrollToPosition(0);
+        scheduleFilter(0);
+    }
+
+    /* Filters the location cards with the current search criteria on the search thread once no other
+     * filter has been requested for the provided delay. Only the newest filter's results are shown */
+    private void scheduleFilter(long delayMillis) {
+        // Selected distance is converted to meters (distances of 0 or the maximum value place no restriction)
+        int conversionRate = Settings.getInstance().getDistanceUnit().getConversionRate();
+        double maxDistance = distanceSelected * conversionRate;
+        // Distances are rounded to a step of the slider (one distance unit) so each step is one cached filter
+        final FilterCriteria criteria =
+                new FilterCriteria(currentQuery, maxDistance, conversionRate, searchTagMapper.getActiveTagBits());
+        final List<LocationModel> models = mModels;
+        final SearchIndex searchIndex = LocationRepository.getInstance().getSearchIndex();
+        // Locations also match if the text of their report contains the words of the query
+        final ReportIndex reportIndex = ReportRepository.getInstance().getReportIndex();
+        // Locations within the selected distance are found from the spatial index rather than checked one by one
+        final SpatialIndex spatialIndex = LocationRepository.getInstance().getSpatialIndex();
+        final LatLng userPosition = CurrentCoordinates.getCoords();
+
+        searchScheduler.schedule(new SearchScheduler.SearchTask<FilterResults<LocationModel>>() {
+            @Override
+            public FilterResults<LocationModel> run() {
+                return filterEngine.filterWithTagCounts(models, criteria, searchIndex, reportIndex,
+                        spatialIndex, userPosition.latitude, userPosition.longitude);
+            }
+        }, delayMillis);
+    }
+
+    // Replaces the search results shown with the filtered location cards
+    private void showFilteredResults(FilterResults<LocationModel> filterResults) {
+        List<LocationModel> filteredModelList = filterResults.getItems();
+        // While searching, the cards can also be ranked by how relevant they are to the search text
+        List<ReportIndex.Match> reportMatches = filterResults.getReportMatches();
+        TopKRanker.Scorer<LocationModel> relevanceScorer = reportMatches != null
+                ? TopKRanker.relevance(MODEL_ACCESSOR, reportMatches) : null;
+        // Only the changed cards are updated, after which the list returns to the top
+        searchResultsAdapter.replaceAll(filteredModelList, mSortRanks, relevanceScorer, new Runnable() {
+            @Override
+            public void run() {
+                searchResultsRecyclerView.scrollToPosition(0);
+            }
+        });
+        // Starting or finishing a search may have changed the sort order
+        updateSortMenu();
 
         // Edit the number of matches upon filtering
         String resultsText = getResources().getQuantityString(R.plurals.search_results_count,
-                searchResultsAdapter.getItemCount(), searchResultsAdapter.getItemCount());
+                filteredModelList.size(), filteredModelList.size());
         resultsCount.setText(resultsText);
+
+        // Update the tag counts of any open tag dialog to match the results
+        tagCounts = filterResults.getTagCounts();
+        Fragment tagSelector = getSupportFragmentManager().findFragmentByTag("TagSelectorFragment");
+        if (tagSelector instanceof TagSelectorFragment) {
+            ((TagSelectorFragment) tagSelector).setTagCounts(tagCounts);
+        }
+        Fragment optionsDialog = getSupportFragmentManager().findFragmentByTag("OptionsDialogFragment");
+        if (optionsDialog instanceof OptionsDialogFragment) {
+            ((OptionsDialogFragment) optionsDialog).setTagCounts(tagCounts);
+        }
     }
 
     /* If the back button is pressed */
@@ -5,100 +5,196 @@ import android.view.LayoutInflater;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
-import androidx.recyclerview.widget.SortedList;
 
 import com.nearchitectural.databinding.ListItemBinding;
 import com.nearchitectural.ui.models.LocationModel;
+import com.nearchitectural.utilities.AppExecutors;
+import com.nearchitectural.utilities.SortOrder;
+import com.nearchitectural.utilities.SortRanks;
+import com.nearchitectural.utilities.TopKRanker;
 
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.List;
 
 /* Author:  Kristiyan Doykov
  * Since:   13/12/19
- * Version: 1.0
+ * Version: 1.4
  * Purpose: Handles operations for the search results (i.e. a list of locations) for the search
- *          activity
+ *          activity. Results are shown a page at a time, in the order of their precomputed ranks:
+ *          only the first page is selected when results are replaced, and further pages are
+ *          selected as they are requested. Pages are selected and compared with the results shown
+ *          on a background thread, and only the resulting insertions, removals, moves and changes
+ *          are applied. While the user is searching, results are shown by relevance unless another
+ *          order is chosen
  */
 public class LocationSearchResultAdapter extends RecyclerView.Adapter<LocationSearchResultViewHolder> {
 
-    private final SortedList<LocationModel> mSortedList = new SortedList<>(LocationModel.class, new SortedList.Callback<LocationModel>() {
+    // Identifies location cards by location ID and only rebinds cards whose displayed values changed
+    private static final DiffUtil.ItemCallback<LocationModel> DIFF_CALLBACK = new DiffUtil.ItemCallback<LocationModel>() {
 
         @Override
-        public void onInserted(int position, int count) {
-            notifyItemRangeInserted(position, count);
+        public boolean areItemsTheSame(@NonNull LocationModel oldItem, @NonNull LocationModel newItem) {
+            return oldItem.getId().equals(newItem.getId());
         }
 
         @Override
-        public void onRemoved(int position, int count) {
-            notifyItemRangeRemoved(position, count);
+        public boolean areContentsTheSame(@NonNull LocationModel oldItem, @NonNull LocationModel newItem) {
+            return oldItem.hasSameContentsAs(newItem);
         }
+    };
 
-        @Override
-        public void onMoved(int fromPosition, int toPosition) {
-            notifyItemMoved(fromPosition, toPosition);
-        }
-
-        @Override
-        public int compare(LocationModel o1, LocationModel o2) {
-            return mComparator.compare(o1, o2);
-        }
-
-        @Override
-        public void onChanged(int position, int count) {
-            notifyItemRangeChanged(position, count);
-        }
-
-        @Override
-        public boolean areContentsTheSame(LocationModel oldItem, LocationModel newItem) {
-            return oldItem.equals(newItem);
-        }
+    private static final int PAGE_SIZE = 40; // Number of results shown at first and added by each further page
 
+    // Scores every model equally, so models without ranks are shown in the order provided
+    private static final TopKRanker.Scorer<LocationModel> UNRANKED_SCORER = new TopKRanker.Scorer<LocationModel>() {
         @Override
-        public boolean areItemsTheSame(LocationModel item1, LocationModel item2) {
-            return item1.getLocationInfo().getId().equals(item2.getLocationInfo().getId());
+        public double score(LocationModel model) {
+            return 0;
         }
-    });
+    };
 
+    private final AsyncListDiffer<LocationModel> mDiffer; // Computes and applies the changes between result lists
     private LayoutInflater mInflater; // Handles inflating the search results to the UI
-    private Comparator<LocationModel> mComparator; // Comparator used to sort the location models
-
-    public LocationSearchResultAdapter(Context context, Comparator<LocationModel> comparator) {
+    private SortOrder mSortOrder; // Order in which the location models are shown
+    private SortOrder mRankedSortOrder; // Last order chosen other than relevance (shown once searching stops)
+    private List<LocationModel> mModels; // Unsorted models last provided (shown once sorted)
+    private SortRanks<LocationModel> mSortRanks; // Ranks of the models last provided (may be null)
+    private TopKRanker.Scorer<LocationModel> mRelevanceScorer; // Relevance of the models to the search (null if none)
+    private int replaceGeneration; // Number of the newest list of results (older lists are not shown)
+    private boolean hasMorePages; // Flags that further results remain to be shown
+    private boolean pageRequested; // Flags that a further page is being selected
+    private TopKRanker<LocationModel> pager; // Selects pages of the newest results (search thread only)
+    private int pagerGeneration; // Number of the results the pager selects from (search thread only)
+
+    public LocationSearchResultAdapter(Context context, SortOrder sortOrder) {
         this.mInflater = LayoutInflater.from(context);
-        this.mComparator = comparator;
-        setHasStableIds(true);
+        this.mSortOrder = sortOrder;
+        this.mRankedSortOrder = sortOrder;
+        this.mModels = new ArrayList<>();
+        // Differences are computed on the search thread, after the search which produced the results
+        mDiffer = new AsyncListDiffer<>(new AdapterListUpdateCallback(this),
+                new AsyncDifferConfig.Builder<>(DIFF_CALLBACK)
+                        .setBackgroundThreadExecutor(AppExecutors.getInstance().search())
+                        .build());
     }
 
-    public void add(LocationModel model) {
-        mSortedList.add(model);
+    /* Replaces the results shown with the provided models, sorted by their ranks (models are shown in
+     * the order provided if no ranks are provided). A relevance scorer (null if the user is not
+     * searching) orders the models by relevance to the search, which is the order shown when a
+     * search starts. The models are sorted off the main thread and the callback (which may be null)
+     * runs once the changes have been applied. If the results are replaced again before then,
+     * these models are never shown and the callback does not run */
+    public void replaceAll(List<LocationModel> models, SortRanks<LocationModel> sortRanks,
+                           TopKRanker.Scorer<LocationModel> relevanceScorer, Runnable commitCallback) {
+        if (relevanceScorer != null && mRelevanceScorer == null) {
+            mSortOrder = SortOrder.RELEVANCE;
+        } else if (relevanceScorer == null && mSortOrder == SortOrder.RELEVANCE) {
+            mSortOrder = mRankedSortOrder;
+        }
+        mModels = models;
+        mSortRanks = sortRanks;
+        mRelevanceScorer = relevanceScorer;
+        submitSorted(commitCallback);
     }
 
-    public void remove(LocationModel model) {
-        mSortedList.remove(model);
+    // Returns the order in which the location models are shown
+    public SortOrder getSortOrder() {
+        return mSortOrder;
     }
 
-    public void add(List<LocationModel> models) {
-        mSortedList.addAll(models);
+    // Determines if the current results can be sorted by relevance (i.e. the user is searching)
+    public boolean canSortByRelevance() {
+        return mRelevanceScorer != null;
     }
 
-    public void remove(List<LocationModel> models) {
-        mSortedList.beginBatchedUpdates();
-        for (LocationModel model : models) {
-            mSortedList.remove(model);
+    /* Shows the current results in the provided order (relevance only applies while searching). Only
+     * the ranks or scores of the results are compared, and the callback (which may be null) runs once
+     * the results have been rearranged */
+    public void setSortOrder(SortOrder sortOrder, Runnable commitCallback) {
+        if (sortOrder == SortOrder.RELEVANCE && mRelevanceScorer == null) {
+            return;
+        }
+        if (sortOrder != SortOrder.RELEVANCE) {
+            mRankedSortOrder = sortOrder;
+        }
+        if (sortOrder != mSortOrder) {
+            mSortOrder = sortOrder;
+            submitSorted(commitCallback);
         }
-        mSortedList.endBatchedUpdates();
     }
 
-    public void replaceAll(List<LocationModel> models) {
-        mSortedList.beginBatchedUpdates();
-        for (int i = mSortedList.size() - 1; i >= 0; i--) {
-            final LocationModel model = mSortedList.get(i);
-            if (!models.contains(model)) {
-                mSortedList.remove(model);
+    /* Shows the next page of results (if any remain and none is already being selected), e.g. once
+     * the user has scrolled near the end of the results shown */
+    public void loadNextPage() {
+
+        if (!hasMorePages || pageRequested) {
+            return;
+        }
+        pageRequested = true;
+        final int generation = replaceGeneration;
+        AppExecutors.getInstance().search().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != pagerGeneration) {
+                    return; // The results have since been replaced
+                }
+                final List<LocationModel> page = pager.nextPage(PAGE_SIZE);
+                final boolean hasMore = pager.hasMore();
+
+                AppExecutors.getInstance().mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == replaceGeneration) {
+                            List<LocationModel> shownModels = new ArrayList<>(mDiffer.getCurrentList());
+                            shownModels.addAll(page);
+                            hasMorePages = hasMore;
+                            pageRequested = false;
+                            mDiffer.submitList(shownModels);
+                        }
+                    }
+                });
             }
+        });
+    }
+
+    /* Selects the first page of the current models on the search thread and shows it if no newer
+     * models have been provided. Models are shown in the order provided if no ranks are provided */
+    private void submitSorted(final Runnable commitCallback) {
+
+        final int generation = ++replaceGeneration;
+        hasMorePages = false;
+        pageRequested = false;
+        final List<LocationModel> models = mModels;
+        final TopKRanker.Scorer<LocationModel> scorer;
+        if (mSortOrder == SortOrder.RELEVANCE) {
+            scorer = mRelevanceScorer;
+        } else {
+            scorer = mSortRanks != null ? mSortRanks.scorer(mSortOrder) : UNRANKED_SCORER;
         }
-        mSortedList.addAll(models);
-        mSortedList.endBatchedUpdates();
+        AppExecutors.getInstance().search().execute(new Runnable() {
+            @Override
+            public void run() {
+                pager = new TopKRanker<>(models, scorer);
+                pagerGeneration = generation;
+                final List<LocationModel> firstPage = pager.nextPage(PAGE_SIZE);
+                final boolean hasMore = pager.hasMore();
+
+                AppExecutors.getInstance().mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == replaceGeneration) {
+                            hasMorePages = hasMore;
+                            mDiffer.submitList(firstPage, commitCallback);
+                        }
+                    }
+                });
+            }
+        });
     }
 
     @NonNull
@@ -110,22 +206,17 @@ public class LocationSearchResultAdapter extends RecyclerView.Adapter<LocationSe
 
     @Override
     public void onBindViewHolder(LocationSearchResultViewHolder holder, int position) {
-        final LocationModel model = mSortedList.get(position);
+        final LocationModel model = mDiffer.getCurrentList().get(position);
         holder.performBind(model);
     }
 
     @Override
     public int getItemCount() {
-        return mSortedList.size();
+        return mDiffer.getCurrentList().size();
     }
 
     @Override
     public void onViewAttachedToWindow(@NonNull LocationSearchResultViewHolder holder) {
         super.onViewAttachedToWindow(holder);
     }
-
-    @Override
-    public long getItemId(int position) {
-        return mSortedList.get(position).hashCode();
-    }
 }
\ No newline at end of file
@@ -2,13 +2,11 @@ package com.nearchitectural.ui.adapters;
 
 import android.content.Context;
 import android.graphics.drawable.Drawable;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.bumptech.glide.load.DataSource;
@@ -18,27 +16,21 @@ import com.bumptech.glide.request.target.Target;
 import com.bumptech.glide.signature.ObjectKey;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.model.Marker;
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
-import com.google.firebase.firestore.QuerySnapshot;
 import com.nearchitectural.GlideApp;
+import com.nearchitectural.GlideRequest;
 import com.nearchitectural.R;
 import com.nearchitectural.utilities.Settings;
+import com.nearchitectural.utilities.models.Location;
 
 /* Author:  Kristiyan Doykov
  * Since:   13/12/19
- * Version: 1.0
+ * Version: 1.3
  * Purpose: Handles the retrieval of information for and rendering of a custom information
  *          window on the Map Activity when a marker is tapped
  */
 public class MapMarkerWindowAdapter implements GoogleMap.InfoWindowAdapter {
 
-    private final String TAG = "MapMarkerWindowAdapter"; // Tag used for logging status of application
-
     private final View window; // The window view itself
-    private FirebaseFirestore db; // Database reference for retrieving information/image to display
     private ImageView thumbnailImage; // View holding the thumbnail image
     private String thumbnailURL; // The URL hosting the thumbnail image
 
@@ -48,7 +40,6 @@ public class MapMarkerWindowAdapter implements GoogleMap.InfoWindowAdapter {
 
     // Constructor initialises necessary attributes
     public MapMarkerWindowAdapter(Context mContext) {
-        db = FirebaseFirestore.getInstance();
         window = LayoutInflater.from(mContext).inflate(R.layout.custom_info_panel, null);
     }
 
@@ -62,24 +53,11 @@ public class MapMarkerWindowAdapter implements GoogleMap.InfoWindowAdapter {
         TextView textViewTitle = view.findViewById(R.id.title);
         thumbnailImage = view.findViewById(R.id.picture);
 
-        // Get location thumbnail using marker name and display image
-        db.collection("locations").whereEqualTo("name", marker.getTitle())
-                .get()
-                .addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-                    @Override
-                    public void onComplete(@NonNull Task<QuerySnapshot> task) {
-                        if (task.isSuccessful()) {
-                            for (final QueryDocumentSnapshot document : task.getResult()) {
-                                // Get thumbnail URL from database
-                                thumbnailURL = (String) document.getData().get("thumbnail");
-                                setThumbnailURL(thumbnailURL);
-                                displayImage(context, marker);
-                            }
-                        } else {
-                            Log.d(TAG, "Error getting documents: ", task.getException());
-                        }
-                    }
-                });
+        // Get location thumbnail from the location carried by the marker and display image
+        if (marker.getTag() instanceof Location) {
+            setThumbnailURL(((Location) marker.getTag()).getThumbnailURL());
+            displayImage(context, marker);
+        }
 
         // Set window information
         textViewTitle.setText(title);
@@ -105,13 +83,12 @@ public class MapMarkerWindowAdapter implements GoogleMap.InfoWindowAdapter {
     // Handles the displaying of the thumbnail image associated with the location
     private void displayImage(Context context, final Marker marker) {
 
-        // Display and render thumbnail as an image inside window using URL
-        GlideApp.with(context.getApplicationContext())
-                .load(thumbnailURL)
-                .centerCrop()
-                .override(520, 520)
+        /* Display and render thumbnail as an image inside window using URL (set immediately when
+         * already in memory, otherwise a placeholder is shown and the window is re-rendered once the
+         * image has loaded) */
+        thumbnailRequest(context, thumbnailURL)
+                .placeholder(R.mipmap.ic_launcher_round)
                 .error(R.mipmap.ic_launcher_round)
-                .signature(new ObjectKey(thumbnailURL.hashCode()))
                 .listener(new RequestListener<Drawable>() {
                     @Override
                     public boolean onLoadFailed(@Nullable GlideException e, Object model, Target<Drawable> target, boolean isFirstResource) {
@@ -120,7 +97,8 @@ public class MapMarkerWindowAdapter implements GoogleMap.InfoWindowAdapter {
 
                     @Override
                     public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target, DataSource dataSource, boolean isFirstResource) {
-                        if (marker.isInfoWindowShown()) {
+                        // Images from memory are set while rendering, so only later loads need a re-render
+                        if (dataSource != DataSource.MEMORY_CACHE && marker.isInfoWindowShown()) {
                             marker.showInfoWindow();
                         }
                         return false;
@@ -130,6 +108,15 @@ public class MapMarkerWindowAdapter implements GoogleMap.InfoWindowAdapter {
 
     }
 
+    // Creates the request for a thumbnail (sized and signed so a re-render finds it in the memory cache)
+    private static GlideRequest<Drawable> thumbnailRequest(Context context, String url) {
+        return GlideApp.with(context.getApplicationContext())
+                .load(url)
+                .centerCrop()
+                .override(520, 520)
+                .signature(new ObjectKey(url.hashCode()));
+    }
+
     @Override
     public View getInfoWindow(Marker marker) {
         renderWindowText(marker, window);
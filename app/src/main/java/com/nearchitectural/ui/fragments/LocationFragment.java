@@ -31,7 +31,9 @@ import com.nearchitectural.databinding.FragmentLocationBinding;
 import com.nearchitectural.ui.activities.MapsActivity;
 import com.nearchitectural.ui.adapters.AllTagsAdapter;
 import com.nearchitectural.ui.adapters.LocationSlideshowAdapter;
+import com.nearchitectural.utilities.AppExecutors;
 import com.nearchitectural.utilities.DatabaseExtractor;
+import com.nearchitectural.utilities.LocationRepository;
 import com.nearchitectural.utilities.Settings;
 import com.nearchitectural.utilities.SettingsManager;
 import com.nearchitectural.utilities.TagID;
@@ -39,14 +41,12 @@ import com.nearchitectural.utilities.models.Location;
 import com.nearchitectural.utilities.models.Report;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 
 /* Author:  Kristiyan Doykov, Joel Bell-Wilding
  * Since:   20/01/20
- * Version: 1.2
+ * Version: 1.4
  * purpose: Presents information and images regarding a given location
  */
 public class LocationFragment extends Fragment {
@@ -165,7 +165,7 @@ public class LocationFragment extends Fragment {
                                 // Update settings with new liked location
                                 Settings.getInstance().addLikedLocation(location.getId());
                                 new SettingsManager(getContext()).saveSettings();
-                                location.getAllTags().put(TagID.LIKED_BY_YOU, true);
+                                location.setTagValue(TagID.LIKED_BY_YOU, true);
                             }
                         });
             }
@@ -186,7 +186,7 @@ public class LocationFragment extends Fragment {
                                 // Update settings by removing location from liked locations
                                 Settings.getInstance().removeLikedLocation(location.getId());
                                 new SettingsManager(getContext()).saveSettings();
-                                location.getAllTags().put(TagID.LIKED_BY_YOU, false);
+                                location.setTagValue(TagID.LIKED_BY_YOU, false);
                             }
                         });
             }
@@ -222,17 +222,17 @@ public class LocationFragment extends Fragment {
     }
 
     // Displays up to three active high priority tags alongside thumbnail image
-    private void displayImportantTags(Map<TagID, Boolean> tagValues) {
+    private void displayImportantTags(long tagBits) {
         // Cycle through each text view and set text to tag value and icon
         for (TextView tagTextView : tagsTextViews) {
             for (TagID tag : TagID.values())
-                if (tagValues.get(tag)) {
+                if ((tagBits & tag.bit()) != 0) {
                     tagTextView.setText(tag.displayName);
                     // Get icon associated with tag
                     int iconID = getResources().getIdentifier(tag.iconName,
                             "drawable", getActivity().getPackageName());
                     tagTextView.setCompoundDrawablesWithIntrinsicBounds(iconID, 0, 0, 0);
-                    tagValues.put(tag, false); // Flag that tag no longer needs to be displayed
+                    tagBits &= ~tag.bit(); // Flag that tag no longer needs to be displayed
                     break;
                 }
             // Hide text view if less than three tags are active
@@ -241,31 +241,29 @@ public class LocationFragment extends Fragment {
             }
         }
         // Hide "more tags" button if exactly three tags are active
-        if (!tagValues.containsValue(true)) {
+        if (tagBits == 0) {
             allTagsIcon.setVisibility(View.GONE);
         }
     }
 
-    // Retrieves location from database using location ID and handles appropriate UI bindings
+    // Retrieves location using location ID (from the shared cache where possible) and handles appropriate UI bindings
     private void retrieveLocation() {
-        db.collection("locations")
-                .document(locationID)
-                .get()
-                .addOnCompleteListener(new OnCompleteListener<DocumentSnapshot>() {
+        LocationRepository.getInstance().retrieveLocation(locationID,
+                new LocationRepository.OnLocationRetrievedListener() {
                     @Override
-                    public void onComplete(@NonNull Task<DocumentSnapshot> task) {
-                        if (task.isSuccessful()) {
-                            // Set up binding for location info once report is retrieved
-                            location = DatabaseExtractor.extractLocation(task.getResult().getId(), task.getResult().getData());
+                    public void onLocationRetrieved(@Nullable Location retrievedLocation) {
+                        if (retrievedLocation != null) {
+                            // Set up binding for location info once location is retrieved
+                            location = retrievedLocation;
                             locationBinding.setLocation(location); // Set selected location as data binding model
                             // Handle displaying UI elements which use location values
                             likeButton.setLiked(Settings.getInstance().locationIsLiked(location.getId()));
-                            displayImportantTags(new LinkedHashMap<>(location.getAllTags()));
+                            displayImportantTags(location.getTagBits());
                             // Display location thumbnail and retrieve location report
                             displayThumbnail();
                             retrieveReport();
                         } else {
-                            Log.w(TAG, "Error getting report.", task.getException());
+                            Log.w(TAG, "Error getting location " + locationID);
                         }
                     }
                 });
@@ -276,21 +274,18 @@ public class LocationFragment extends Fragment {
         db.collection("reports")
                 .document(location.getReportID())
                 .get()
-                .addOnCompleteListener(new OnCompleteListener<DocumentSnapshot>() {
+                .addOnCompleteListener(AppExecutors.getInstance().background(), new OnCompleteListener<DocumentSnapshot>() {
                     @Override
                     public void onComplete(@NonNull Task<DocumentSnapshot> task) {
                         if (task.isSuccessful()) {
-                            // Set up binding for location info once report is retrieved
-                            locationReport = DatabaseExtractor.extractReport(task.getResult());
-                            locationBinding.setReport(locationReport);
-                            reportText = locationBinding.reportText;
-
-                            // Set up adapter for slideshow once slideshow URLs are retrieved
-                            locationSlideshowAdapter = new LocationSlideshowAdapter(
-                                    LocationFragment.this.getContext(),
-                                    new ArrayList<>(locationReport.getSlideshowURLs()));
-
-                            slideshow.setAdapter(locationSlideshowAdapter);
+                            // Extract the report off the main thread and only bind the finished report
+                            final Report report = DatabaseExtractor.extractReport(task.getResult());
+                            AppExecutors.getInstance().mainThread().execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    displayReport(report);
+                                }
+                            });
                         } else {
                             Log.w(TAG, "Error getting report.", task.getException());
                         }
@@ -298,6 +293,25 @@ public class LocationFragment extends Fragment {
                 });
     }
 
+    // Sets up the bindings for the report and slideshow once the report is retrieved
+    private void displayReport(Report report) {
+
+        // The fragment may have been closed while the report was being retrieved
+        if (!isAdded()) {
+            return;
+        }
+        locationReport = report;
+        locationBinding.setReport(locationReport);
+        reportText = locationBinding.reportText;
+
+        // Set up adapter for slideshow once slideshow URLs are retrieved
+        locationSlideshowAdapter = new LocationSlideshowAdapter(
+                LocationFragment.this.getContext(),
+                new ArrayList<>(locationReport.getSlideshowURLs()));
+
+        slideshow.setAdapter(locationSlideshowAdapter);
+    }
+
     // Displays location thumbnail
     private void displayThumbnail() {
         GlideApp.with(getActivity())
@@ -5,6 +5,7 @@ import android.content.DialogInterface;
 import android.content.res.Resources;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Gravity;
 import android.view.LayoutInflater;
@@ -18,51 +19,63 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.Observer;
 
 import com.google.android.gms.maps.CameraUpdate;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.MapView;
 import com.google.android.gms.maps.OnMapReadyCallback;
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
-import com.google.firebase.firestore.QuerySnapshot;
 import com.nearchitectural.R;
 import com.nearchitectural.ui.activities.MapsActivity;
 import com.nearchitectural.ui.adapters.MapMarkerWindowAdapter;
+import com.nearchitectural.ui.map.Cluster;
+import com.nearchitectural.ui.map.ClusterIconFactory;
+import com.nearchitectural.ui.map.MarkerClusterer;
+import com.nearchitectural.ui.map.MarkerLoader;
+import com.nearchitectural.ui.map.MarkerReconciler;
+import com.nearchitectural.utilities.AppExecutors;
 import com.nearchitectural.utilities.CurrentCoordinates;
-import com.nearchitectural.utilities.DatabaseExtractor;
-import com.nearchitectural.utilities.DistanceCalculator;
+import com.nearchitectural.utilities.LocationRepository;
 import com.nearchitectural.utilities.Settings;
-import com.nearchitectural.utilities.TagID;
-import com.nearchitectural.utilities.TagMapper;
+import com.nearchitectural.utilities.models.Location;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
 /* Author:  Kristiyan Doykov, Joel Bell-Wilding
  * Since:   10/12/19
- * Version: 1.1
+ * Version: 2.1
  * Purpose: Handles events and presentation related to the Google Maps section of the home screen
  */
 public class MapFragment extends Fragment implements OnMapReadyCallback {
 
     public static final String TAG = "MapFragment"; // Tag used for logging status of application
+    // Fraction of the visible region's size by which markers are also shown outside each of its edges
+    private static final double VIEWPORT_MARGIN = 0.25;
 
     private MapView mapView; // View object displaying the map
+    private MapMarkerWindowAdapter windowAdapter; // Renders the info windows of location markers
     private GoogleMap googleMap; // Object representing the map itself
-    private FirebaseFirestore db; // The Firebase database containing location information
     private boolean mLocationPermissionsGranted; // Boolean representing if location permissions were granted
     private boolean introDialogNeeded; // Flag boolean to signal if the intro dialog should show
     private CameraUpdate defaultCameraPosition; // The default position the map camera will hover over
-    private Map<Marker, String> markerIDMap; // Map of markers to corresponding location IDs
+    private boolean firstMarkersShown; // Flags that the time taken to show the first markers has been logged
+    private BitmapDescriptor markerIcon; // Icon used for every location marker
+    private MarkerClusterer clusterer; // Groups the qualifying locations into clusters for each zoom level
+    private MarkerReconciler markerReconciler; // Keeps the markers on the map in line with the shown clusters
+    private String appliedSettings; // Settings which the clustered locations were chosen with
+    private int shownZoomLevel = -1; // Zoom level of the clusters currently shown on the map
+    private LatLngBounds materialisedBounds; // Region of the map for which markers are currently shown
+    private int datasetBatch; // Number of the latest dataset update (older updates are discarded)
+    private int clusterBatch; // Number of the latest cluster request (older requests are discarded)
 
     public MapFragment(boolean introDialogNeeded) {
         this.introDialogNeeded = introDialogNeeded;
@@ -85,8 +98,6 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         parentActivity.getNavigationView().getMenu().findItem(R.id.nav_map).setChecked(true);
         parentActivity.setActionBarTitle("Map");
 
-        db = FirebaseFirestore.getInstance(); // Instance of the db for requesting/updating data
-
         parentActivity.requestLocationPermissions(); // Request location permissions if needed
         mLocationPermissionsGranted = Settings.getInstance().locationPermissionsAreGranted();
 
@@ -118,7 +129,7 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         googleMap = map;
         googleMap.moveCamera(defaultCameraPosition);
 
-        addAllMarkers(); // Adds a marker for every location in the database
+        addAllMarkers(); // Adds a marker for every cached location
 
         // Opens a location page when a location info-window is tapped
         googleMap.setOnInfoWindowClickListener(
@@ -160,7 +171,8 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         rlp.setMargins(0, 0, 0, 80);
 
         /* Set the map to use the application custom info window */
-        googleMap.setInfoWindowAdapter(new MapMarkerWindowAdapter(getActivity()));
+        windowAdapter = new MapMarkerWindowAdapter(getActivity());
+        googleMap.setInfoWindowAdapter(windowAdapter);
 
         /* Navigation feature - when the user holds finger on the screen, hide the
          * current info window and return to the default position */
@@ -173,12 +185,19 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
             }
         });
 
-        /* Navigation feature - when the user taps a marker, display info window and
+        /* Navigation feature - when the user taps a location marker, display info window and
          * zoom into the marker's location */
         googleMap.setOnMarkerClickListener(new GoogleMap.OnMarkerClickListener() {
             @Override
             public boolean onMarkerClick(Marker marker) {
+                // Tapping a cluster expands it rather than showing an info window
+                Cluster cluster = markerReconciler.getCluster(marker);
+                if (cluster != null) {
+                    expandCluster(cluster);
+                    return true;
+                }
                 googleMap.animateCamera(CameraUpdateFactory.newLatLngZoom(marker.getPosition(), 14.5f));
+                // The window is shown straight away and re-rendered once its thumbnail has loaded
                 marker.showInfoWindow();
                 visibleMarker[0] = marker;
                 return true;
@@ -191,42 +210,263 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         }
     }
 
-    // Adds all location markers to Google Map (if settings criteria is met)
+    /* Adds location markers to Google Map (if settings criteria is met), grouped into clusters. Only
+     * markers in and around the visible region of the map are created */
     private void addAllMarkers() {
 
+        // Icons shared by every marker (created on the main thread)
+        markerIcon = BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_AZURE);
+        /* Markers are kept (along with the location IDs for opening a location page and clusters for
+         * expanding on tap) and only those which differ from the clusters to show are replaced */
+        markerReconciler = new MarkerReconciler(googleMap, new ClusterIconFactory(getActivity()));
+        markerReconciler.setOnProgressListener(new MarkerLoader.OnProgressListener() {
+            @Override
+            public void onProgress(int addedMarkers, int totalMarkers) {
+                // Record how long it took for the first markers to appear since start up
+                if (!firstMarkersShown && addedMarkers > 0) {
+                    firstMarkersShown = true;
+                    Log.d(TAG, "Time to first marker: " + (SystemClock.elapsedRealtime()
+                            - LocationRepository.getInstance().getInitialisationTime()) + "ms");
+                }
+            }
+
+            @Override
+            public void onLoadComplete(int totalMarkers, long elapsedMillis) {
+                Log.d(TAG, "Time to add " + totalMarkers + " markers: " + elapsedMillis + "ms");
+            }
+        });
+
+        /* Show the markers of the visible region whenever the camera settles (re-clustering if the
+         * camera settles at a different zoom level) */
+        googleMap.setOnCameraIdleListener(new GoogleMap.OnCameraIdleListener() {
+            @Override
+            public void onCameraIdle() {
+                refreshClusters(false);
+            }
+        });
+
+        // Cluster every qualifying cached location once the shared dataset is available
+        LocationRepository.getInstance().getLocations().observe(getViewLifecycleOwner(),
+                new Observer<List<Location>>() {
+                    @Override
+                    public void onChanged(List<Location> locations) {
+                        // The camera is only fitted to the markers when they are first loaded
+                        rebuildClusterer(clusterer == null);
+                    }
+                });
+    }
+
+    // Stops adding markers once the map view (and its markers) has been destroyed
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (markerReconciler != null) {
+            markerReconciler.stopLoading();
+        }
+    }
+
+    /* Re-applies the user's settings when the map is shown again (e.g. on returning from the Settings
+     * page). The map is hidden rather than destroyed while other pages are open, so only the markers
+     * of locations which no longer qualify, or now qualify, are changed */
+    @Override
+    public void onHiddenChanged(boolean hidden) {
+        super.onHiddenChanged(hidden);
+
+        if (hidden) {
+            mapView.onPause();
+            return;
+        }
+        mapView.onResume();
+        MapsActivity parentActivity = (MapsActivity) this.getActivity();
+        assert parentActivity != null;
+        parentActivity.getNavigationView().getMenu().findItem(R.id.nav_map).setChecked(true);
+        parentActivity.setActionBarTitle("Map");
+
+        // Settings (and therefore the qualifying locations) are usually unchanged, e.g. after viewing a location
+        if (googleMap != null && clusterer != null && !currentSettings().equals(appliedSettings)) {
+            rebuildClusterer(true);
+        }
+    }
+
+    // Filters locations and prepares clustering off the main thread, replacing the current clusterer
+    private void rebuildClusterer(final boolean moveCamera) {
+        final int batch = ++datasetBatch;
+        final String settings = currentSettings();
+        AppExecutors.getInstance().background().execute(new Runnable() {
+            @Override
+            public void run() {
+                buildClusterer(batch, settings, moveCamera);
+            }
+        });
+    }
+
+    // Describes the settings which determine the qualifying locations (used to detect changes to them)
+    private static String currentSettings() {
+        Settings userSettings = Settings.getInstance();
+        LatLng userPosition = CurrentCoordinates.getCoords();
+        return userSettings.getMaxDistance() + ":" + userPosition.latitude + "," + userPosition.longitude
+                + ":" + userSettings.getActiveTagBits();
+    }
+
+    /* Creates a clusterer over every location which meets the settings criteria, along with the camera
+     * bounds containing them, then passes both to the main thread (runs on the background executor) */
+    private void buildClusterer(final int batch, final String settings, final boolean moveCamera) {
+
+        List<Location> qualifyingLocations = new ArrayList<>();
         // Allows the camera boundary for all map markers to be built
         final LatLngBounds.Builder cameraBoundBuilder = new LatLngBounds.Builder();
-        // Map of markers to location IDs for opening a location page
-        markerIDMap = new HashMap<>();
 
-        // Cycle through all locations in database and set a marker if appropriate
-        db.collection("locations")
-                .get()
-                .addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
+        // Only locations within the user's max distance are retrieved from the spatial index
+        LatLng userPosition = CurrentCoordinates.getCoords();
+        List<Location> locationsInRange = LocationRepository.getInstance().getSpatialIndex()
+                .withinRadius(userPosition.latitude, userPosition.longitude, Settings.getInstance().getMaxDistance());
+
+        /* Cycles through the locations in range and keeps each which has the tags set in the user
+         * settings and can be shown as a marker */
+        long requiredTagBits = Settings.getInstance().getActiveTagBits();
+        for (Location location : locationsInRange) {
+            if (location.hasAllTags(requiredTagBits) && locationHasMarkerPosition(location)) {
+                qualifyingLocations.add(location);
+                // Add marker position to camera bounds
+                cameraBoundBuilder.include(new LatLng(location.getLatitude(), location.getLongitude()));
+            }
+        }
+        final MarkerClusterer newClusterer = new MarkerClusterer(qualifyingLocations);
+
+        AppExecutors.getInstance().mainThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                // Ignore results built for an outdated dataset or after the map view is destroyed
+                if (batch == datasetBatch && getView() != null) {
+                    clusterer = newClusterer;
+                    appliedSettings = settings;
+                    // Once all locations are known, create bound and move camera with bound
+                    createDefaultCameraPosition(cameraBoundBuilder);
+                    if (moveCamera) {
+                        googleMap.moveCamera(defaultCameraPosition);
+                    }
+                    refreshClusters(true);
+                }
+            }
+        });
+    }
+
+    /* Calculates the clusters inside the visible region (plus a margin) off the main thread and then
+     * shows them. Nothing is recalculated while the visible region stays within the region last
+     * calculated at the same zoom level, unless the dataset has changed */
+    private void refreshClusters(final boolean datasetChanged) {
+
+        final MarkerClusterer currentClusterer = clusterer;
+        final float zoom = googleMap.getCameraPosition().zoom;
+        final int zoomLevel = MarkerClusterer.clusterZoomLevel(zoom);
+        LatLngBounds visibleBounds = googleMap.getProjection().getVisibleRegion().latLngBounds;
+        if (currentClusterer == null || (!datasetChanged && zoomLevel == shownZoomLevel
+                && materialisedBounds != null && materialisedBounds.contains(visibleBounds.southwest)
+                && materialisedBounds.contains(visibleBounds.northeast))) {
+            return;
+        }
+
+        final LatLngBounds requestedBounds = expandBounds(visibleBounds, VIEWPORT_MARGIN);
+        final int batch = ++clusterBatch;
+        AppExecutors.getInstance().background().execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Cluster> clusters = currentClusterer.getClusters(zoom, requestedBounds);
+                // Options are created here and only cluster icons are added on the main thread
+                final List<MarkerOptions> markerOptions = new ArrayList<>(clusters.size());
+                for (Cluster cluster : clusters) {
+                    markerOptions.add(cluster.isSingleLocation()
+                            ? createMarkerOptions(cluster.getLocations().get(0))
+                            : new MarkerOptions().position(cluster.getPosition()).anchor(0.5f, 0.5f));
+                }
+
+                AppExecutors.getInstance().mainThread().execute(new Runnable() {
                     @Override
-                    public void onComplete(@NonNull Task<QuerySnapshot> task) {
-                        if (task.isSuccessful()) {
-                            // Cycles through all location documents in database and adds a map marker
-                            for (QueryDocumentSnapshot document : task.getResult()) {
-                                if (locationMeetsSettingsCriteria(document)) {
-                                    // Creates a marker using database extractor
-                                    MarkerOptions marker = DatabaseExtractor.extractMapMarker(document);
-                                    // If retrieval of info from database is successful, adds new marker to map
-                                    if (marker != null) {
-                                        markerIDMap.put(googleMap.addMarker(marker), document.getId());
-                                        // Add marker position to camera bounds
-                                        cameraBoundBuilder.include(marker.getPosition());
-                                    }
-                                }
-                            }
-                            // Once all markers are added to map, create bound and move camera with bound
-                            createDefaultCameraPosition(cameraBoundBuilder);
-                            googleMap.moveCamera(defaultCameraPosition);
-                        } else {
-                            Log.w(TAG, "Error getting documents.", task.getException());
+                    public void run() {
+                        // Ignore clusters of an outdated camera position or after the map view is destroyed
+                        if (batch == clusterBatch && getView() != null && currentClusterer == clusterer) {
+                            showClusters(clusters, markerOptions, zoomLevel, datasetChanged);
+                            materialisedBounds = requestedBounds;
                         }
                     }
                 });
+            }
+        });
+    }
+
+    /* Shows a marker for each provided cluster, removing the markers of clusters which are no longer
+     * shown (or have changed) and adding only those not already on the map over the following frames
+     * (runs on the main thread) */
+    private void showClusters(List<Cluster> clusters, List<MarkerOptions> markerOptions, int zoomLevel,
+                              boolean datasetChanged) {
+
+        int changedMarkers = markerReconciler.reconcile(clusters, markerOptions);
+        if (datasetChanged) {
+            Log.d(TAG, "Markers removed or queued for new locations or settings: " + changedMarkers);
+        }
+        shownZoomLevel = zoomLevel;
+    }
+
+    /* Returns bounds enlarged on every side by a fraction of their size, so markers just outside
+     * the visible region are already present when the camera moves */
+    private static LatLngBounds expandBounds(LatLngBounds bounds, double fraction) {
+
+        double south = bounds.southwest.latitude;
+        double north = bounds.northeast.latitude;
+        double west = bounds.southwest.longitude;
+        double east = bounds.northeast.longitude;
+        // Bounds crossing the 180th meridian have a western edge greater than the eastern edge
+        double longitudeSpan = west <= east ? east - west : east + 360 - west;
+        double latitudeMargin = (north - south) * fraction;
+        double longitudeMargin = longitudeSpan * fraction;
+
+        south = Math.max(-90, south - latitudeMargin);
+        north = Math.min(90, north + latitudeMargin);
+        if (longitudeSpan + 2 * longitudeMargin >= 360) {
+            west = -180;
+            east = 180;
+        } else {
+            west = wrapLongitude(west - longitudeMargin);
+            east = wrapLongitude(east + longitudeMargin);
+        }
+        return new LatLngBounds(new LatLng(south, west), new LatLng(north, east));
+    }
+
+    // Returns the equivalent longitude between -180 and 180
+    private static double wrapLongitude(double longitude) {
+        if (longitude < -180) {
+            return longitude + 360;
+        }
+        return longitude > 180 ? longitude - 360 : longitude;
+    }
+
+    // Zooms the camera into a cluster so that its locations are shown separately
+    private void expandCluster(Cluster cluster) {
+
+        LatLngBounds clusterBounds = cluster.getBounds();
+        if (clusterBounds.southwest.equals(clusterBounds.northeast)) {
+            // Every location shares the same position, so zoom in towards it instead
+            googleMap.animateCamera(CameraUpdateFactory.newLatLngZoom(cluster.getPosition(),
+                    googleMap.getCameraPosition().zoom + 2));
+        } else {
+            int padding = (int) (60 * Resources.getSystem().getDisplayMetrics().density);
+            googleMap.animateCamera(CameraUpdateFactory.newLatLngBounds(clusterBounds, padding));
+        }
+    }
+
+    // Only locations with a name and coordinates can be shown as markers (since both are necessary)
+    private static boolean locationHasMarkerPosition(Location location) {
+        return !(location.getName().equals("Unknown")
+                || (location.getLatitude() == 0 && location.getLongitude() == 0));
+    }
+
+    // Creates the options for a map marker from the information of a given location
+    private MarkerOptions createMarkerOptions(Location location) {
+        return new MarkerOptions().flat(false)
+                .position(new LatLng(location.getLatitude(), location.getLongitude()))
+                .title(location.getName())
+                .icon(markerIcon)
+                .snippet(location.getSummary());
     }
 
     /* Uses the positions of map markers to create a bound for the map camera such
@@ -246,36 +486,9 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
     // Opens a new location fragment for the location corresponding to the provided marker
     private void openLocationFragment(Marker marker) {
 
-        // Creates a new location fragment and opens it using the location ID
-        LocationFragment lf = new LocationFragment(markerIDMap.get(marker));
-        getActivity()
-                .getSupportFragmentManager()
-                .beginTransaction()
-                .replace(R.id.fragment_container, lf)
-                .addToBackStack(LocationFragment.TAG)
-                .commit();
-    }
-
-    // Method used to determine if location used for map marker meets the criteria of the user settings
-    private boolean locationMeetsSettingsCriteria(QueryDocumentSnapshot document) {
-
-        Settings userSettings = Settings.getInstance();
-
-        // Create TagMapper for checking tags of the given location
-        TagMapper locationTagMapper = new TagMapper(document.getId(), document.getData());
-
-        // Ensures location matches all set tags
-        for (TagID tag: TagID.values()) {
-            if (userSettings.getTagValue(tag) && !locationTagMapper.getTagValuesMap().get(tag)) {
-                return false;
-            }
-        }
-
-        // Ensures location is within the user specified max distance
-        return (DistanceCalculator.calculateDistance(CurrentCoordinates.getCoords().latitude,
-                (double) document.getData().get("latitude"),
-                CurrentCoordinates.getCoords().longitude,
-                (double) document.getData().get("longitude")) <= userSettings.getMaxDistance());
+        // Creates a new location fragment and opens it (above the hidden map) using the location ID
+        LocationFragment lf = new LocationFragment(markerReconciler.getLocationID(marker));
+        ((MapsActivity) getActivity()).openFragment(lf, LocationFragment.TAG);
     }
 
     /* Displays the introductory dialog on the first use of the map fragment during each
@@ -4,6 +4,7 @@ import android.app.Dialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.os.Bundle;
+import android.widget.BaseAdapter;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
@@ -15,16 +16,21 @@ import com.nearchitectural.utilities.TagMapper;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /* Author:  Kristiyan Doykov, Joel Bell-Wilding
  * Since:   15/01/20
- * Version: 1.1
+ * Version: 1.2
  * Purpose: Handle the activation/deactivation of additional dialogue box
- *          tags to apply locations when using the search function
+ *          tags to apply locations when using the search function. If tag counts
+ *          are provided, each tag also shows how many of the current results have it
  */
 public class OptionsDialogFragment extends DialogFragment {
 
     private TagMapper tagMapper; // Tag utility used to store/manipulate tag states
+    private Map<TagID, Integer> tagCounts; // Number of results with each tag (null if not shown)
+    private TagID[] tags; // Tags in the order they are listed (null until the dialog is created)
+    private CharSequence[] items; // Labels of the listed tags (shown by the dialog's list)
 
     // Prepares a new duplicate TagMapper containing only dialogue tags
     public OptionsDialogFragment(TagMapper tagMapper) {
@@ -43,12 +49,10 @@ public class OptionsDialogFragment extends DialogFragment {
     public Dialog onCreateDialog(Bundle savedInstanceState) {
         AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
 
-        // Stores tag display names as a CharSequence array to pass into onClick handler
-        final CharSequence[] items = new CharSequence[tagMapper.getTagDisplayNameMap().size()];
-        List<String> tagDisplayNames  = new ArrayList<>(tagMapper.getTagDisplayNameMap().keySet());
-        for (int i = 0; i < tagMapper.getTagDisplayNameMap().size(); i++) {
-            items[i] = tagDisplayNames.get(i);
-        }
+        // Stores the tags and their labels as arrays to pass into onClick handler
+        tags = tagMapper.getTagDisplayNameMap().values().toArray(new TagID[0]);
+        items = new CharSequence[tags.length];
+        updateItemLabels();
 
         // Stores tag boolean values (i.e. if they are active) as a boolean array to pass into onClick handler
         final boolean[] currentStateOfItems = new boolean[tagMapper.getTagValuesMap().size()];
@@ -68,14 +72,10 @@ public class OptionsDialogFragment extends DialogFragment {
                             public void onClick(DialogInterface dialog, int which, boolean isChecked) {
 
                                 if (isChecked) { // If a tag is activated it, add to selected items and apply
-                                    ((SearchableActivity) getActivity())
-                                            .setTag(tagMapper.getTagDisplayNameMap()
-                                                    .get(items[which]), true);
+                                    ((SearchableActivity) getActivity()).setTag(tags[which], true);
                                     ((SearchableActivity) getActivity()).filterAndRearrange();
                                 } else { // If a tag is deactivated, remove from selected items and apply
-                                    ((SearchableActivity) getActivity())
-                                            .setTag(tagMapper.getTagDisplayNameMap()
-                                                    .get(items[which]), false);
+                                    ((SearchableActivity) getActivity()).setTag(tags[which], false);
                                     ((SearchableActivity) getActivity()).filterAndRearrange();
                                 }
                             }
@@ -91,6 +91,29 @@ public class OptionsDialogFragment extends DialogFragment {
         return builder.create();
     }
 
+    /* Sets the number of results with each tag, shown next to each tag (null to show the tags alone).
+     * If the dialog is open its labels are updated (e.g. once a ticked tag has been applied) */
+    public void setTagCounts(Map<TagID, Integer> tagCounts) {
+        this.tagCounts = tagCounts;
+        if (items == null) {
+            return;
+        }
+        updateItemLabels();
+        AlertDialog dialog = (AlertDialog) getDialog();
+        if (dialog != null && dialog.getListView() != null) {
+            // The list shows the label array itself, so it only needs to be redrawn
+            ((BaseAdapter) dialog.getListView().getAdapter()).notifyDataSetChanged();
+        }
+    }
+
+    // Sets the label of each tag to its display name, followed by its count if known
+    private void updateItemLabels() {
+        for (int i = 0; i < tags.length; i++) {
+            Integer count = tagCounts == null ? null : tagCounts.get(tags[i]);
+            items[i] = count == null ? tags[i].displayName : tags[i].displayName + " (" + count + ")";
+        }
+    }
+
     /* The activity that creates an instance of this dialog fragment must
      * implement this interface in order to receive event callbacks.
      * Each method passes the DialogFragment in case the host needs to query it. */
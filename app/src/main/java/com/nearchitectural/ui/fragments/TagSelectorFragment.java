@@ -3,6 +3,7 @@ package com.nearchitectural.ui.fragments;
 import android.app.Dialog;
 import android.content.DialogInterface;
 import android.os.Bundle;
+import android.widget.BaseAdapter;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
@@ -15,17 +16,22 @@ import com.nearchitectural.utilities.TagMapper;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /* Author:  Kristiyan Doykov, Joel Bell-Wilding
  * Since:   15/01/20
- * Version: 1.2
+ * Version: 1.3
  * Purpose: Handle the activation/deactivation of tags within a provider
- *          TagMapper object through a UI Dialog
+ *          TagMapper object through a UI Dialog. If tag counts are provided, each tag
+ *          also shows how many of the current results have it
  */
 public class TagSelectorFragment extends DialogFragment {
 
     private DialogInterface.OnDismissListener dismissListener; // Custom dismiss listener
     private TagMapper tagMapper; // Tag utility used to store/manipulate tag states
+    private Map<TagID, Integer> tagCounts; // Number of results with each tag (null if not shown)
+    private TagID[] tags; // Tags in the order they are listed (null until the dialog is created)
+    private CharSequence[] items; // Labels of the listed tags (shown by the dialog's list)
 
     public TagSelectorFragment(TagMapper tagMapper) {
         this.tagMapper = tagMapper;
@@ -37,12 +43,10 @@ public class TagSelectorFragment extends DialogFragment {
     public Dialog onCreateDialog(Bundle savedInstanceState) {
         AlertDialog.Builder builder = new MaterialAlertDialogBuilder(getContext(), R.style.DialogTheme);
 
-        // Stores tag display names as a CharSequence array to set as the multi choice items
-        final CharSequence[] items = new CharSequence[tagMapper.getTagDisplayNameMap().size()];
-        List<String> tagDisplayNames = new ArrayList<>(tagMapper.getTagDisplayNameMap().keySet());
-        for (int i = 0; i < tagMapper.getTagDisplayNameMap().size(); i++) {
-            items[i] = tagDisplayNames.get(i);
-        }
+        // Stores the tags and their labels as arrays to set as the multi choice items
+        tags = tagMapper.getTagDisplayNameMap().values().toArray(new TagID[0]);
+        items = new CharSequence[tags.length];
+        updateItemLabels();
 
         // Stores tag boolean values as a boolean array to set as the multi choice item states
         final boolean[] currentStateOfItems = new boolean[tagMapper.getTagValuesMap().size()];
@@ -61,8 +65,7 @@ public class TagSelectorFragment extends DialogFragment {
                             @Override
                             public void onClick(DialogInterface dialog, int which, boolean isChecked) {
 
-                                TagID selectedTag = tagMapper.getTagDisplayNameMap()
-                                        .get(items[which]);
+                                TagID selectedTag = tags[which];
 
                                 if (isChecked) {
                                     tagMapper.addTagToMapper(selectedTag, true);
@@ -82,6 +85,29 @@ public class TagSelectorFragment extends DialogFragment {
         return builder.create();
     }
 
+    /* Sets the number of results with each tag, shown next to each tag (null to show the tags alone).
+     * If the dialog is open its labels are updated */
+    public void setTagCounts(Map<TagID, Integer> tagCounts) {
+        this.tagCounts = tagCounts;
+        if (items == null) {
+            return;
+        }
+        updateItemLabels();
+        AlertDialog dialog = (AlertDialog) getDialog();
+        if (dialog != null && dialog.getListView() != null) {
+            // The list shows the label array itself, so it only needs to be redrawn
+            ((BaseAdapter) dialog.getListView().getAdapter()).notifyDataSetChanged();
+        }
+    }
+
+    // Sets the label of each tag to its display name, followed by its count if known
+    private void updateItemLabels() {
+        for (int i = 0; i < tags.length; i++) {
+            Integer count = tagCounts == null ? null : tagCounts.get(tags[i]);
+            items[i] = count == null ? tags[i].displayName : tags[i].displayName + " (" + count + ")";
+        }
+    }
+
     // Setter for onDismiss Listener
     public void setDismissListener(DialogInterface.OnDismissListener dismissListener) {
         this.dismissListener = dismissListener;
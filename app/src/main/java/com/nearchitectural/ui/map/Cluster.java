@@ -0,0 +1,75 @@
+package com.nearchitectural.ui.map;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.nearchitectural.utilities.models.Location;
+
+import java.util.Collections;
+import java.util.List;
+
+/* Version: 1.0
+ * Purpose: Immutable group of nearby locations which are represented on the map by a single
+ *          marker at a given zoom level. A cluster of one location is shown as a normal marker
+ */
+public class Cluster {
+
+    private final String key; // Identifies the marker shown for this cluster
+    private final LatLng position; // Average position of all locations in the cluster
+    private final List<Location> locations; // Locations grouped into this cluster
+
+    Cluster(String key, LatLng position, List<Location> locations) {
+        this.key = key;
+        this.position = position;
+        this.locations = Collections.unmodifiableList(locations);
+    }
+
+    /* Returns the key of the cluster, which is the location ID for a single location and
+     * otherwise identifies the zoom level and grid cell the cluster was formed in */
+    public String getKey() {
+        return key;
+    }
+
+    public LatLng getPosition() {
+        return position;
+    }
+
+    public List<Location> getLocations() {
+        return locations;
+    }
+
+    public int getSize() {
+        return locations.size();
+    }
+
+    // Determines if the cluster contains only one location (i.e. is shown as a location marker)
+    public boolean isSingleLocation() {
+        return locations.size() == 1;
+    }
+
+    /* Determines if another cluster contains the same location objects at the same position (i.e.
+     * a marker shown for the other cluster can be kept for this one) */
+    public boolean hasSameContent(Cluster other) {
+        if (other == this) {
+            return true;
+        }
+        if (other == null || !key.equals(other.key) || !position.equals(other.position)
+                || locations.size() != other.locations.size()) {
+            return false;
+        }
+        for (int i = 0; i < locations.size(); i++) {
+            if (locations.get(i) != other.locations.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns bounds containing every location of the cluster (used to expand the cluster on tap)
+    public LatLngBounds getBounds() {
+        LatLngBounds.Builder boundsBuilder = new LatLngBounds.Builder();
+        for (Location location : locations) {
+            boundsBuilder.include(new LatLng(location.getLatitude(), location.getLongitude()));
+        }
+        return boundsBuilder.build();
+    }
+}
@@ -0,0 +1,93 @@
+package com.nearchitectural.ui.map;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import androidx.core.content.ContextCompat;
+
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.nearchitectural.R;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/* Version: 1.0
+ * Purpose: Creates the count badge icons shown for cluster markers. Counts are grouped into
+ *          buckets (e.g. "50+") so only a handful of icons are ever drawn, and each is cached
+ */
+public class ClusterIconFactory {
+
+    // Smallest count of each bucket (counts below the first bucket are shown exactly)
+    private static final int[] BUCKETS = {10, 20, 50, 100, 200, 500, 1000};
+    private static final int BASE_DIAMETER = 36; // Diameter of the smallest badge (in dp)
+    private static final int BORDER_WIDTH = 3; // Width of the badge border (in dp)
+
+    private final float density; // Screen density used to convert dp to pixels
+    private final int badgeColour; // Colour of the badge
+    private final Map<String, BitmapDescriptor> iconCache; // Icons created so far, mapped by badge text
+
+    public ClusterIconFactory(Context context) {
+        density = context.getResources().getDisplayMetrics().density;
+        badgeColour = ContextCompat.getColor(context, R.color.colorPrimary);
+        iconCache = new HashMap<>();
+    }
+
+    // Returns the icon for a cluster of the provided size (must be called on the main thread)
+    public BitmapDescriptor getIcon(int clusterSize) {
+
+        String text = getBadgeText(clusterSize);
+        BitmapDescriptor icon = iconCache.get(text);
+        if (icon == null) {
+            icon = BitmapDescriptorFactory.fromBitmap(drawBadge(text, bucketIndex(clusterSize)));
+            iconCache.put(text, icon);
+        }
+        return icon;
+    }
+
+    // Returns the text shown on the badge (exact below the first bucket, otherwise e.g. "50+")
+    static String getBadgeText(int clusterSize) {
+        int bucket = bucketIndex(clusterSize);
+        return bucket < 0 ? String.valueOf(clusterSize) : BUCKETS[bucket] + "+";
+    }
+
+    // Returns the index of the largest bucket the size falls into (-1 if below every bucket)
+    private static int bucketIndex(int clusterSize) {
+        int bucket = -1;
+        while (bucket + 1 < BUCKETS.length && clusterSize >= BUCKETS[bucket + 1]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    // Draws a circular badge containing the text, growing slightly with each bucket
+    private Bitmap drawBadge(String text, int bucket) {
+
+        int diameter = (int) ((BASE_DIAMETER + 4 * (bucket + 1)) * density);
+        float radius = diameter / 2f;
+        Bitmap bitmap = Bitmap.createBitmap(diameter, diameter, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        // White border around a filled circle
+        Paint circlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        circlePaint.setColor(Color.WHITE);
+        canvas.drawCircle(radius, radius, radius, circlePaint);
+        circlePaint.setColor(badgeColour);
+        canvas.drawCircle(radius, radius, radius - BORDER_WIDTH * density, circlePaint);
+
+        // Count centred within the circle
+        Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTypeface(Typeface.DEFAULT_BOLD);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        textPaint.setTextSize(diameter / (text.length() > 3 ? 3.6f : 2.8f));
+        float baseline = radius - (textPaint.descent() + textPaint.ascent()) / 2;
+        canvas.drawText(text, radius, baseline, textPaint);
+
+        return bitmap;
+    }
+}
@@ -0,0 +1,233 @@
+package com.nearchitectural.ui.map;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.nearchitectural.utilities.models.Location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Version: 1.0
+ * Purpose: Grid based clustering engine which groups the locations shown on the map into clusters
+ *          for each zoom level. Locations are projected onto the map's (Mercator) world plane and
+ *          grouped by grid cells of a fixed on-screen size, so a cluster covers roughly the same
+ *          area of the screen at every zoom level. The clusters of each zoom level are calculated
+ *          the first time they are needed and then reused, so moving the camera within a zoom
+ *          level requires no re-clustering, and the clusters inside the visible region are found
+ *          by examining only the grid cells it overlaps. Not thread safe - intended to be used from the
+ *          background executor only
+ */
+public class MarkerClusterer {
+
+    public static final int MAX_CLUSTER_ZOOM = 15; // Zoom level from which every location is shown individually
+    private static final double CELL_SIZE = 100; // Width and height of each cluster cell (in dp)
+    private static final double WORLD_SIZE = 256; // Width and height of the world at zoom level 0 (in dp)
+    private static final double MAX_LATITUDE = 85.05112878; // Latitude beyond which the map is not displayed
+
+    private final List<Location> locations; // Locations to be clustered (positions are their ordinals)
+    private final double[] worldX; // Position of each location across the world plane (0 to 1, west to east)
+    private final double[] worldY; // Position of each location down the world plane (0 to 1, north to south)
+    private final Map<Integer, ClusterLevel> levelsByZoom; // Clusters of each zoom level calculated so far
+
+    // Creates a clusterer for the provided locations
+    public MarkerClusterer(List<Location> locations) {
+
+        this.locations = new ArrayList<>(locations);
+        worldX = new double[this.locations.size()];
+        worldY = new double[this.locations.size()];
+        levelsByZoom = new HashMap<>();
+
+        // Project every location onto the world plane once (independent of zoom level)
+        for (int i = 0; i < this.locations.size(); i++) {
+            Location location = this.locations.get(i);
+            worldX[i] = toWorldX(location.getLongitude());
+            worldY[i] = toWorldY(location.getLatitude());
+        }
+    }
+
+    // Returns the number of locations being clustered
+    public int getLocationCount() {
+        return locations.size();
+    }
+
+    // Returns the clusters of every location at the provided zoom level
+    public List<Cluster> getClusters(float zoom) {
+        return getLevel(zoom).clusters;
+    }
+
+    /* Returns the clusters at the provided zoom level which are positioned inside the provided bounds.
+     * Only the grid cells overlapping the bounds are examined. A western edge greater than the eastern
+     * edge indicates bounds which cross the 180th meridian */
+    public List<Cluster> getClusters(float zoom, LatLngBounds bounds) {
+
+        ClusterLevel level = getLevel(zoom);
+        List<Cluster> clusters = new ArrayList<>();
+        double south = bounds.southwest.latitude;
+        double north = bounds.northeast.latitude;
+        double west = bounds.southwest.longitude;
+        double east = bounds.northeast.longitude;
+        boolean crossesMeridian = west > east;
+
+        // Rows run from north to south on the world plane
+        long firstRow = cellIndex(toWorldY(north), level.cellsPerSide);
+        long lastRow = cellIndex(toWorldY(south), level.cellsPerSide);
+        long westColumn = cellIndex(toWorldX(west), level.cellsPerSide);
+        long eastColumn = cellIndex(toWorldX(east), level.cellsPerSide);
+        long[] columnRanges = crossesMeridian
+                ? new long[] {westColumn, level.cellsPerSide - 1, 0, eastColumn}
+                : new long[] {westColumn, eastColumn};
+
+        for (long row = firstRow; row <= lastRow; row++) {
+            for (int range = 0; range < columnRanges.length; range += 2) {
+                long lastKey = row * level.cellsPerSide + columnRanges[range + 1];
+                for (int i = level.firstClusterAtOrAfter(row * level.cellsPerSide + columnRanges[range]);
+                     i < level.cellKeys.length && level.cellKeys[i] <= lastKey; i++) {
+                    // Cells on the edge of the bounds may contain clusters outside of them
+                    Cluster cluster = level.clusters.get(i);
+                    double latitude = cluster.getPosition().latitude;
+                    double longitude = cluster.getPosition().longitude;
+                    boolean insideLongitude = crossesMeridian
+                            ? longitude >= west || longitude <= east
+                            : longitude >= west && longitude <= east;
+                    if (insideLongitude && latitude >= south && latitude <= north) {
+                        clusters.add(cluster);
+                    }
+                }
+            }
+        }
+        return clusters;
+    }
+
+    // Returns the clusters of a zoom level, calculating them if this is the first time they are needed
+    private ClusterLevel getLevel(float zoom) {
+        int zoomLevel = clusterZoomLevel(zoom);
+        ClusterLevel level = levelsByZoom.get(zoomLevel);
+        if (level == null) {
+            level = createLevel(zoomLevel);
+            levelsByZoom.put(zoomLevel, level);
+        }
+        return level;
+    }
+
+    /* Groups locations by the grid cell they fall into at a zoom level. Each cell's locations form
+     * one cluster (positioned at their average position) unless clustering is disabled at the zoom
+     * level, in which case every location is kept separate (but still grouped by cell for queries) */
+    private ClusterLevel createLevel(int zoomLevel) {
+
+        // Cells of the highest clustered zoom level are used to look up individual locations
+        long cellsPerSide = cellsPerSide(Math.min(zoomLevel, MAX_CLUSTER_ZOOM - 1));
+        boolean mergeCells = zoomLevel < MAX_CLUSTER_ZOOM;
+
+        /* Pack each location's cell key and ordinal into a single long so locations can be
+         * grouped by cell with one primitive sort (cell keys fit within 31 bits below MAX_CLUSTER_ZOOM) */
+        long[] keyedOrdinals = new long[locations.size()];
+        for (int i = 0; i < keyedOrdinals.length; i++) {
+            keyedOrdinals[i] = (cellKey(i, cellsPerSide) << 32) | i;
+        }
+        Arrays.sort(keyedOrdinals);
+
+        List<Cluster> clusters = new ArrayList<>();
+        long[] cellKeys = new long[keyedOrdinals.length]; // Cell key of each cluster (at most one per location)
+        int start = 0;
+        while (start < keyedOrdinals.length) {
+            long key = keyedOrdinals[start] >>> 32;
+            int end = start + 1;
+            while (mergeCells && end < keyedOrdinals.length && (keyedOrdinals[end] >>> 32) == key) {
+                end++;
+            }
+
+            if (end - start == 1) {
+                clusters.add(singleLocationCluster(locations.get((int) keyedOrdinals[start])));
+            } else {
+                // Position the cluster at the average position of its locations
+                List<Location> members = new ArrayList<>(end - start);
+                double latitudeSum = 0;
+                double longitudeSum = 0;
+                for (int i = start; i < end; i++) {
+                    Location member = locations.get((int) keyedOrdinals[i]);
+                    members.add(member);
+                    latitudeSum += member.getLatitude();
+                    longitudeSum += member.getLongitude();
+                }
+                clusters.add(new Cluster("cluster-" + zoomLevel + "-" + key,
+                        new LatLng(latitudeSum / members.size(), longitudeSum / members.size()), members));
+            }
+            cellKeys[clusters.size() - 1] = key;
+            start = end;
+        }
+        return new ClusterLevel(cellsPerSide, Arrays.copyOf(cellKeys, clusters.size()), clusters);
+    }
+
+    // Creates a cluster holding a single location (keyed by the location ID)
+    private static Cluster singleLocationCluster(Location location) {
+        List<Location> members = new ArrayList<>(1);
+        members.add(location);
+        return new Cluster(location.getId(), new LatLng(location.getLatitude(), location.getLongitude()), members);
+    }
+
+    // Returns the key of the cell containing the location with the provided ordinal
+    private long cellKey(int ordinal, long cellsPerSide) {
+        return cellIndex(worldY[ordinal], cellsPerSide) * cellsPerSide + cellIndex(worldX[ordinal], cellsPerSide);
+    }
+
+    // Returns the index of the cell containing a world plane coordinate
+    static long cellIndex(double worldCoordinate, long cellsPerSide) {
+        long index = (long) Math.floor(worldCoordinate * cellsPerSide);
+        return index < 0 ? 0 : (index >= cellsPerSide ? cellsPerSide - 1 : index);
+    }
+
+    // Returns the number of cells along each side of the world plane at a zoom level
+    static long cellsPerSide(int zoomLevel) {
+        return (long) Math.ceil(WORLD_SIZE * Math.pow(2, zoomLevel) / CELL_SIZE);
+    }
+
+    /* Returns the zoom level used for clustering at a camera zoom. Levels at and above
+     * MAX_CLUSTER_ZOOM all show every location individually so share the same clusters */
+    public static int clusterZoomLevel(float zoom) {
+        int zoomLevel = (int) Math.floor(zoom);
+        return Math.max(0, Math.min(zoomLevel, MAX_CLUSTER_ZOOM));
+    }
+
+    // Converts a longitude to its position across the world plane (0 to 1)
+    static double toWorldX(double longitude) {
+        return (longitude + 180) / 360;
+    }
+
+    // Converts a latitude to its position down the (Mercator projected) world plane (0 to 1)
+    static double toWorldY(double latitude) {
+        double clampedLatitude = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude));
+        double sine = Math.sin(Math.toRadians(clampedLatitude));
+        return 0.5 - Math.log((1 + sine) / (1 - sine)) / (4 * Math.PI);
+    }
+
+    // The clusters of a single zoom level, ordered by the key of the grid cell containing them
+    private static class ClusterLevel {
+
+        private final long cellsPerSide; // Number of grid cells along each side of the world plane
+        private final long[] cellKeys; // Key of the grid cell containing each cluster (ascending)
+        private final List<Cluster> clusters; // Clusters in the same order as their cell keys
+
+        ClusterLevel(long cellsPerSide, long[] cellKeys, List<Cluster> clusters) {
+            this.cellsPerSide = cellsPerSide;
+            this.cellKeys = cellKeys;
+            this.clusters = Collections.unmodifiableList(clusters);
+        }
+
+        // Returns the position of the first cluster with a cell key at or after the provided key
+        int firstClusterAtOrAfter(long key) {
+            int index = Arrays.binarySearch(cellKeys, key);
+            if (index < 0) {
+                return -(index + 1);
+            }
+            // Several individual locations may share a cell, so find the first of them
+            while (index > 0 && cellKeys[index - 1] == key) {
+                index--;
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.nearchitectural.ui.map;
+
+import android.view.Choreographer;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.MarkerOptions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/* Version: 1.1
+ * Purpose: Adds markers to the map in slices over successive frames rather than all at once, so the
+ *          map stays responsive while large numbers of markers are added. Each frame only adds
+ *          markers until its time budget is spent, and markers nearest the centre of the camera are
+ *          added first. Must be used on the main thread
+ */
+public class MarkerLoader implements Choreographer.FrameCallback {
+
+    private static final long FRAME_BUDGET_NANOS = 8000000; // Time spent adding markers each frame (8ms)
+
+    // Interface for adding a single queued marker to the map
+    interface MarkerAdder {
+        void addMarker(Cluster cluster, MarkerOptions options);
+    }
+
+    // Interface for scheduling the adding of markers before a frame (the Choreographer outside of tests)
+    interface FrameScheduler {
+        void postFrameCallback(Choreographer.FrameCallback callback);
+        void removeFrameCallback(Choreographer.FrameCallback callback);
+    }
+
+    // Interface for following the progress of markers being added
+    public interface OnProgressListener {
+        void onProgress(int addedMarkers, int totalMarkers);
+        void onLoadComplete(int totalMarkers, long elapsedMillis);
+    }
+
+    private final MarkerAdder markerAdder; // Adds each marker when its turn comes
+    private final FrameScheduler frameScheduler; // Schedules the adding of markers before each frame
+    private List<QueuedMarker> queue; // Markers still to be added, nearest to the camera centre last
+    private OnProgressListener progressListener; // Notified after each slice of markers is added
+    private boolean frameScheduled; // Flags that markers will be added before the next frame
+    private int addedMarkers; // Number of markers added since the current load started
+    private long loadStartTime; // Time at which the current load started (in nanoseconds)
+
+    MarkerLoader(MarkerAdder markerAdder) {
+        this(markerAdder, new FrameScheduler() {
+            private final Choreographer choreographer = Choreographer.getInstance();
+
+            @Override
+            public void postFrameCallback(Choreographer.FrameCallback callback) {
+                choreographer.postFrameCallback(callback);
+            }
+
+            @Override
+            public void removeFrameCallback(Choreographer.FrameCallback callback) {
+                choreographer.removeFrameCallback(callback);
+            }
+        });
+    }
+
+    MarkerLoader(MarkerAdder markerAdder, FrameScheduler frameScheduler) {
+        this.markerAdder = markerAdder;
+        this.frameScheduler = frameScheduler;
+        queue = new ArrayList<>();
+    }
+
+    public void setOnProgressListener(OnProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /* Replaces the markers waiting to be added with the provided markers (any queued markers which
+     * are no longer needed are dropped) and starts adding them, nearest to the provided centre first.
+     * Progress is reported for the provided markers alone, even if an earlier load was unfinished */
+    void load(List<Cluster> clusters, List<MarkerOptions> markerOptions, LatLng centre) {
+
+        List<QueuedMarker> newQueue = new ArrayList<>(clusters.size());
+        double longitudeScale = Math.cos(Math.toRadians(centre.latitude));
+        for (int i = 0; i < clusters.size(); i++) {
+            LatLng position = clusters.get(i).getPosition();
+            // Approximate (equirectangular) distance is sufficient for ordering markers on screen
+            double longitudeDifference = Math.abs(position.longitude - centre.longitude);
+            double x = Math.min(longitudeDifference, 360 - longitudeDifference) * longitudeScale;
+            double y = position.latitude - centre.latitude;
+            newQueue.add(new QueuedMarker(clusters.get(i), markerOptions.get(i), x * x + y * y));
+        }
+        // Markers are taken from the end of the queue, so the nearest are placed last
+        Collections.sort(newQueue, new Comparator<QueuedMarker>() {
+            @Override
+            public int compare(QueuedMarker first, QueuedMarker second) {
+                return Double.compare(second.distance, first.distance);
+            }
+        });
+
+        addedMarkers = 0;
+        loadStartTime = System.nanoTime();
+        queue = newQueue;
+        if (!queue.isEmpty() && !frameScheduled) {
+            frameScheduled = true;
+            frameScheduler.postFrameCallback(this);
+        }
+    }
+
+    // Adds queued markers until the frame's time budget is spent, continuing in the next frame if needed
+    @Override
+    public void doFrame(long frameTimeNanos) {
+
+        frameScheduled = false;
+        long start = System.nanoTime();
+        while (!queue.isEmpty() && System.nanoTime() - start < FRAME_BUDGET_NANOS) {
+            QueuedMarker queuedMarker = queue.remove(queue.size() - 1);
+            markerAdder.addMarker(queuedMarker.cluster, queuedMarker.options);
+            addedMarkers++;
+        }
+
+        int totalMarkers = addedMarkers + queue.size();
+        if (progressListener != null) {
+            progressListener.onProgress(addedMarkers, totalMarkers);
+        }
+        if (!queue.isEmpty()) {
+            frameScheduled = true;
+            frameScheduler.postFrameCallback(this);
+        } else {
+            long elapsedMillis = (System.nanoTime() - loadStartTime) / 1000000;
+            if (progressListener != null) {
+                progressListener.onLoadComplete(totalMarkers, elapsedMillis);
+            }
+        }
+    }
+
+    // Drops every queued marker and stops adding markers (e.g. once the map is destroyed)
+    void cancel() {
+        queue = new ArrayList<>();
+        if (frameScheduled) {
+            frameScheduled = false;
+            frameScheduler.removeFrameCallback(this);
+        }
+    }
+
+    // A marker waiting to be added along with its (approximate) distance from the camera centre
+    private static class QueuedMarker {
+
+        private final Cluster cluster; // Cluster shown by the marker
+        private final MarkerOptions options; // Options the marker is created with
+        private final double distance; // Squared distance from the camera centre (in degrees)
+
+        QueuedMarker(Cluster cluster, MarkerOptions options, double distance) {
+            this.cluster = cluster;
+            this.options = options;
+            this.distance = distance;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.nearchitectural.ui.map;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/* Version: 1.1
+ * Purpose: Keeps the markers on a map in line with a set of clusters by comparing the new set
+ *          against the markers already shown (keyed by location ID, or cluster key for clusters)
+ *          and only adding or removing the difference. Markers are added gradually over several
+ *          frames by a MarkerLoader. Must be used on the main thread
+ */
+public class MarkerReconciler {
+
+    private final GoogleMap googleMap; // Map on which markers are shown
+    private final ClusterIconFactory clusterIconFactory; // Creates the count badges shown for clusters
+    private final Map<String, Marker> markersByKey; // Markers currently on the map, mapped by cluster key
+    private final Map<String, Cluster> clustersByKey; // Clusters currently on the map, mapped by cluster key
+    private final Map<Marker, String> markerIDMap; // Map of location markers to corresponding location IDs
+    private final Map<Marker, Cluster> clusterMarkerMap; // Map of cluster markers to corresponding clusters
+    private final MarkerLoader markerLoader; // Adds new markers in slices over successive frames
+
+    public MarkerReconciler(GoogleMap googleMap, ClusterIconFactory clusterIconFactory) {
+        this.googleMap = googleMap;
+        this.clusterIconFactory = clusterIconFactory;
+        markersByKey = new HashMap<>();
+        clustersByKey = new HashMap<>();
+        markerIDMap = new HashMap<>();
+        clusterMarkerMap = new HashMap<>();
+        markerLoader = new MarkerLoader(new MarkerLoader.MarkerAdder() {
+            @Override
+            public void addMarker(Cluster cluster, MarkerOptions options) {
+                MarkerReconciler.this.addMarker(cluster, options);
+            }
+        });
+    }
+
+    /* Shows a marker for each provided cluster (using the options at the same position in the list).
+     * Markers of clusters which are no longer provided, or whose content has changed, are removed and
+     * only clusters without a marker are queued to be added (replacing any markers still queued from
+     * a previous call). Returns the number of markers removed and queued */
+    public int reconcile(List<Cluster> clusters, List<MarkerOptions> markerOptions) {
+
+        Map<String, Cluster> clustersToShow = new HashMap<>();
+        for (Cluster cluster : clusters) {
+            clustersToShow.put(cluster.getKey(), cluster);
+        }
+        int changes = 0;
+
+        // Remove markers which are no longer needed or were created for a previous version of the dataset
+        Iterator<Map.Entry<String, Marker>> shownMarkerIterator = markersByKey.entrySet().iterator();
+        while (shownMarkerIterator.hasNext()) {
+            Map.Entry<String, Marker> shownMarker = shownMarkerIterator.next();
+            Cluster newCluster = clustersToShow.get(shownMarker.getKey());
+            if (newCluster == null || !newCluster.hasSameContent(clustersByKey.get(shownMarker.getKey()))) {
+                Marker marker = shownMarker.getValue();
+                marker.remove();
+                markerIDMap.remove(marker);
+                clusterMarkerMap.remove(marker);
+                clustersByKey.remove(shownMarker.getKey());
+                shownMarkerIterator.remove();
+                changes++;
+            }
+        }
+
+        // Queue a marker for every cluster which is not already shown, nearest the camera centre first
+        List<Cluster> newClusters = new ArrayList<>();
+        List<MarkerOptions> newMarkerOptions = new ArrayList<>();
+        for (int i = 0; i < clusters.size(); i++) {
+            Cluster cluster = clusters.get(i);
+            if (!markersByKey.containsKey(cluster.getKey())) {
+                newClusters.add(cluster);
+                newMarkerOptions.add(markerOptions.get(i));
+            }
+        }
+        markerLoader.load(newClusters, newMarkerOptions, googleMap.getCameraPosition().target);
+        return changes + newClusters.size();
+    }
+
+    // Adds the marker of a single cluster to the map
+    private void addMarker(Cluster cluster, MarkerOptions options) {
+        Marker marker;
+        if (cluster.isSingleLocation()) {
+            marker = googleMap.addMarker(options);
+            // The location is carried by the marker so its info window can be rendered from memory
+            marker.setTag(cluster.getLocations().get(0));
+            markerIDMap.put(marker, cluster.getKey());
+        } else {
+            // Clusters are shown as a badge containing the number of locations in the cluster
+            marker = googleMap.addMarker(options.icon(clusterIconFactory.getIcon(cluster.getSize())));
+            clusterMarkerMap.put(marker, cluster);
+        }
+        markersByKey.put(cluster.getKey(), marker);
+        clustersByKey.put(cluster.getKey(), cluster);
+    }
+
+    // Returns the ID of the location shown by a marker (or null if the marker shows a cluster)
+    public String getLocationID(Marker marker) {
+        return markerIDMap.get(marker);
+    }
+
+    // Returns the cluster shown by a marker (or null if the marker shows a single location)
+    public Cluster getCluster(Marker marker) {
+        return clusterMarkerMap.get(marker);
+    }
+
+    // Returns the number of markers currently on the map
+    public int getMarkerCount() {
+        return markersByKey.size();
+    }
+
+    // Sets the listener notified as queued markers are added to the map
+    public void setOnProgressListener(MarkerLoader.OnProgressListener progressListener) {
+        markerLoader.setOnProgressListener(progressListener);
+    }
+
+    // Stops adding queued markers (must be called once the map is destroyed)
+    public void stopLoading() {
+        markerLoader.cancel();
+    }
+}
@@ -13,7 +13,7 @@ import com.nearchitectural.utilities.models.Location;
 
 /* Author:  Kristiyan Doykov, Joel Bell-Wilding
  * Since:   10/12/19
- * Version: 1.0
+ * Version: 1.1
  * Purpose: Internally uses a Location object to model location information to be adapted
  *          for a given layout
  */
@@ -98,7 +98,8 @@ public class LocationModel implements SortedListAdapter.ViewModel {
 
         LocationModel model = (LocationModel) o;
 
-        return locationInfo.equals(o) && distanceStringForListItem.equals(model.distanceStringForListItem);
+        return locationInfo.equals(model.locationInfo)
+                && distanceStringForListItem.equals(model.distanceStringForListItem);
     }
 
     @Override
@@ -108,6 +109,24 @@ public class LocationModel implements SortedListAdapter.ViewModel {
         return result;
     }
 
+    /* Determines if the provided model would be displayed identically to this one (i.e. every value
+     * shown on a location card is the same), in which case a card showing it need not be rebound */
+    public boolean hasSameContentsAs(LocationModel model) {
+        return textEquals(getId(), model.getId())
+                && textEquals(getTitle(), model.getTitle())
+                && textEquals(getLocationType(), model.getLocationType())
+                && textEquals(getSummary(), model.getSummary())
+                && textEquals(locationInfo.getYearOpenedString(), model.locationInfo.getYearOpenedString())
+                && textEquals(getThumbnailURL(), model.getThumbnailURL())
+                && getLikes() == model.getLikes()
+                && textEquals(distanceStringForListItem, model.distanceStringForListItem);
+    }
+
+    // Compares two (possibly null) strings
+    private static boolean textEquals(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
     // Loads thumbnail image associated with Location
     @BindingAdapter({"thumbnail"})
     public static void loadImage(ImageView imageView, String imageURL) {
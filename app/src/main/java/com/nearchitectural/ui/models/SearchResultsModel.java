@@ -1,21 +1,17 @@
 package com.nearchitectural.ui.models;
 
-import android.util.Log;
-
-import androidx.annotation.NonNull;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
-import com.google.firebase.firestore.QuerySnapshot;
+import com.google.android.gms.maps.model.LatLng;
+import com.nearchitectural.utilities.AppExecutors;
 import com.nearchitectural.utilities.CurrentCoordinates;
-import com.nearchitectural.utilities.DatabaseExtractor;
 import com.nearchitectural.utilities.DistanceCalculator;
+import com.nearchitectural.utilities.FilterEngine;
+import com.nearchitectural.utilities.LocationRepository;
+import com.nearchitectural.utilities.SortRanker;
+import com.nearchitectural.utilities.SortRanks;
 import com.nearchitectural.utilities.models.Location;
 
 import java.util.ArrayList;
@@ -25,117 +21,136 @@ import java.util.Map;
 
 /* Author:  Kristiyan Doykov, Joel Bell-Wilding
  * Since:   12/12/19
- * Version: 1.1
+ * Version: 1.4
  * Purpose: Acts as a model which holds the list of search results (i.e. a list of locations models)
- *          to be adapted and displayed on the UI
+ *          to be adapted and displayed on the UI, along with the rank of each result in every
+ *          sort order (updated in the same batch as the results)
  */
 public class SearchResultsModel extends ViewModel {
 
-    private static final String TAG = "SAViewModel";
     private Map<String, Location> locationsToShow; // List of locations to be displayed in results
     private Map<String, LocationModel> locationModelsList; // List of models corresponding to location
     private MutableLiveData<List<Location>> locations; // Observes the state of the locations list
     private MutableLiveData<List<LocationModel>> locationModels; // Observes the state of the models list
+    private MutableLiveData<SortRanks<LocationModel>> sortRanks; // Observes the ranks of the models list
+    private final SortRanker<LocationModel> sortRanker; // Ranks the models (background executor only)
+
+    // Updates results with only the locations which changed whenever the shared dataset is synced
+    private final LocationRepository.OnLocationsChangedListener repositoryListener =
+            new LocationRepository.OnLocationsChangedListener() {
+                @Override
+                public void onLocationsChanged(List<Location> updatedLocations, List<String> removedLocationIDs) {
+                    applyChanges(updatedLocations, removedLocationIDs);
+                }
+            };
 
     public SearchResultsModel() {
         locationsToShow = new HashMap<>();
         locationModelsList = new HashMap<>();
-        createSearchResults(); // Create results initially when instantiated
+        locations = new MutableLiveData<>();
+        locationModels = new MutableLiveData<>();
+        sortRanks = new MutableLiveData<>();
+        sortRanker = new SortRanker<>(new FilterEngine.ItemAccessor<LocationModel>() {
+            @Override
+            public Location getLocation(LocationModel model) {
+                return model.getLocationInfo();
+            }
+
+            @Override
+            public double getDistance(LocationModel model) {
+                return model.getMDistanceFromCurrentPos();
+            }
+        });
+        // Create results from the cached dataset (synced with the database only if not yet loaded)
+        LocationRepository.getInstance().addOnLocationsChangedListener(repositoryListener);
     }
 
     // Returns the list of locations to show
     public LiveData<List<Location>> getLocationsToShow() {
-        if (locations == null) {
-            locations = new MutableLiveData<>();
-        }
         return locations;
     }
 
     // Returns the list of location models to be displayed
     public LiveData<List<LocationModel>> getLocationModels() {
-        if (locationModels == null) {
-            locationModels = new MutableLiveData<>();
-        }
         return locationModels;
     }
 
-    // Takes a list of locations to update and replaces each with the updated version stored in the database
+    // Returns the rank of each location model in every sort order (posted before the models they rank)
+    public LiveData<SortRanks<LocationModel>> getSortRanks() {
+        return sortRanks;
+    }
+
+    /* Takes a list of locations to update and replaces each with the updated version stored in the
+     * database. Locations are fetched in batches and results are posted once all have been retrieved */
     public void refineSearchResults(List<Location> locationsToUpdate) {
 
-        // Initialises database and lists to hold location and model data
-        FirebaseFirestore db = FirebaseFirestore.getInstance();
-
-        // Loops through each location in the list and updates it
-        for (final Location location : locationsToUpdate) {
-            db.collection("locations")
-                    .document(location.getId())
-                    .get()
-                    .addOnCompleteListener(new OnCompleteListener<DocumentSnapshot>() {
-                        @Override
-                        public void onComplete(@NonNull Task<DocumentSnapshot> task) {
-                            if (task.isSuccessful()) {
-
-                                DocumentSnapshot document = task.getResult();
-
-                                // Create location from database
-                                Location locationTemp = DatabaseExtractor.extractLocation(document.getId(), document.getData());
-                                locationsToShow.put(locationTemp.getId(), locationTemp);
-
-                                // Find current distance between user and location
-                                double distanceToUser = DistanceCalculator.calculateDistance(
-                                        CurrentCoordinates.getCoords().latitude, locationTemp.getLatitude(),
-                                        CurrentCoordinates.getCoords().longitude, locationTemp.getLongitude());
-
-                                // Create location model from location object and distance to user
-                                locationModelsList.put(locationTemp.getId(), new LocationModel(locationTemp, distanceToUser));
-                            }
-                            locationModels.postValue(new ArrayList<>(locationModelsList.values())); // Post model to model list
-                            locations.postValue(new ArrayList<>(locationsToShow.values())); // Post location to location list
-                        }
-                    });
+        List<String> locationIDs = new ArrayList<>();
+        for (Location location : locationsToUpdate) {
+            locationIDs.add(location.getId());
+        }
+        // Fetched locations are passed to the repository listener, which applies them in a single update
+        LocationRepository.getInstance().fetchLocations(locationIDs, null);
+    }
+
+    /* Creates location models for each updated location, removes results for removed
+     * locations and posts both lists once all changes are applied. Runs on the background
+     * executor (via the repository listener) so distances and models are built off the main thread */
+    private void applyChanges(List<Location> updatedLocations, List<String> removedLocationIDs) {
+
+        // Find current distance between user and every updated location in one pass
+        double[] distancesToUser = calculateDistancesToUser(updatedLocations);
+
+        for (int i = 0; i < updatedLocations.size(); i++) {
+            Location location = updatedLocations.get(i);
+            locationsToShow.put(location.getId(), location);
+            // Create location model from location object and distance to user
+            locationModelsList.put(location.getId(), new LocationModel(location, distancesToUser[i]));
         }
+
+        for (String removedID : removedLocationIDs) {
+            locationsToShow.remove(removedID);
+            locationModelsList.remove(removedID);
+        }
+        List<LocationModel> models = new ArrayList<>(locationModelsList.values());
+        // Ranks are posted first, so they are available whenever the models they rank are received
+        sortRanks.postValue(sortRanker.rank(models));
+        locationModels.postValue(models); // Post model to model list
+        locations.postValue(new ArrayList<>(locationsToShow.values())); // Post location to location list
+    }
+
+    /* Recalculates the distance to every result after the user's position has changed. Locations
+     * are unchanged, so distances are calculated locally rather than fetched again, and only
+     * the distances are ranked again */
+    public void updateDistances() {
+        AppExecutors.getInstance().background().execute(new Runnable() {
+            @Override
+            public void run() {
+                applyChanges(new ArrayList<>(locationsToShow.values()), new ArrayList<String>());
+            }
+        });
+    }
+
+    // Calculates the distance (in meters) from the user's current position to each location
+    private static double[] calculateDistancesToUser(List<Location> locations) {
+
+        double[] latitudes = new double[locations.size()];
+        double[] longitudes = new double[locations.size()];
+        for (int i = 0; i < locations.size(); i++) {
+            latitudes[i] = locations.get(i).getLatitude();
+            longitudes[i] = locations.get(i).getLongitude();
+        }
+
+        LatLng userPosition = CurrentCoordinates.getCoords();
+        double[] distances = new double[locations.size()];
+        DistanceCalculator.calculateDistances(userPosition.latitude, userPosition.longitude,
+                latitudes, longitudes, Double.POSITIVE_INFINITY, distances);
+        return distances;
     }
 
-    // Initially retrieves locations from the database and creates results model
-    private void createSearchResults() {
-
-        // Initialises database and lists to hold location and model data
-        FirebaseFirestore db = FirebaseFirestore.getInstance();
-
-        // Creates location and models from database and posts each to their respective lists
-        db.collection("locations")
-                .get()
-                .addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-                    @Override
-                    public void onComplete(@NonNull Task<QuerySnapshot> task) {
-                        if (task.isSuccessful()) {
-                            for (QueryDocumentSnapshot document : task.getResult()) {
-                                Log.d(TAG, String.valueOf(document.getData().get("name")));
-
-                                // For each location create a new Location instance and add it to the list
-                                Location locationTemp = DatabaseExtractor.extractLocation(document.getId(), document.getData());
-                                locationsToShow.put(locationTemp.getId(), locationTemp);
-
-                                // Find current distance between user and location
-                                double distanceToUser = DistanceCalculator.calculateDistance(
-                                        CurrentCoordinates.getCoords().latitude, locationTemp.getLatitude(),
-                                        CurrentCoordinates.getCoords().longitude, locationTemp.getLongitude());
-
-                                // Create location model from location object and distance to user
-                                locationModelsList.put(locationTemp.getId(), new LocationModel(locationTemp, distanceToUser));
-                                Log.d(TAG, document.getId() + " => " + document.getData());
-                            }
-                            locationModels.postValue(new ArrayList<>(locationModelsList.values())); // Post model to model list
-                            locations.postValue(new ArrayList<>(locationsToShow.values())); // Post location to location list
-                        } else {
-                            Log.w(TAG, "Error getting documents.", task.getException());
-                            // Send an empty results list
-                            locationsToShow = new HashMap<>();
-                            locations.postValue(new ArrayList<>(locationsToShow.values()));
-                            locationModelsList = new HashMap<>();
-                            locationModels.postValue(new ArrayList<>(locationModelsList.values()));
-                        }
-                    }
-                });
+    @Override
+    protected void onCleared() {
+        // Stop observing the shared repository once the owning activity is finished
+        LocationRepository.getInstance().removeOnLocationsChangedListener(repositoryListener);
+        super.onCleared();
     }
 }
\ No newline at end of file
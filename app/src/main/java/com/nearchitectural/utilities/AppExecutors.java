@@ -0,0 +1,131 @@
+package com.nearchitectural.utilities;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/* Version: 1.2
+ * Purpose: Singleton class holding the executors shared by the application so that decoding of
+ *          database results, distance computation, model building and disk access all take
+ *          place off the main thread. Only finished results are returned to the main thread.
+ */
+public class AppExecutors {
+
+    private static final long SETTLE_DELAY_MILLIS = 500; // Pause after a change before deferred work runs
+
+    private static volatile AppExecutors soleInstance; // The single instance of the executors
+    private final ExecutorService background; // Serial executor for processing database results
+    private final ExecutorService diskIO; // Serial executor for reading/writing files on the device
+    private final ExecutorService search; // Serial executor for filtering search results
+    private final ScheduledExecutorService indexing; // Serial executor for work deferred until changes settle
+    private final Executor mainThread; // Executor which runs tasks on the main (UI) thread
+
+    //private constructor
+    private AppExecutors() {
+
+        //Prevent form the reflection api.
+        if (soleInstance != null) {
+            throw new RuntimeException("Use getInstance() method to get the single instance of this class.");
+        }
+        background = Executors.newSingleThreadExecutor(new NamedThreadFactory("background"));
+        diskIO = Executors.newSingleThreadExecutor(new NamedThreadFactory("disk-io"));
+        search = Executors.newSingleThreadExecutor(new NamedThreadFactory("search"));
+        indexing = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("indexing"));
+        mainThread = new MainThreadExecutor();
+    }
+
+    public static AppExecutors getInstance() {
+        if (soleInstance == null) { //if there is no instance available... create new one
+            synchronized (AppExecutors.class) {
+                if (soleInstance == null) soleInstance = new AppExecutors();
+            }
+        }
+        return soleInstance;
+    }
+
+    /* Executor for processing database results (decoding, distances and models). Tasks run one at
+     * a time in the order they were submitted, so state confined to it needs no further locking */
+    public ExecutorService background() {
+        return background;
+    }
+
+    // Executor for reading and writing files on the device
+    public ExecutorService diskIO() {
+        return diskIO;
+    }
+
+    /* Executor for filtering search results, kept separate so that searches are never queued behind
+     * database processing. Tasks run one at a time, so a filter engine confined to it needs no locking */
+    public ExecutorService search() {
+        return search;
+    }
+
+    /* Executor for work which can wait until a burst of database changes has settled (e.g. rebuilding
+     * search suggestions), kept separate so it never holds up the processing of further changes */
+    public ScheduledExecutorService indexing() {
+        return indexing;
+    }
+
+    // Executor for posting finished results to the main thread
+    public Executor mainThread() {
+        return mainThread;
+    }
+
+    /* Runs the task on the indexing executor once no change has been made for a short delay, unless it
+     * is already waiting to run (so the task runs once for a burst of changes, after the last of them) */
+    public void runOnceSettled(final AtomicBoolean pending, final Runnable task) {
+        if (pending.compareAndSet(false, true)) {
+            indexing.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    // Cleared first, so a change made while the task runs schedules it again
+                    pending.set(false);
+                    task.run();
+                }
+            }, SETTLE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Executor which posts each task to the main thread's message queue
+    private static class MainThreadExecutor implements Executor {
+
+        private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mainThreadHandler.post(command);
+        }
+    }
+
+    // Names executor threads (for debugging) and lowers their priority below that of the UI thread
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String name; // Name given to the executor's thread
+
+        NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "nearchitectural-" + name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -3,13 +3,17 @@ package com.nearchitectural.utilities;
 /*
  * Author:  Kristiyan Doykov
  * Since:   20/12/19
- * Version: 1.1
+ * Version: 1.3
  * Purpose: Utility class which calculates the distance between two points on
  *          earth (i.e. location to location, or user position to location)
  */
 public class DistanceCalculator {
 
-    private final static int EARTH_RADIUS = 6371; // Radius of the earth
+    public final static int EARTH_RADIUS = 6371; // Radius of the earth (in kilometers)
+    // Diameter of the earth in meters (as used by the batch calculation)
+    private final static double EARTH_DIAMETER_METERS = 2.0 * EARTH_RADIUS
+            * Settings.DistanceUnit.KILOMETER.getConversionRate();
+    private final static double HALF_RADIANS_PER_DEGREE = Math.PI / 360; // Converts degrees to half the angle in radians
 
     /* Calculates the distance between two points on the map (using their latitude and
      * longitude. Code fragment taken and modified from the following web-page:
@@ -27,4 +31,88 @@ public class DistanceCalculator {
         // Return distance in meters  (regardless of distance unit setting)
         return EARTH_RADIUS * tempDistTwo * Settings.DistanceUnit.KILOMETER.getConversionRate();
     }
+
+    /* Calculates the distance (in meters) from one origin to every point of a dataset in one pass,
+     * storing each in the distances array. The origin's sine and cosine are calculated once, and
+     * any point which a latitude/longitude bounding box shows to be further than maxDistance is
+     * rejected without trigonometry and given a distance of positive infinity (pass infinity to
+     * calculate every distance). Returns the number of points within maxDistance */
+    public static int calculateDistances(double originLat, double originLon, double[] latitudes,
+                                         double[] longitudes, double maxDistance, double[] distances) {
+
+        double originSin = Math.sin(Math.toRadians(originLat));
+        double originCos = Math.cos(Math.toRadians(originLat));
+
+        /* No point within maxDistance can differ in latitude by more than the angle maxDistance
+         * covers, or in longitude by more than that angle widened by the origin's latitude */
+        double latitudeLimit = 180;
+        double longitudeLimit = 180;
+        double angularDistance = maxDistance / (EARTH_DIAMETER_METERS / 2);
+        if (angularDistance < Math.PI / 2) {
+            latitudeLimit = Math.toDegrees(angularDistance);
+            double longitudeSine = Math.sin(angularDistance) / originCos;
+            if (longitudeSine < 1) {
+                longitudeLimit = Math.toDegrees(Math.asin(longitudeSine));
+            }
+        }
+
+        int withinDistance = 0;
+        for (int i = 0; i < latitudes.length; i++) {
+
+            double latitudeDelta = latitudes[i] - originLat;
+            double longitudeDelta = longitudes[i] - originLon;
+            // Longitude difference across the 180th meridian (e.g. 179 to -179 is 2 degrees)
+            if (longitudeDelta > 180 || longitudeDelta < -180) {
+                longitudeDelta -= 360 * Math.floor((longitudeDelta + 180) / 360);
+            }
+            if (Math.abs(latitudeDelta) > latitudeLimit || Math.abs(longitudeDelta) > longitudeLimit) {
+                distances[i] = Double.POSITIVE_INFINITY;
+                continue;
+            }
+
+            /* Haversine formula (as above), where the point's latitude cosine is derived from the
+             * origin's using the latitude difference (cos(a + b) = cos a cos b - sin a sin b) */
+            double halfLatitudeDelta = latitudeDelta * HALF_RADIANS_PER_DEGREE;
+            double halfLatitudeSine = sine(halfLatitudeDelta);
+            double halfLongitudeSine = sine(longitudeDelta * HALF_RADIANS_PER_DEGREE);
+            double pointCos = originCos * cosine(2 * halfLatitudeDelta) - originSin * sine(2 * halfLatitudeDelta);
+            double haversine = halfLatitudeSine * halfLatitudeSine
+                    + originCos * pointCos * halfLongitudeSine * halfLongitudeSine;
+            double distance = EARTH_DIAMETER_METERS * arcSine(Math.sqrt(Math.min(1, haversine)));
+
+            distances[i] = distance;
+            if (distance <= maxDistance) {
+                withinDistance++;
+            }
+        }
+        return withinDistance;
+    }
+
+    /* The angles of nearby points are small, so their sines, cosines and arcsines are calculated
+     * with short Taylor series (accurate to double precision for angles under 0.2 radians, i.e.
+     * points within ~2500km) rather than the much slower general purpose Math functions */
+    private static double sine(double angle) {
+        if (angle > 0.2 || angle < -0.2) {
+            return Math.sin(angle);
+        }
+        double square = angle * angle;
+        return angle * (1 - square / 6 * (1 - square / 20 * (1 - square / 42 * (1 - square / 72))));
+    }
+
+    private static double cosine(double angle) {
+        if (angle > 0.2 || angle < -0.2) {
+            return Math.cos(angle);
+        }
+        double square = angle * angle;
+        return 1 - square / 2 * (1 - square / 12 * (1 - square / 30 * (1 - square / 56 * (1 - square / 90))));
+    }
+
+    private static double arcSine(double value) {
+        if (value > 0.1) {
+            return Math.asin(value);
+        }
+        double square = value * value;
+        return value * (1 + square * (1.0 / 6 + square * (3.0 / 40 + square * (15.0 / 336
+                + square * (105.0 / 3456 + square * (945.0 / 42240))))));
+    }
 }
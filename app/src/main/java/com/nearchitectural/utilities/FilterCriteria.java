@@ -0,0 +1,108 @@
+package com.nearchitectural.utilities;
+
+/* Version: 1.2
+ * Purpose: Immutable set of search criteria (search text, maximum distance from the user and
+ *          required tags) which locations are filtered against by the FilterEngine
+ */
+public class FilterCriteria {
+
+    private final String query; // Text which the location name or place type must contain (ignoring case)
+    private final double maxDistance; // Furthest distance from the user in meters (0 or less for no limit)
+    private final long requiredTagBits; // Tags which the location must have (see TagID.bit())
+
+    // Creates criteria with the maximum distance rounded to whole meters
+    public FilterCriteria(String query, double maxDistance, long requiredTagBits) {
+        this(query, maxDistance, 1, requiredTagBits);
+    }
+
+    /* Creates criteria with the maximum distance rounded to the nearest multiple of the provided step
+     * (e.g. one step of the distance slider), so distances selecting the same step share one criteria */
+    public FilterCriteria(String query, double maxDistance, double distanceStep, long requiredTagBits) {
+        this.query = normaliseQuery(query);
+        // Infinite, unreachable and unset (0 or less) distances place no restriction on locations
+        if (Double.isInfinite(maxDistance) || Double.isNaN(maxDistance) || maxDistance == Double.MAX_VALUE
+                || maxDistance <= 0) {
+            this.maxDistance = 0;
+        } else {
+            // A limit never rounds down to no limit at all
+            this.maxDistance = Math.max(1, Math.round(maxDistance / distanceStep)) * distanceStep;
+        }
+        this.requiredTagBits = requiredTagBits;
+    }
+
+    /* Returns the search text in lower case without surrounding spaces and with each run of spaces
+     * replaced by a single space, so text differing only in spacing is the same query */
+    private static String normaliseQuery(String query) {
+        if (query == null) {
+            return "";
+        }
+        StringBuilder normalised = new StringBuilder(query.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < query.length(); i++) {
+            char character = query.charAt(i);
+            if (Character.isWhitespace(character)) {
+                pendingSpace = normalised.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    normalised.append(' ');
+                    pendingSpace = false;
+                }
+                normalised.append(Character.toLowerCase(character));
+            }
+        }
+        return normalised.toString();
+    }
+
+    // Returns the normalised (lower case) search text
+    public String getQuery() {
+        return query;
+    }
+
+    public double getMaxDistance() {
+        return maxDistance;
+    }
+
+    // Determines if a maximum distance applies
+    public boolean hasMaxDistance() {
+        return maxDistance > 0;
+    }
+
+    public long getRequiredTagBits() {
+        return requiredTagBits;
+    }
+
+    // Criteria are equal if they have the same normalised text, rounded maximum distance and tags
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        FilterCriteria criteria = (FilterCriteria) o;
+
+        return Double.compare(criteria.maxDistance, maxDistance) == 0
+                && requiredTagBits == criteria.requiredTagBits
+                && query.equals(criteria.query);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = query.hashCode();
+        long distanceBits = Double.doubleToLongBits(maxDistance);
+        result = 31 * result + (int) (distanceBits ^ (distanceBits >>> 32));
+        result = 31 * result + (int) (requiredTagBits ^ (requiredTagBits >>> 32));
+        return result;
+    }
+
+    /* Determines if every location meeting these criteria also meets the previous criteria (i.e. the
+     * search text contains the previous text, the distance is no further and every previous tag is
+     * still required), in which case only the previous results need to be filtered */
+    public boolean isRefinementOf(FilterCriteria previous) {
+
+        boolean textNarrowed = query.contains(previous.query);
+        boolean distanceNarrowed = !previous.hasMaxDistance()
+                || (hasMaxDistance() && maxDistance <= previous.maxDistance);
+        boolean tagsNarrowed = (requiredTagBits & previous.requiredTagBits) == previous.requiredTagBits;
+
+        return textNarrowed && distanceNarrowed && tagsNarrowed;
+    }
+}
@@ -0,0 +1,217 @@
+package com.nearchitectural.utilities;
+
+import com.nearchitectural.utilities.models.Location;
+import com.nearchitectural.utilities.search.ReportIndex;
+import com.nearchitectural.utilities.search.SearchIndex;
+import com.nearchitectural.utilities.spatial.SpatialIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/* Version: 1.6
+ * Purpose: Filters a list of items representing locations (e.g. search result models or the
+ *          locations shown on the map) against a set of criteria in a single pass. Predicates
+ *          are checked cheapest first - tags (one bit comparison), then distance (one number
+ *          comparison, or a lookup of the locations in range found from the spatial index), then
+ *          search text - so most rejected items cost a single comparison.
+ *          The results of the last filter are remembered, so a query which narrows the last one
+ *          (e.g. as the search text is typed) only filters the last results, and the results of
+ *          recent filters are cached so repeating one returns its results at once. The same pass
+ *          counts how many results have each tag, so no further scan is needed. Not thread safe
+ */
+public class FilterEngine<T> {
+
+    // Interface through which the engine reads the location and distance of each item being filtered
+    public interface ItemAccessor<T> {
+        Location getLocation(T item);
+        double getDistance(T item); // Distance of the item from the user (in meters)
+    }
+
+    private static final int RESULT_CACHE_CAPACITY = 16; // Number of recent filter results kept
+
+    private final ItemAccessor<T> accessor; // Reads the location and distance of each item
+    private final FilterResultCache<FilterResults<T>> resultCache; // Results of recent filters of the current items
+
+    // Inputs and results of the last filter (used to narrow the next filter if possible)
+    private List<T> lastItems; // Items last filtered
+    private SearchIndex lastSearchIndex; // Search index used by the last filter
+    private ReportIndex lastReportIndex; // Report index used by the last filter
+    private SpatialIndex lastSpatialIndex; // Spatial index used by the last filter
+    private double lastLatitude; // Latitude of the user when last filtered with a spatial index
+    private double lastLongitude; // Longitude of the user when last filtered with a spatial index
+    private int lastReportIndexVersion; // Version of the report index when last used
+    private int lastTagVersion; // Version of the location tags when last filtered (see Location.getTagVersion())
+    private FilterCriteria lastCriteria; // Criteria of the last filter
+    private FilterResults<T> lastResults; // Items which met the last criteria
+
+    public FilterEngine(ItemAccessor<T> accessor) {
+        this.accessor = accessor;
+        resultCache = new FilterResultCache<>(RESULT_CACHE_CAPACITY);
+    }
+
+    // Returns the cache of recent filter results (e.g. to log its hit and miss counts)
+    public FilterResultCache<FilterResults<T>> getResultCache() {
+        return resultCache;
+    }
+
+    /* Returns the items meeting every criterion, in their original order (the list cannot be
+     * modified). If a search index is provided (it may be null) the locations matching the search
+     * text can be found from the index before the pass, otherwise the name and place type of each
+     * remaining item are compared */
+    public List<T> filter(List<T> items, FilterCriteria criteria, SearchIndex searchIndex) {
+        return filter(items, criteria, searchIndex, null);
+    }
+
+    /* Returns the items meeting every criterion as above. If a report index is provided (it may be
+     * null), locations whose report contains the words of the search text also match the text */
+    public List<T> filter(List<T> items, FilterCriteria criteria, SearchIndex searchIndex, ReportIndex reportIndex) {
+        return filterWithTagCounts(items, criteria, searchIndex, reportIndex).getItems();
+    }
+
+    /* Returns the items meeting every criterion as above, along with how many of them have each tag
+     * (counted during the same pass, or cached with the results) */
+    public FilterResults<T> filterWithTagCounts(List<T> items, FilterCriteria criteria, SearchIndex searchIndex,
+                                                ReportIndex reportIndex) {
+        return filterWithTagCounts(items, criteria, searchIndex, reportIndex, null, 0, 0);
+    }
+
+    /* Returns the items meeting every criterion and their tag counts as above. If a spatial index is
+     * provided (it may be null) the locations within the maximum distance of the user's position can
+     * be found from the index before the pass, otherwise the distance of each remaining item is compared */
+    public FilterResults<T> filterWithTagCounts(List<T> items, FilterCriteria criteria, SearchIndex searchIndex,
+                                                ReportIndex reportIndex, SpatialIndex spatialIndex,
+                                                double latitude, double longitude) {
+
+        // Read before searching, so a change to the reports during the search prevents the next refinement
+        int reportIndexVersion = reportIndex == null ? 0 : reportIndex.getVersion();
+        // Read before filtering for the same reason, since liking a location changes its tags in place
+        int tagVersion = Location.getTagVersion();
+
+        /* Results of earlier filters are only valid while the items (e.g. distances), their tags, indexes
+         * and position are unchanged */
+        boolean sameDataset = items == lastItems && tagVersion == lastTagVersion && searchIndex == lastSearchIndex
+                && reportIndex == lastReportIndex && reportIndexVersion == lastReportIndexVersion
+                && spatialIndex == lastSpatialIndex && latitude == lastLatitude && longitude == lastLongitude;
+        if (!sameDataset) {
+            resultCache.clear();
+        }
+
+        FilterResults<T> results = resultCache.get(criteria);
+        if (results == null) {
+            // Items which did not meet the last criteria cannot meet narrower criteria, so only the last
+            // results are filtered. A wider query (or new items) requires a full scan of the items
+            boolean narrowed = sameDataset && criteria.isRefinementOf(lastCriteria)
+                    && (reportIndex == null || ReportIndex.isNarrowing(lastCriteria.getQuery(), criteria.getQuery()));
+            results = filterItems(narrowed ? lastResults.getItems() : items, criteria, searchIndex, reportIndex,
+                    spatialIndex, latitude, longitude);
+            resultCache.put(criteria, results);
+        }
+
+        lastItems = items;
+        lastSearchIndex = searchIndex;
+        lastReportIndex = reportIndex;
+        lastReportIndexVersion = reportIndexVersion;
+        lastTagVersion = tagVersion;
+        lastSpatialIndex = spatialIndex;
+        lastLatitude = latitude;
+        lastLongitude = longitude;
+        lastCriteria = criteria;
+        lastResults = results;
+        return results;
+    }
+
+    // Returns the candidate items which meet every criterion and counts the tags of those items
+    private FilterResults<T> filterItems(List<T> candidates, FilterCriteria criteria, SearchIndex searchIndex,
+                                         ReportIndex reportIndex, SpatialIndex spatialIndex,
+                                         double latitude, double longitude) {
+
+        // Locations in range are only taken from the index if there are fewer than the items left to compare
+        Set<String> rangeMatches = null;
+        if (criteria.hasMaxDistance() && spatialIndex != null) {
+            List<Location> locationsInRange = spatialIndex.withinRadius(latitude, longitude, criteria.getMaxDistance());
+            if (locationsInRange.size() <= candidates.size()) {
+                rangeMatches = new HashSet<>(locationsInRange.size() * 2);
+                for (Location location : locationsInRange) {
+                    rangeMatches.add(location.getId());
+                }
+            }
+        }
+
+        // Matches are only taken from the index if there are fewer than the items left to compare
+        String query = criteria.getQuery();
+        Set<String> textMatches = null;
+        if (!query.isEmpty() && searchIndex != null) {
+            int[] ordinals = searchIndex.search(query);
+            if (ordinals.length <= candidates.size()) {
+                textMatches = findTextMatches(searchIndex, ordinals);
+            }
+        }
+
+        // Reports matching the search text (none if no report index is provided)
+        List<ReportIndex.Match> reportMatchList = null;
+        Set<String> reportMatches = new HashSet<>();
+        if (!query.isEmpty()) {
+            reportMatchList = reportIndex != null
+                    ? reportIndex.search(query) : Collections.<ReportIndex.Match>emptyList();
+            for (ReportIndex.Match match : reportMatchList) {
+                reportMatches.add(match.getReportID());
+            }
+        }
+
+        List<T> results = new ArrayList<>();
+        int[] tagCounts = new int[TagID.values().length];
+        for (T item : candidates) {
+            if (matches(item, criteria, rangeMatches, textMatches, reportMatches)) {
+                results.add(item);
+                countTags(accessor.getLocation(item).getTagBits(), tagCounts);
+            }
+        }
+        return new FilterResults<>(Collections.unmodifiableList(results), tagCounts, reportMatchList);
+    }
+
+    // Adds one to the count of each tag in the bitmask (visiting only the tags which are set)
+    private static void countTags(long tagBits, int[] tagCounts) {
+        while (tagBits != 0) {
+            tagCounts[Long.numberOfTrailingZeros(tagBits)]++;
+            tagBits &= tagBits - 1; // Clears the lowest set bit
+        }
+    }
+
+    /* Determines if a single item meets every criterion (range and text matches are null if not found in
+     * advance, and the text also matches if the location's report is one of the report matches) */
+    private boolean matches(T item, FilterCriteria criteria, Set<String> rangeMatches, Set<String> textMatches,
+                            Set<String> reportMatches) {
+
+        Location location = accessor.getLocation(item);
+        if (!location.hasAllTags(criteria.getRequiredTagBits())) {
+            return false;
+        }
+        if (criteria.hasMaxDistance() && (rangeMatches != null
+                ? !rangeMatches.contains(location.getId())
+                : accessor.getDistance(item) > criteria.getMaxDistance())) {
+            return false;
+        }
+
+        String query = criteria.getQuery();
+        if (query.isEmpty()) {
+            return true;
+        }
+        boolean textMatch = textMatches != null
+                ? textMatches.contains(location.getId())
+                : location.getName().toLowerCase().contains(query) || location.getType().toLowerCase().contains(query);
+        return textMatch || reportMatches.contains(location.getReportID());
+    }
+
+    // Returns the IDs of the indexed locations found by a search
+    private static Set<String> findTextMatches(SearchIndex searchIndex, int[] ordinals) {
+        List<Location> indexedLocations = searchIndex.getLocations();
+        Set<String> textMatches = new HashSet<>(ordinals.length * 2);
+        for (int ordinal : ordinals) {
+            textMatches.add(indexedLocations.get(ordinal).getId());
+        }
+        return textMatches;
+    }
+}
@@ -0,0 +1,60 @@
+package com.nearchitectural.utilities;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/* Version: 1.1
+ * Purpose: Bounded cache of the results of recent filters, keyed by their criteria, so returning
+ *          to a previous set of criteria (e.g. unticking a tag or moving the distance slider back)
+ *          does not filter the items again. The least recently used results are dropped first.
+ *          Results are only valid for the items they were filtered from, so the cache must be
+ *          cleared whenever the items change. Not thread safe
+ */
+public class FilterResultCache<T> {
+
+    private final Map<FilterCriteria, T> results; // Cached results in order of least recent use
+    private int hitCount; // Number of lookups which found cached results
+    private int missCount; // Number of lookups which did not
+
+    public FilterResultCache(final int capacity) {
+        results = new LinkedHashMap<FilterCriteria, T>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<FilterCriteria, T> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    // Returns the cached results of a filter with the provided criteria (or null if not cached)
+    public T get(FilterCriteria criteria) {
+        T cachedResults = results.get(criteria);
+        if (cachedResults != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return cachedResults;
+    }
+
+    // Caches the results of a filter with the provided criteria (the results must not be modified)
+    public void put(FilterCriteria criteria, T filterResults) {
+        results.put(criteria, filterResults);
+    }
+
+    // Removes all cached results (e.g. once the items being filtered have changed)
+    public void clear() {
+        results.clear();
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    public int getMissCount() {
+        return missCount;
+    }
+}
@@ -0,0 +1,51 @@
+package com.nearchitectural.utilities;
+
+import com.nearchitectural.utilities.search.ReportIndex;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/* Version: 1.1
+ * Purpose: Immutable results of a filter - the items which met the criteria, how many of them
+ *          have each tag (i.e. how many results would remain if that tag were also required) and
+ *          the reports which matched the search text (used to rank the results by relevance)
+ */
+public class FilterResults<T> {
+
+    private final List<T> items; // Items which met the criteria (cannot be modified)
+    private final int[] tagCounts; // Number of items with each tag (indexed by TagID ordinal)
+    private final List<ReportIndex.Match> reportMatches; // Reports matching the search text (null if none searched)
+
+    FilterResults(List<T> items, int[] tagCounts, List<ReportIndex.Match> reportMatches) {
+        this.items = items;
+        this.tagCounts = tagCounts;
+        this.reportMatches = reportMatches;
+    }
+
+    // Returns the items which met the criteria, in their original order
+    public List<T> getItems() {
+        return items;
+    }
+
+    // Returns the number of items which have the provided tag
+    public int getTagCount(TagID tag) {
+        return tagCounts[tag.ordinal()];
+    }
+
+    // Returns the number of items which have each tag (a copy which cannot be modified)
+    public Map<TagID, Integer> getTagCounts() {
+        Map<TagID, Integer> tagCountMap = new EnumMap<>(TagID.class);
+        for (TagID tag : TagID.values()) {
+            tagCountMap.put(tag, tagCounts[tag.ordinal()]);
+        }
+        return Collections.unmodifiableMap(tagCountMap);
+    }
+
+    /* Returns the reports which matched the search text, best first (empty if no report index was
+     * searched), or null if the criteria had no search text */
+    public List<ReportIndex.Match> getReportMatches() {
+        return reportMatches;
+    }
+}
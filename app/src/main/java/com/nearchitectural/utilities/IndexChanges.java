@@ -0,0 +1,72 @@
+package com.nearchitectural.utilities;
+
+import com.nearchitectural.utilities.models.Location;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/* Version: 1.0
+ * Purpose: Immutable record of the locations which have changed since an index was built. Indexes
+ *          ignore the locations they were built with which have since been updated or removed, and
+ *          check the latest version of each updated location one by one, so applying a database
+ *          change to an index costs the number of changes rather than the size of the dataset
+ */
+public class IndexChanges {
+
+    private static final IndexChanges NONE = new IndexChanges(Collections.<String>emptySet(),
+            Collections.<Location>emptyList());
+
+    private final Set<String> replacedIDs; // IDs of every location updated or removed since the index was built
+    private final List<Location> changedLocations; // Latest version of each location added or updated since
+
+    private IndexChanges(Set<String> replacedIDs, List<Location> changedLocations) {
+        this.replacedIDs = replacedIDs;
+        this.changedLocations = changedLocations;
+    }
+
+    // Returns the changes of an index which has just been built
+    public static IndexChanges none() {
+        return NONE;
+    }
+
+    // Returns these changes followed by the provided changes
+    public IndexChanges with(List<Location> updatedLocations, Collection<String> removedLocationIDs) {
+
+        Set<String> replaced = new HashSet<>(replacedIDs);
+        Map<String, Location> changed = new LinkedHashMap<>();
+        for (Location location : changedLocations) {
+            changed.put(location.getId(), location);
+        }
+        for (String removedID : removedLocationIDs) {
+            replaced.add(removedID);
+            changed.remove(removedID);
+        }
+        for (Location location : updatedLocations) {
+            replaced.add(location.getId());
+            changed.put(location.getId(), location);
+        }
+        return new IndexChanges(Collections.unmodifiableSet(replaced),
+                Collections.unmodifiableList(new ArrayList<>(changed.values())));
+    }
+
+    // Determines if the location an index was built with has since been updated or removed
+    public boolean isReplaced(String locationID) {
+        return !replacedIDs.isEmpty() && replacedIDs.contains(locationID);
+    }
+
+    // Returns the latest version of each location added or updated since the index was built
+    public List<Location> getChangedLocations() {
+        return changedLocations;
+    }
+
+    // Returns the number of locations changed since the index was built (used to decide when to rebuild it)
+    public int size() {
+        return replacedIDs.size();
+    }
+}
@@ -0,0 +1,222 @@
+package com.nearchitectural.utilities;
+
+import com.nearchitectural.utilities.models.Location;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Version: 1.1
+ * Purpose: Decodes location documents from the database into Location objects by reading each
+ *          field exactly once, coercing mismatched number types without throwing exceptions
+ *          and recording how many documents and fields were decoded or could not be used
+ */
+public class LocationDecoder {
+
+    // Database field names which make up the location schema
+    static final String FIELD_NAME = "name";
+    static final String FIELD_PLACE_TYPE = "placeType";
+    static final String FIELD_YEAR_OPENED = "yearOpened";
+    static final String FIELD_SUMMARY = "summary";
+    static final String FIELD_LATITUDE = "latitude";
+    static final String FIELD_LONGITUDE = "longitude";
+    static final String FIELD_THUMBNAIL = "thumbnail";
+    static final String FIELD_REPORT_ID = "reportID";
+    static final String FIELD_LIKES = "likes";
+
+    private static final String UNKNOWN = "Unknown"; // Value used for missing text fields
+
+    // Map of database references to tags (built once as it is the same for every document)
+    private static final Map<String, TagID> TAG_FIELDS = new HashMap<>();
+
+    static {
+        for (TagID tag : TagID.values()) {
+            if (tag.databaseReference != null) {
+                TAG_FIELDS.put(tag.databaseReference, tag);
+            }
+        }
+    }
+
+    private final AtomicLong decodedDocuments = new AtomicLong(); // Number of documents decoded
+    private final AtomicLong coercedFields = new AtomicLong(); // Number of fields converted to the expected type
+    private final AtomicLong failedFields = new AtomicLong(); // Number of fields which could not be used
+
+    // Decodes a single location document (the document's data map is read in one pass)
+    public Location decode(String documentID, Map<String, Object> document) {
+
+        String name = UNKNOWN;
+        String placeType = UNKNOWN;
+        String summary = UNKNOWN;
+        String thumbnailAddress = "";
+        String reportID = UNKNOWN;
+        long yearOpened = 0;
+        long likes = 0;
+        double latitude = 0;
+        double longitude = 0;
+        long activeTagBits = 0;
+
+        if (document != null) {
+            for (Map.Entry<String, Object> field : document.entrySet()) {
+                Object value = field.getValue();
+                if (value == null) {
+                    continue;
+                }
+                switch (field.getKey()) {
+                    case FIELD_NAME:
+                        name = decodeString(value, UNKNOWN);
+                        break;
+                    case FIELD_PLACE_TYPE:
+                        placeType = decodeString(value, UNKNOWN);
+                        break;
+                    case FIELD_SUMMARY:
+                        summary = decodeString(value, UNKNOWN);
+                        break;
+                    case FIELD_THUMBNAIL:
+                        thumbnailAddress = decodeString(value, "");
+                        break;
+                    case FIELD_REPORT_ID:
+                        reportID = decodeString(value, UNKNOWN);
+                        break;
+                    case FIELD_YEAR_OPENED:
+                        yearOpened = (long) decodeNumber(value);
+                        break;
+                    case FIELD_LIKES:
+                        likes = (long) decodeNumber(value);
+                        break;
+                    case FIELD_LATITUDE:
+                        latitude = decodeNumber(value);
+                        break;
+                    case FIELD_LONGITUDE:
+                        longitude = decodeNumber(value);
+                        break;
+                    default:
+                        TagID tag = TAG_FIELDS.get(field.getKey());
+                        if (tag != null && decodeBoolean(value)) {
+                            activeTagBits |= tag.bit();
+                        }
+                        break;
+                }
+            }
+        }
+
+        // If location is liked, set the liked tag
+        if (Settings.getInstance().locationIsLiked(documentID)) {
+            activeTagBits |= TagID.LIKED_BY_YOU.bit();
+        }
+
+        decodedDocuments.incrementAndGet();
+
+        // All the information about the current location
+        return new Location(
+                documentID,
+                name,
+                (int) yearOpened,
+                (int) likes,
+                placeType,
+                summary,
+                latitude,
+                longitude,
+                activeTagBits,
+                thumbnailAddress,
+                reportID);
+    }
+
+    public long getDecodedDocuments() {
+        return decodedDocuments.get();
+    }
+
+    public long getCoercedFields() {
+        return coercedFields.get();
+    }
+
+    public long getFailedFields() {
+        return failedFields.get();
+    }
+
+    // Returns a summary of decoding statistics for logging
+    public String getStatistics() {
+        return "decoded=" + decodedDocuments.get()
+                + " coerced=" + coercedFields.get()
+                + " failed=" + failedFields.get();
+    }
+
+    // Returns the value if it is a String, otherwise records a failure and returns the default value
+    private String decodeString(Object value, String defaultValue) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        failedFields.incrementAndGet();
+        return defaultValue;
+    }
+
+    /* Converts any numeric value (or a String holding a number) to a double. Evades accidental use
+     * of Strings or differing number types in number fields in the database */
+    private double decodeNumber(Object value) {
+        if (value instanceof Double || value instanceof Long) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof Number) {
+            coercedFields.incrementAndGet();
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String && isNumber((String) value)) {
+            coercedFields.incrementAndGet();
+            return Double.parseDouble(((String) value).trim());
+        }
+        failedFields.incrementAndGet();
+        return 0;
+    }
+
+    // Converts a Boolean (or a String holding a boolean) to a boolean value
+    private boolean decodeBoolean(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof String) {
+            coercedFields.incrementAndGet();
+            return "true".equalsIgnoreCase(((String) value).trim());
+        }
+        failedFields.incrementAndGet();
+        return false;
+    }
+
+    /* Determines if a String is a plain decimal number (optional sign, digits, optional fraction
+     * and exponent) so it can be parsed without an exception being thrown */
+    static boolean isNumber(String text) {
+
+        int start = 0;
+        int end = text.length();
+        // Ignore surrounding whitespace
+        while (start < end && text.charAt(start) <= ' ') start++;
+        while (end > start && text.charAt(end - 1) <= ' ') end--;
+
+        int i = start;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) i++;
+
+        int digits = 0;
+        while (i < end && isDigit(text.charAt(i))) { i++; digits++; }
+        if (i < end && text.charAt(i) == '.') {
+            i++;
+            while (i < end && isDigit(text.charAt(i))) { i++; digits++; }
+        }
+        if (digits == 0) {
+            return false;
+        }
+
+        if (i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) i++;
+            int exponentDigits = 0;
+            while (i < end && isDigit(text.charAt(i))) { i++; exponentDigits++; }
+            if (exponentDigits == 0) {
+                return false;
+            }
+        }
+        return i == end;
+    }
+
+    // Only ASCII digits are accepted since they are all Double.parseDouble understands
+    private static boolean isDigit(char character) {
+        return character >= '0' && character <= '9';
+    }
+}
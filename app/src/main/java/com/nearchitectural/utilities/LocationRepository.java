@@ -0,0 +1,454 @@
+package com.nearchitectural.utilities;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.nearchitectural.utilities.models.Location;
+import com.nearchitectural.utilities.search.CompletionTrie;
+import com.nearchitectural.utilities.search.SearchIndex;
+import com.nearchitectural.utilities.spatial.SpatialIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/* Version: 1.5
+ * Purpose: Singleton class which retrieves the locations collection from the database once
+ *          and provides the cached Location objects to every screen of the application. The
+ *          cached locations are also saved to the device so they can be shown at start up
+ *          before the database responds. Once loaded, only the locations which change in the
+ *          database are retrieved and passed on to observers. All database results are processed
+ *          on the background executor and change listeners are called there, so only finished
+ *          results reach the main thread. Each change is applied to the spatial and search
+ *          indexes without rebuilding them (until enough changes build up), while the search
+ *          suggestions and the snapshot are only rebuilt once a burst of changes has settled.
+ */
+public class LocationRepository implements LocationSyncEngine.OnChangesListener {
+
+    private static final String TAG = "LocationRepository"; // Tag used for logging status of application
+    private static final String SNAPSHOT_FILE_NAME = "locations.snapshot"; // Name of file in app storage
+    private static final int WHERE_IN_LIMIT = 10; // Maximum number of values the database allows in a whereIn query
+    private static final int MIN_INDEX_CHANGES = 64; // Changes always applied to the indexes without rebuilding them
+    private static final int INDEX_REBUILD_DIVISOR = 8; // Indexes are rebuilt once changes exceed 1/8 of the locations
+
+    private static volatile LocationRepository soleInstance; // The single instance of the repository
+    private final Map<String, Location> locationCache; // Cached locations mapped by location ID (synchronized)
+    private final MutableLiveData<List<Location>> locations; // Observes the state of the cached locations
+    private volatile SpatialIndex spatialIndex; // Index over the coordinates of the cached locations
+    private volatile SearchIndex searchIndex; // Index over the names and place types of the cached locations
+    private volatile CompletionTrie completionTrie; // Search suggestions from the names and place types of the cached locations
+    private final AtomicBoolean completionRebuildPending; // Flags that the search suggestions are waiting to be rebuilt
+    private final AtomicBoolean snapshotSavePending; // Flags that the snapshot is waiting to be saved
+    private volatile boolean loadRequested; // Flags that the locations collection has been requested
+    private boolean networkLoaded; // Flags that the locations have been retrieved from the database (background only)
+    private final LocationSyncEngine syncEngine; // Listens for changes to locations in the database
+    private final List<OnLocationsChangedListener> changedListeners; // Listeners notified of each change
+    private volatile LocationSnapshot snapshot; // Locations saved on the device (null until initialised)
+    private long initialisationTime; // Time (since boot) at which the repository was initialised
+    private final AppExecutors executors; // Executors used to process results off the main thread
+
+    /* Interface through which only the changed locations are provided each time the cache is updated.
+     * Called on the background executor, one change at a time */
+    public interface OnLocationsChangedListener {
+        void onLocationsChanged(List<Location> updatedLocations, List<String> removedLocationIDs);
+    }
+
+    // Interface through which all locations of a batch fetch are returned together (on the main thread)
+    public interface OnLocationsFetchedListener {
+        void onLocationsFetched(List<Location> fetchedLocations);
+    }
+
+    // Interface through which a single location is returned once retrieved (on the main thread)
+    public interface OnLocationRetrievedListener {
+        void onLocationRetrieved(@Nullable Location location);
+    }
+
+    //private constructor
+    private LocationRepository() {
+
+        //Prevent form the reflection api.
+        if (soleInstance != null) {
+            throw new RuntimeException("Use getInstance() method to get the single instance of this class.");
+        }
+        locationCache = Collections.synchronizedMap(new LinkedHashMap<String, Location>());
+        locations = new MutableLiveData<>();
+        spatialIndex = SpatialIndex.empty();
+        searchIndex = SearchIndex.empty();
+        completionTrie = CompletionTrie.empty();
+        completionRebuildPending = new AtomicBoolean();
+        snapshotSavePending = new AtomicBoolean();
+        syncEngine = new LocationSyncEngine(this);
+        changedListeners = new CopyOnWriteArrayList<>();
+        executors = AppExecutors.getInstance();
+    }
+
+    public static LocationRepository getInstance() {
+        if (soleInstance == null) { //if there is no instance available... create new one
+            synchronized (LocationRepository.class) {
+                if (soleInstance == null) soleInstance = new LocationRepository();
+            }
+        }
+        return soleInstance;
+    }
+
+    /* Restores the locations saved on the device (if any) so they can be displayed immediately,
+     * then retrieves the locations from the database to reconcile them. Settings must be
+     * retrieved beforehand since liked locations are applied when restoring. This method
+     * only has an effect the first time it is called */
+    public synchronized void initialise(Context context) {
+
+        if (snapshot != null) {
+            return;
+        }
+        initialisationTime = SystemClock.elapsedRealtime();
+        snapshot = new LocationSnapshot(new File(context.getApplicationContext().getFilesDir(), SNAPSHOT_FILE_NAME));
+        restoreSnapshot();
+        loadLocations();
+    }
+
+    // Returns the time (milliseconds since boot) at which the repository was initialised
+    public long getInitialisationTime() {
+        return initialisationTime;
+    }
+
+    /* Returns the list of all cached locations. The locations collection is synced
+     * with the database from the first time this is called */
+    public LiveData<List<Location>> getLocations() {
+        loadLocations();
+        return locations;
+    }
+
+    // Determines if the locations collection has been retrieved at least once
+    public boolean isLoaded() {
+        return locations.getValue() != null;
+    }
+
+    /* Returns the spatial index over all cached locations. The index is updated before observers are
+     * notified of a change, so it always contains the locations they were given */
+    public SpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    // Returns the text search index over the cached locations (updated with each change to the cache)
+    public SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    // Returns the search suggestions over the cached locations (rebuilt once changes to the cache settle)
+    public CompletionTrie getCompletionTrie() {
+        return completionTrie;
+    }
+
+    // Returns the cached location with the provided ID (or null if it has not been retrieved)
+    @Nullable
+    public Location getLocation(String locationID) {
+        return locationCache.get(locationID);
+    }
+
+    /* Provides the location with the provided ID, using the cached location if available
+     * and otherwise retrieving the single location document from the database */
+    public void retrieveLocation(final String locationID, final OnLocationRetrievedListener listener) {
+
+        Location cachedLocation = locationCache.get(locationID);
+        if (cachedLocation != null) {
+            listener.onLocationRetrieved(cachedLocation);
+            return;
+        }
+
+        FirebaseFirestore.getInstance().collection("locations")
+                .document(locationID)
+                .get()
+                .addOnCompleteListener(executors.background(), new OnCompleteListener<DocumentSnapshot>() {
+                    @Override
+                    public void onComplete(@NonNull Task<DocumentSnapshot> task) {
+                        Location location = null;
+                        if (task.isSuccessful() && task.getResult().getData() != null) {
+                            location = DatabaseExtractor.extractLocation(
+                                    task.getResult().getId(), task.getResult().getData());
+                            locationCache.put(location.getId(), location);
+                        } else {
+                            Log.w(TAG, "Error getting location " + locationID, task.getException());
+                        }
+                        deliverLocation(location, listener);
+                    }
+                });
+    }
+
+    // Passes a retrieved location to its listener on the main thread
+    private void deliverLocation(@Nullable final Location location, final OnLocationRetrievedListener listener) {
+        executors.mainThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onLocationRetrieved(location);
+            }
+        });
+    }
+
+    /* Retrieves the latest version of each location with the provided IDs. IDs are grouped into
+     * whereIn queries which run concurrently, and once all have completed the fetched locations are
+     * cached and passed on to observers together (so observers update only once per batch) */
+    public void fetchLocations(Collection<String> locationIDs, @Nullable final OnLocationsFetchedListener listener) {
+
+        List<String> idsToFetch = new ArrayList<>(new LinkedHashSet<>(locationIDs));
+        if (idsToFetch.isEmpty()) {
+            if (listener != null) {
+                listener.onLocationsFetched(new ArrayList<Location>());
+            }
+            return;
+        }
+
+        // Create one query for each chunk of IDs
+        CollectionReference locationsCollection = FirebaseFirestore.getInstance().collection("locations");
+        List<Task<QuerySnapshot>> queries = new ArrayList<>();
+        for (int start = 0; start < idsToFetch.size(); start += WHERE_IN_LIMIT) {
+            List<String> chunk = new ArrayList<>(idsToFetch.subList(start,
+                    Math.min(start + WHERE_IN_LIMIT, idsToFetch.size())));
+            queries.add(locationsCollection.whereIn(FieldPath.documentId(), chunk).get());
+        }
+
+        // Merge (and decode) the results of every query off the main thread once all have completed
+        Tasks.whenAllComplete(queries).addOnCompleteListener(executors.background(), new OnCompleteListener<List<Task<?>>>() {
+            @Override
+            public void onComplete(@NonNull Task<List<Task<?>>> task) {
+                final List<Location> fetchedLocations = new ArrayList<>();
+                for (Task<?> query : task.getResult()) {
+                    if (query.isSuccessful()) {
+                        for (QueryDocumentSnapshot document : (QuerySnapshot) query.getResult()) {
+                            fetchedLocations.add(DatabaseExtractor.extractLocation(document.getId(), document.getData()));
+                        }
+                    } else {
+                        Log.w(TAG, "Error fetching locations.", query.getException());
+                    }
+                }
+
+                for (Location location : fetchedLocations) {
+                    locationCache.put(location.getId(), location);
+                }
+                if (!fetchedLocations.isEmpty()) {
+                    notifyLocationsChanged(fetchedLocations, new ArrayList<String>());
+                }
+                if (listener != null) {
+                    executors.mainThread().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onLocationsFetched(fetchedLocations);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    // Starts syncing the locations collection with the database if it has not already been requested
+    private synchronized void loadLocations() {
+
+        if (loadRequested) {
+            return;
+        }
+        loadRequested = true;
+        syncEngine.start();
+    }
+
+    /* Registers a listener which is provided with every change to the cached locations. If
+     * locations have already been cached, the listener receives all of them first (on the
+     * background executor, so it cannot interleave with a change being applied) */
+    public void addOnLocationsChangedListener(final OnLocationsChangedListener listener) {
+        executors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                changedListeners.add(listener);
+                List<Location> cachedLocations = getCachedLocations();
+                if (!cachedLocations.isEmpty()) {
+                    listener.onLocationsChanged(cachedLocations, new ArrayList<String>());
+                }
+            }
+        });
+        loadLocations();
+    }
+
+    /* Unregisters a listener. This is posted to the background executor like the registration, so
+     * a listener removed before its registration has run is never added (and no longer called) */
+    public void removeOnLocationsChangedListener(final OnLocationsChangedListener listener) {
+        executors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                changedListeners.remove(listener);
+            }
+        });
+    }
+
+    // Applies the changes of a database sync to the cache and notifies all observers
+    @Override
+    public void onChanges(List<Location> updatedLocations, List<String> removedLocationIDs, boolean initialSync,
+                          @Nullable Set<String> serverLocationIDs) {
+
+        if (serverLocationIDs != null) {
+            /* Any restored location which the server does not have has since been removed from the
+             * database. Locations missing from the offline cache are kept, since it may hold only some */
+            Set<String> removedIDs = new HashSet<>(removedLocationIDs);
+            synchronized (locationCache) {
+                for (String cachedID : locationCache.keySet()) {
+                    if (!serverLocationIDs.contains(cachedID) && removedIDs.add(cachedID)) {
+                        removedLocationIDs.add(cachedID);
+                    }
+                }
+            }
+        }
+
+        if (initialSync) {
+            networkLoaded = true;
+            Log.d(TAG, "Locations retrieved from database after "
+                    + (SystemClock.elapsedRealtime() - initialisationTime) + "ms");
+        }
+
+        // An empty non-initial sync (e.g. cached results confirmed by the server) means nothing has changed
+        if (!initialSync && updatedLocations.isEmpty() && removedLocationIDs.isEmpty()) {
+            return;
+        }
+
+        for (Location location : updatedLocations) {
+            locationCache.put(location.getId(), location);
+        }
+        for (String removedID : removedLocationIDs) {
+            locationCache.remove(removedID);
+        }
+
+        notifyLocationsChanged(updatedLocations, removedLocationIDs);
+        // A burst of changes (e.g. an import in the database) is saved to the device once
+        executors.runOnceSettled(snapshotSavePending, new Runnable() {
+            @Override
+            public void run() {
+                saveSnapshot(getCachedLocations());
+            }
+        });
+    }
+
+    @Override
+    public void onSyncFailed(Exception exception) {
+        // Allow syncing to be started again by the next observer
+        loadRequested = false;
+        // Post the cached locations (empty if nothing was restored) so observers stop waiting
+        locations.postValue(getCachedLocations());
+    }
+
+    // Returns a copy of the cached locations which is safe to use on any thread
+    private List<Location> getCachedLocations() {
+        synchronized (locationCache) {
+            return new ArrayList<>(locationCache.values());
+        }
+    }
+
+    /* Applies the changes to the spatial and search indexes, posts the full list of cached locations to the
+     * main thread and passes the changes on to each change listener (called on the background executor).
+     * The search suggestions are rebuilt once the changes settle */
+    private void notifyLocationsChanged(List<Location> updatedLocations, List<String> removedLocationIDs) {
+        List<Location> cachedLocations = getCachedLocations();
+        updateIndexes(updatedLocations, removedLocationIDs, cachedLocations);
+        locations.postValue(cachedLocations);
+        for (OnLocationsChangedListener listener : changedListeners) {
+            listener.onLocationsChanged(updatedLocations, removedLocationIDs);
+        }
+        executors.runOnceSettled(completionRebuildPending, new Runnable() {
+            @Override
+            public void run() {
+                completionTrie = new CompletionTrie(getCachedLocations());
+            }
+        });
+    }
+
+    /* Applies the changes to the spatial and search indexes, which only costs the number of changes.
+     * Changed locations are checked one by one by each query, so once they build up (or most locations
+     * have changed, e.g. on the initial sync) the indexes are rebuilt over every cached location */
+    private void updateIndexes(List<Location> updatedLocations, List<String> removedLocationIDs,
+                               List<Location> cachedLocations) {
+        int changeCount = spatialIndex.getChanges().size() + updatedLocations.size() + removedLocationIDs.size();
+        if (changeCount > Math.max(MIN_INDEX_CHANGES, cachedLocations.size() / INDEX_REBUILD_DIVISOR)) {
+            spatialIndex = new SpatialIndex(cachedLocations);
+            searchIndex = new SearchIndex(cachedLocations);
+        } else {
+            spatialIndex = spatialIndex.withChanges(updatedLocations, removedLocationIDs);
+            searchIndex = searchIndex.withChanges(updatedLocations, removedLocationIDs);
+        }
+    }
+
+    // Reads the snapshot from the device and applies the locations if the database has not yet responded
+    private void restoreSnapshot() {
+        executors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Location> restoredLocations = readSnapshot();
+                if (restoredLocations == null || restoredLocations.isEmpty()) {
+                    return;
+                }
+                executors.background().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Database results take precedence over the (possibly outdated) snapshot
+                        if (networkLoaded) {
+                            return;
+                        }
+                        for (Location location : restoredLocations) {
+                            locationCache.put(location.getId(), location);
+                        }
+                        Log.d(TAG, restoredLocations.size() + " locations restored from snapshot after "
+                                + (SystemClock.elapsedRealtime() - initialisationTime) + "ms");
+                        notifyLocationsChanged(restoredLocations, new ArrayList<String>());
+                    }
+                });
+            }
+        });
+    }
+
+    // Reads the locations saved on the device, discarding the snapshot if it cannot be read
+    private List<Location> readSnapshot() {
+        try {
+            return snapshot.read(Settings.getInstance().getLikedLocations());
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read location snapshot, discarding it", e);
+            snapshot.delete();
+            return null;
+        }
+    }
+
+    // Saves the provided locations to the device off the main thread
+    private void saveSnapshot(final List<Location> locationsToSave) {
+        if (snapshot == null) {
+            return;
+        }
+        executors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    snapshot.write(locationsToSave);
+                } catch (IOException e) {
+                    Log.w(TAG, "Unable to write location snapshot", e);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,159 @@
+package com.nearchitectural.utilities;
+
+import com.nearchitectural.utilities.models.Location;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/* Version: 1.1
+ * Purpose: Reads and writes the extracted location dataset to a compact, versioned binary file
+ *          on the device so locations can be displayed before the database responds
+ */
+public class LocationSnapshot {
+
+    private static final int MAGIC_NUMBER = 0x4E454C53; // Identifies a location snapshot file
+    static final int FORMAT_VERSION = 1; // Incremented whenever the file layout changes
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Fewest bytes a stored location can occupy (six empty strings, three ints and two doubles)
+    private static final int MIN_LOCATION_BYTES = 6 * 4 + 3 * 4 + 2 * 8;
+
+    private final File snapshotFile; // The file on the device holding the snapshot
+
+    public LocationSnapshot(File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    /* Writes all provided locations to the snapshot file. A temporary file is written and synced
+     * to the disk first and then renamed, so a partially written snapshot is never read (even after
+     * a power loss). The temporary file is removed if the write fails */
+    public void write(Collection<Location> locations) throws IOException {
+
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        boolean replaced = false;
+        try {
+            FileOutputStream fileOutput = new FileOutputStream(tempFile);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput, BUFFER_SIZE));
+            try {
+                output.writeInt(MAGIC_NUMBER);
+                output.writeInt(FORMAT_VERSION);
+                output.writeInt(locations.size());
+
+                for (Location location : locations) {
+                    writeString(output, location.getId());
+                    writeString(output, location.getName());
+                    writeString(output, location.getType());
+                    writeString(output, location.getSummary());
+                    writeString(output, location.getThumbnailURL());
+                    writeString(output, location.getReportID());
+                    output.writeInt(location.getYearOpened());
+                    output.writeInt(location.getLikes());
+                    output.writeDouble(location.getLatitude());
+                    output.writeDouble(location.getLongitude());
+                    output.writeInt(tagsToBits(location.getTagBits()));
+                }
+                output.flush();
+                fileOutput.getFD().sync();
+            } finally {
+                output.close();
+            }
+            replaced = tempFile.renameTo(snapshotFile);
+        } finally {
+            if (!replaced) {
+                tempFile.delete();
+            }
+        }
+
+        if (!replaced) {
+            throw new IOException("Unable to replace location snapshot " + snapshotFile.getPath());
+        }
+    }
+
+    /* Reads all locations from the snapshot file. Returns null if no snapshot exists or if it
+     * was written with a different format version. Liked tags are not stored in the snapshot and
+     * are instead applied using the provided set of liked location IDs */
+    public List<Location> read(Set<String> likedLocationIDs) throws IOException {
+
+        if (!snapshotFile.exists()) {
+            return null;
+        }
+
+        // Lengths read from the file can never exceed its size unless the file is corrupt
+        long fileLength = snapshotFile.length();
+        DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(snapshotFile), BUFFER_SIZE));
+        try {
+            if (input.readInt() != MAGIC_NUMBER || input.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            int count = readLength(input, fileLength / MIN_LOCATION_BYTES);
+            List<Location> locations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String id = readString(input, fileLength);
+                String name = readString(input, fileLength);
+                String type = readString(input, fileLength);
+                String summary = readString(input, fileLength);
+                String thumbnailURL = readString(input, fileLength);
+                String reportID = readString(input, fileLength);
+                int yearOpened = input.readInt();
+                int likes = input.readInt();
+                double latitude = input.readDouble();
+                double longitude = input.readDouble();
+                long tagBits = input.readInt() & 0xFFFFFFFFL;
+                if (likedLocationIDs != null && likedLocationIDs.contains(id)) {
+                    tagBits |= TagID.LIKED_BY_YOU.bit();
+                }
+
+                locations.add(new Location(id, name, yearOpened, likes, type, summary,
+                        latitude, longitude, tagBits, thumbnailURL, reportID));
+            }
+            return locations;
+        } finally {
+            input.close();
+        }
+    }
+
+    // Deletes the snapshot file (e.g. if it is found to be corrupt)
+    public boolean delete() {
+        return snapshotFile.delete();
+    }
+
+    // Returns the database tags of a location as stored bits (liked tag is excluded as it is device specific)
+    private static int tagsToBits(long tagBits) {
+        return (int) (tagBits & ~TagID.LIKED_BY_YOU.bit());
+    }
+
+    // Writes a length-prefixed UTF-8 string (unlike writeUTF, not limited to 64KB)
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input, long fileLength) throws IOException {
+        byte[] bytes = new byte[readLength(input, fileLength)];
+        input.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    // Reads a stored length or count, rejecting values a valid snapshot could not contain
+    private static int readLength(DataInputStream input, long maximum) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > maximum) {
+            throw new IOException("Corrupt location snapshot: invalid length " + length);
+        }
+        return length;
+    }
+}
@@ -0,0 +1,136 @@
+package com.nearchitectural.utilities;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.nearchitectural.utilities.models.Location;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/* Version: 1.3
+ * Purpose: Keeps the cached locations in sync with the database by listening to the locations
+ *          collection and passing on only the documents which were added, modified or removed
+ */
+public class LocationSyncEngine implements EventListener<QuerySnapshot> {
+
+    private static final String TAG = "LocationSyncEngine"; // Tag used for logging status of application
+
+    private final OnChangesListener changesListener; // Receives the changes of each sync
+    private ListenerRegistration registration; // Registration of the database listener (null if stopped)
+    private volatile boolean initialSyncComplete; // Flags that the full collection has been received once
+    private boolean serverSyncComplete; // Flags that the collection has been received from the server (background only)
+
+    // Interface through which the changed locations of each sync are provided
+    public interface OnChangesListener {
+        /* Provides the locations which were added or modified and the IDs of removed locations.
+         * The initial sync contains every location in the collection, which may come from the
+         * database's offline cache (and so be incomplete). The IDs of every location in the database
+         * are provided with the first sync received from the server, and are null otherwise.
+         * Called on the background executor */
+        void onChanges(List<Location> updatedLocations, List<String> removedLocationIDs, boolean initialSync,
+                       @Nullable Set<String> serverLocationIDs);
+
+        // Called (on the background executor) if the database could not be listened to
+        void onSyncFailed(Exception exception);
+    }
+
+    public LocationSyncEngine(OnChangesListener changesListener) {
+        this.changesListener = changesListener;
+    }
+
+    /* Starts listening to the locations collection (has no effect if already started). Updates are
+     * delivered to the background executor so documents are decoded off the main thread. Metadata
+     * changes are included so the listener learns when cached results are confirmed by the server */
+    public synchronized void start() {
+        if (registration == null) {
+            initialSyncComplete = false;
+            serverSyncComplete = false;
+            registration = FirebaseFirestore.getInstance().collection("locations")
+                    .addSnapshotListener(AppExecutors.getInstance().background(), MetadataChanges.INCLUDE, this);
+        }
+    }
+
+    // Stops listening to the locations collection
+    public synchronized void stop() {
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+    }
+
+    public boolean isInitialSyncComplete() {
+        return initialSyncComplete;
+    }
+
+    /* Receives each update of the collection. The database only sends the documents which
+     * have changed since the last update, so only those are extracted */
+    @Override
+    public void onEvent(@Nullable QuerySnapshot snapshots, @Nullable FirebaseFirestoreException e) {
+
+        if (e != null || snapshots == null) {
+            Log.w(TAG, "Error listening to locations.", e);
+            stop();
+            changesListener.onSyncFailed(e);
+            return;
+        }
+
+        List<Location> updatedLocations = new ArrayList<>();
+        List<String> removedLocationIDs = new ArrayList<>();
+
+        for (DocumentChange change : snapshots.getDocumentChanges()) {
+            QueryDocumentSnapshot document = change.getDocument();
+            switch (change.getType()) {
+                case ADDED:
+                case MODIFIED:
+                    updatedLocations.add(DatabaseExtractor.extractLocation(document.getId(), document.getData()));
+                    break;
+                case REMOVED:
+                    removedLocationIDs.add(document.getId());
+                    break;
+            }
+        }
+
+        // Only the server knows every location, since the offline cache may hold only some of them
+        Set<String> serverLocationIDs = null;
+        if (!serverSyncComplete && !snapshots.getMetadata().isFromCache()) {
+            serverSyncComplete = true;
+            serverLocationIDs = new HashSet<>();
+            for (DocumentSnapshot document : snapshots.getDocuments()) {
+                serverLocationIDs.add(document.getId());
+            }
+        }
+
+        boolean initialSync = !initialSyncComplete;
+        initialSyncComplete = true;
+        Log.d(TAG, "Synced " + updatedLocations.size() + " updated and " + removedLocationIDs.size()
+                + " removed locations" + (snapshots.getMetadata().isFromCache() ? " from cache" : ""));
+        if (!updatedLocations.isEmpty()) {
+            logDecodingStatistics();
+        }
+        changesListener.onChanges(updatedLocations, removedLocationIDs, initialSync, serverLocationIDs);
+    }
+
+    /* Logs how many location documents have been decoded and how many of their fields had to be
+     * converted or could not be used (fields which could not be used point to invalid data in the database) */
+    private static void logDecodingStatistics() {
+        LocationDecoder decoder = DatabaseExtractor.getLocationDecoder();
+        if (decoder.getFailedFields() > 0) {
+            Log.w(TAG, "Location decoding statistics: " + decoder.getStatistics());
+        } else {
+            Log.d(TAG, "Location decoding statistics: " + decoder.getStatistics());
+        }
+    }
+}
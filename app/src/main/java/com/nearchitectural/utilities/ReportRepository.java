@@ -0,0 +1,151 @@
+package com.nearchitectural.utilities;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.nearchitectural.utilities.models.Report;
+import com.nearchitectural.utilities.search.ReportIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/* Version: 1.1
+ * Purpose: Singleton class which maintains the full-text search index over every location report.
+ *          The index saved on the device is restored first, then the reports collection is synced
+ *          with the database and only reports which were added, changed or removed since the index
+ *          was saved are re-indexed. The index is saved again once a burst of changes has settled
+ */
+public class ReportRepository implements ReportSyncEngine.OnChangesListener {
+
+    private static final String TAG = "ReportRepository"; // Tag used for logging status of application
+    private static final String INDEX_FILE_NAME = "reports.index"; // Name of file in app storage
+
+    private static volatile ReportRepository soleInstance; // The single instance of the repository
+    private volatile ReportIndex reportIndex; // Index over the paragraphs of every synced report
+    private final ReportSyncEngine syncEngine; // Listens for changes to reports in the database
+    private final AppExecutors executors; // Executors used to index and save reports off the main thread
+    private final AtomicBoolean indexSavePending; // Flags that the index is waiting to be saved
+    private File indexFile; // The file on the device holding the saved index (null until initialised)
+
+    //private constructor
+    private ReportRepository() {
+
+        //Prevent form the reflection api.
+        if (soleInstance != null) {
+            throw new RuntimeException("Use getInstance() method to get the single instance of this class.");
+        }
+        reportIndex = new ReportIndex();
+        syncEngine = new ReportSyncEngine(this);
+        executors = AppExecutors.getInstance();
+        indexSavePending = new AtomicBoolean();
+    }
+
+    public static ReportRepository getInstance() {
+        if (soleInstance == null) { //if there is no instance available... create new one
+            synchronized (ReportRepository.class) {
+                if (soleInstance == null) soleInstance = new ReportRepository();
+            }
+        }
+        return soleInstance;
+    }
+
+    /* Restores the index saved on the device (if any), then starts syncing the reports with the
+     * database. This method only has an effect the first time it is called */
+    public synchronized void initialise(Context context) {
+
+        if (indexFile != null) {
+            return;
+        }
+        indexFile = new File(context.getApplicationContext().getFilesDir(), INDEX_FILE_NAME);
+        executors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.elapsedRealtime();
+                try {
+                    ReportIndex restoredIndex = readIndex();
+                    if (restoredIndex != null) {
+                        reportIndex = restoredIndex;
+                        Log.d(TAG, restoredIndex.size() + " reports restored from index after "
+                                + (SystemClock.elapsedRealtime() - start) + "ms");
+                    }
+                } finally {
+                    /* Syncing starts once restored, so synced changes are applied to the restored
+                     * index. It starts even if restoring fails, so reports are still indexed */
+                    syncEngine.start();
+                }
+            }
+        });
+    }
+
+    // Returns the full-text index over the report paragraphs (empty until reports are restored or synced)
+    public ReportIndex getReportIndex() {
+        return reportIndex;
+    }
+
+    // Applies the changes of a database sync to the index and saves it (once changes settle) if anything changed
+    @Override
+    public void onChanges(List<Report> updatedReports, List<String> removedReportIDs,
+                          @Nullable Set<String> serverReportIDs) {
+
+        int changedReports = 0;
+        for (Report report : updatedReports) {
+            // Reports restored unchanged from the device are not indexed again
+            if (reportIndex.addReport(report.getReportID(), report.getParagraphs())) {
+                changedReports++;
+            }
+        }
+        for (String removedID : removedReportIDs) {
+            if (reportIndex.removeReport(removedID)) {
+                changedReports++;
+            }
+        }
+
+        if (serverReportIDs != null) {
+            /* Any restored report which the server does not have has since been removed. Reports
+             * missing from the offline cache are kept, since it may hold only some of the reports */
+            changedReports += reportIndex.retainReports(serverReportIDs);
+        }
+
+        Log.d(TAG, changedReports + " reports re-indexed (" + reportIndex.size() + " indexed)");
+        if (changedReports > 0) {
+            // A burst of changes (e.g. several reports edited in the database) is saved to the device once
+            executors.runOnceSettled(indexSavePending, new Runnable() {
+                @Override
+                public void run() {
+                    saveIndex();
+                }
+            });
+        }
+    }
+
+    // Reads the index saved on the device, discarding it if it cannot be read
+    private ReportIndex readIndex() {
+        try {
+            return ReportIndex.read(indexFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read report index, discarding it", e);
+            indexFile.delete();
+            return null;
+        }
+    }
+
+    // Saves the index to the device off the main thread
+    private void saveIndex() {
+        executors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reportIndex.write(indexFile);
+                } catch (IOException e) {
+                    Log.w(TAG, "Unable to write report index", e);
+                }
+            }
+        });
+    }
+}
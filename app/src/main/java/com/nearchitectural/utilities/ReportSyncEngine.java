@@ -0,0 +1,105 @@
+package com.nearchitectural.utilities;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.nearchitectural.utilities.models.Report;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/* Version: 1.1
+ * Purpose: Keeps the report search index in sync with the database by listening to the reports
+ *          collection and passing on only the reports which were added, modified or removed
+ */
+public class ReportSyncEngine implements EventListener<QuerySnapshot> {
+
+    private static final String TAG = "ReportSyncEngine"; // Tag used for logging status of application
+
+    private final OnChangesListener changesListener; // Receives the changes of each sync
+    private ListenerRegistration registration; // Registration of the database listener (null if stopped)
+    private boolean serverSyncComplete; // Flags that the collection has been received from the server (background only)
+
+    // Interface through which the changed reports of each sync are provided
+    public interface OnChangesListener {
+        /* Provides the reports which were added or modified and the IDs of removed reports. The IDs
+         * of every report in the database are provided with the first sync received from the server
+         * (rather than the database's offline cache), and are null otherwise. Called on the background executor */
+        void onChanges(List<Report> updatedReports, List<String> removedReportIDs, @Nullable Set<String> serverReportIDs);
+    }
+
+    public ReportSyncEngine(OnChangesListener changesListener) {
+        this.changesListener = changesListener;
+    }
+
+    /* Starts listening to the reports collection (has no effect if already started). Updates are
+     * delivered to the background executor so reports are extracted off the main thread. Metadata
+     * changes are included so the listener learns when cached results are confirmed by the server */
+    public synchronized void start() {
+        if (registration == null) {
+            serverSyncComplete = false;
+            registration = FirebaseFirestore.getInstance().collection("reports")
+                    .addSnapshotListener(AppExecutors.getInstance().background(), MetadataChanges.INCLUDE, this);
+        }
+    }
+
+    // Stops listening to the reports collection
+    public synchronized void stop() {
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+    }
+
+    /* Receives each update of the collection. The database only sends the documents which
+     * have changed since the last update, so only those are extracted */
+    @Override
+    public void onEvent(@Nullable QuerySnapshot snapshots, @Nullable FirebaseFirestoreException e) {
+
+        if (e != null || snapshots == null) {
+            Log.w(TAG, "Error listening to reports.", e);
+            stop();
+            return;
+        }
+
+        List<Report> updatedReports = new ArrayList<>();
+        List<String> removedReportIDs = new ArrayList<>();
+
+        for (DocumentChange change : snapshots.getDocumentChanges()) {
+            switch (change.getType()) {
+                case ADDED:
+                case MODIFIED:
+                    updatedReports.add(DatabaseExtractor.extractReport(change.getDocument()));
+                    break;
+                case REMOVED:
+                    removedReportIDs.add(change.getDocument().getId());
+                    break;
+            }
+        }
+
+        // Only the server knows every report, since the offline cache may hold only some of them
+        Set<String> serverReportIDs = null;
+        if (!serverSyncComplete && !snapshots.getMetadata().isFromCache()) {
+            serverSyncComplete = true;
+            serverReportIDs = new HashSet<>();
+            for (DocumentSnapshot document : snapshots.getDocuments()) {
+                serverReportIDs.add(document.getId());
+            }
+        }
+
+        Log.d(TAG, "Synced " + updatedReports.size() + " updated and " + removedReportIDs.size()
+                + " removed reports" + (snapshots.getMetadata().isFromCache() ? " from cache" : ""));
+        changesListener.onChanges(updatedReports, removedReportIDs, serverReportIDs);
+    }
+}
@@ -5,7 +5,7 @@ import java.util.HashSet;
 
 /* Author:  Joel Bell-Wilding, Kristiyan Doykov
  * Since:   15/01/20
- * Version: 1.1
+ * Version: 1.2
  * Purpose: Settings singleton class which stores and allows manipulation of application-wide settings
  */
 public class Settings implements Serializable {
@@ -79,7 +79,12 @@ public class Settings implements Serializable {
 
     // Determines if a tag is currently active for application-wide filtering
     public boolean getTagValue(TagID tag) {
-        return activeTags.getTagValuesMap().get(tag);
+        return activeTags.getTagValue(tag);
+    }
+
+    // Returns the tags currently active for application-wide filtering as a bitmask
+    public long getActiveTagBits() {
+        return activeTags.getActiveTagBits();
     }
 
     // Set a tag value in the internal TagMapper
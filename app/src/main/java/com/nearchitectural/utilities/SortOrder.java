@@ -0,0 +1,15 @@
+package com.nearchitectural.utilities;
+
+/* Version: 1.2
+ * Purpose: Enumerator storing the orders in which search results can be sorted (see SortRanks).
+ *          Relevance depends on the search text, so it is scored for each search rather than ranked
+ */
+public enum SortOrder {
+
+    ALPHABETICAL, // By location name (ignoring case and accents, in the device's language)
+    NEAREST_FIRST, // By distance from the user
+    NEWEST_FIRST, // By year opened, most recent first
+    OLDEST_FIRST, // By year opened, earliest first
+    MOST_LIKED, // By number of likes, most liked first
+    RELEVANCE // By report matches, likes and distance combined (only while searching, see TopKRanker.relevance)
+}
@@ -0,0 +1,141 @@
+package com.nearchitectural.utilities;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Version: 1.1
+ * Purpose: Ranks every item of a dataset in each sort order once per dataset update (see SortRanks).
+ *          Names are ranked by collation keys, which are cached so each name is only converted once,
+ *          and when only the distances have changed (i.e. the user has moved) the name, year and
+ *          like ranks are reused and only the distances are ranked again. Not thread safe
+ */
+public class SortRanker<T> {
+
+    private final FilterEngine.ItemAccessor<T> accessor; // Reads the location and distance of each item
+    private final Collator collator; // Compares names in the device's language
+    private Map<String, CollationKey> collationKeys; // Collation key of each name last ranked
+    private SortRanks<T> lastRanks; // Ranks of the last dataset (null if none ranked)
+
+    public SortRanker(FilterEngine.ItemAccessor<T> accessor) {
+        this.accessor = accessor;
+        collator = Collator.getInstance();
+        // Names differing only by case or accents are ranked by their letters alone
+        collator.setStrength(Collator.PRIMARY);
+        collationKeys = new HashMap<>();
+    }
+
+    // Ranks every item in the dataset in each sort order
+    public SortRanks<T> rank(List<T> items) {
+
+        int itemCount = items.size();
+        String[] locationIDs = new String[itemCount];
+        String[] names = new String[itemCount];
+        final int[] years = new int[itemCount];
+        final int[] likes = new int[itemCount];
+        final double[] distances = new double[itemCount];
+        Map<String, Integer> indexByID = new HashMap<>(itemCount * 2);
+        for (int i = 0; i < itemCount; i++) {
+            T item = items.get(i);
+            locationIDs[i] = accessor.getLocation(item).getId();
+            names[i] = accessor.getLocation(item).getName();
+            years[i] = accessor.getLocation(item).getYearOpened();
+            likes[i] = accessor.getLocation(item).getLikes();
+            distances[i] = accessor.getDistance(item);
+            indexByID.put(locationIDs[i], i);
+        }
+
+        int[][] ranks = new int[SortOrder.values().length][];
+        ranks[SortOrder.NEAREST_FIRST.ordinal()] = rankIndexes(itemCount, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                return Double.compare(distances[first], distances[second]);
+            }
+        });
+
+        if (lastRanks != null && Arrays.equals(locationIDs, lastRanks.locationIDs)
+                && Arrays.equals(names, lastRanks.names) && Arrays.equals(years, lastRanks.years)
+                && Arrays.equals(likes, lastRanks.likes)) {
+            // Only the distances have changed, so the other ranks still apply
+            for (SortOrder order : SortOrder.values()) {
+                if (order != SortOrder.NEAREST_FIRST) {
+                    ranks[order.ordinal()] = lastRanks.getRanks(order);
+                }
+            }
+        } else {
+            final CollationKey[] nameKeys = findCollationKeys(names);
+            ranks[SortOrder.ALPHABETICAL.ordinal()] = rankIndexes(itemCount, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer first, Integer second) {
+                    return nameKeys[first].compareTo(nameKeys[second]);
+                }
+            });
+            int[] oldestFirst = rankIndexes(itemCount, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer first, Integer second) {
+                    return years[first] < years[second] ? -1 : years[first] == years[second] ? 0 : 1;
+                }
+            });
+            ranks[SortOrder.OLDEST_FIRST.ordinal()] = oldestFirst;
+            ranks[SortOrder.NEWEST_FIRST.ordinal()] = reverseRanks(oldestFirst);
+            ranks[SortOrder.MOST_LIKED.ordinal()] = rankIndexes(itemCount, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer first, Integer second) {
+                    return likes[first] > likes[second] ? -1 : likes[first] == likes[second] ? 0 : 1;
+                }
+            });
+        }
+
+        lastRanks = new SortRanks<>(accessor, locationIDs, names, years, likes, indexByID, ranks);
+        return lastRanks;
+    }
+
+    // Returns the collation key of each name, only creating keys for names not previously ranked
+    private CollationKey[] findCollationKeys(String[] names) {
+        Map<String, CollationKey> currentKeys = new HashMap<>(names.length * 2);
+        CollationKey[] nameKeys = new CollationKey[names.length];
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i] == null ? "" : names[i];
+            CollationKey key = collationKeys.get(name);
+            if (key == null) {
+                key = collator.getCollationKey(name);
+            }
+            currentKeys.put(name, key);
+            nameKeys[i] = key;
+        }
+        // Keys of names no longer in the dataset are discarded
+        collationKeys = currentKeys;
+        return nameKeys;
+    }
+
+    /* Sorts the indexes of the items with the provided comparator and returns the rank of each item.
+     * Items which compare equally share the same rank */
+    private static int[] rankIndexes(int itemCount, Comparator<Integer> comparator) {
+
+        Integer[] sortedIndexes = new Integer[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            sortedIndexes[i] = i;
+        }
+        Arrays.sort(sortedIndexes, comparator);
+
+        int[] ranks = new int[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            ranks[sortedIndexes[i]] = i > 0 && comparator.compare(sortedIndexes[i - 1], sortedIndexes[i]) == 0
+                    ? ranks[sortedIndexes[i - 1]] : i;
+        }
+        return ranks;
+    }
+
+    // Returns ranks in the opposite order (equal ranks remain equal)
+    private static int[] reverseRanks(int[] ranks) {
+        int[] reversedRanks = new int[ranks.length];
+        for (int i = 0; i < ranks.length; i++) {
+            reversedRanks[i] = ranks.length - 1 - ranks[i];
+        }
+        return reversedRanks;
+    }
+}
@@ -0,0 +1,58 @@
+package com.nearchitectural.utilities;
+
+import java.util.Map;
+
+/* Version: 1.2
+ * Purpose: Immutable rank of every item of a dataset in each sort order (see SortRanker). Any
+ *          subset of the items (e.g. filtered search results) is ordered by comparing integer
+ *          ranks, so sorting or switching the sort order never compares names, years or distances
+ */
+public class SortRanks<T> {
+
+    private static final int UNRANKED = Integer.MAX_VALUE; // Rank of items which were not in the dataset
+
+    private final FilterEngine.ItemAccessor<T> accessor; // Reads the location of each item
+    final String[] locationIDs; // Location ID of each item in the dataset (in dataset order)
+    final String[] names; // Location name of each item (used to detect changed names)
+    final int[] years; // Year opened of each item (used to detect changed years)
+    final int[] likes; // Number of likes of each item (used to detect changed likes)
+    private final Map<String, Integer> indexByID; // Position of each location ID in the dataset
+    private final int[][] ranks; // Rank of each item in each sort order (indexed by SortOrder ordinal, then item)
+
+    SortRanks(FilterEngine.ItemAccessor<T> accessor, String[] locationIDs, String[] names, int[] years,
+              int[] likes, Map<String, Integer> indexByID, int[][] ranks) {
+        this.accessor = accessor;
+        this.locationIDs = locationIDs;
+        this.names = names;
+        this.years = years;
+        this.likes = likes;
+        this.indexByID = indexByID;
+        this.ranks = ranks;
+    }
+
+    // Returns the rank of the item with the provided location ID (items of equal rank sort equally)
+    public int getRank(String locationID, SortOrder order) {
+        Integer index = indexByID.get(locationID);
+        return index == null ? UNRANKED : ranks[order.ordinal()][index];
+    }
+
+    // Returns the number of items ranked
+    public int size() {
+        return locationIDs.length;
+    }
+
+    int[] getRanks(SortOrder order) {
+        return ranks[order.ordinal()];
+    }
+
+    /* Returns a scorer which ranks items in the provided order (e.g. to select a page of items with
+     * TopKRanker). Items which were not in the ranked dataset are placed last. Relevance is not ranked */
+    public TopKRanker.Scorer<T> scorer(final SortOrder order) {
+        return new TopKRanker.Scorer<T>() {
+            @Override
+            public double score(T item) {
+                return -(double) getRank(accessor.getLocation(item).getId(), order);
+            }
+        };
+    }
+}
@@ -2,7 +2,7 @@ package com.nearchitectural.utilities;
 
 /* Author:  Joel Bell-Wilding
  * Since:   07/02/20
- * Version: 1.2
+ * Version: 1.3
  * Purpose: Enumerator storing available Tag IDs for use with TagMapper utility class
  */
 public enum TagID {
@@ -24,4 +24,9 @@ public enum TagID {
         this.databaseReference = databaseReference;
         this.iconName = iconName;
     }
+
+    // Returns the bit representing this tag in a set of tags stored as a bitmask
+    public long bit() {
+        return 1L << ordinal();
+    }
 }
\ No newline at end of file
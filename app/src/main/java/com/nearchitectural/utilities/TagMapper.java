@@ -5,51 +5,47 @@ import java.util.Map;
 
 /* Author:  Joel Bell-Wilding
  * Since:   07/02/20
- * Version: 1.1
+ * Version: 1.2
  * Purpose: Utility class which stores mapping of Tag IDs, their state (active/inactive)
- *          and display names for use when searching/applying via settings
+ *          and display names for use when searching/applying via settings. Tag states are
+ *          stored as a bitmask (see TagID.bit()) so they can be compared with location tags directly
  */
 public class TagMapper {
 
-    // Map of Tag IDs to their state (true = active, false = inactive)
-    private Map<TagID, Boolean> tagValuesMap;
+    // Active tags (one bit per Tag ID, true = active, false = inactive)
+    private long activeTagBits;
     // Map of Tag Display Names (presented on UI) to Tag IDs
     private Map<String, TagID> tagDisplayNameMap;
 
     // Constructor for tag mapper with default false values (i.e. no tags set)
     public TagMapper() {
 
-        tagValuesMap = new LinkedHashMap<>();
         tagDisplayNameMap = new LinkedHashMap<>();
 
         // Sets all tags to be inactive by default
         for (TagID tag : TagID.values()) {
-            tagValuesMap.put(tag, false);
             tagDisplayNameMap.put(tag.displayName, tag);
         }
     }
 
-    // Constructor for tag mapper with values read in from database (i.e. location specific set tags)
-    public TagMapper(String locationID, Map<String, Object> document) {
-
-        tagValuesMap = new LinkedHashMap<>();
-        tagDisplayNameMap = new LinkedHashMap<>();
-
-        // Reads values from database for a given location and sets tags to appropriate boolean value
-        for (TagID tag : TagID.values()) {
-            tagValuesMap.put(tag,
-                    document.get(tag.databaseReference) != null
-                            && (boolean) document.get(tag.databaseReference));
-            tagDisplayNameMap.put(tag.displayName, tag);
+    /* Getter for map of Tag IDs to their respective state (a copy, in display order, of the tags
+     * currently in the mapper - used for presenting tags rather than filtering) */
+    public Map<TagID, Boolean> getTagValuesMap() {
+        Map<TagID, Boolean> tagValuesMap = new LinkedHashMap<>();
+        for (TagID tag : tagDisplayNameMap.values()) {
+            tagValuesMap.put(tag, getTagValue(tag));
         }
+        return tagValuesMap;
+    }
 
-        // If location is liked, set tag in the tag mapper
-        tagValuesMap.put(TagID.LIKED_BY_YOU, Settings.getInstance().locationIsLiked(locationID));
+    // Determines if a tag is active (without copying any state)
+    public boolean getTagValue(TagID tag) {
+        return (activeTagBits & tag.bit()) != 0;
     }
 
-    // Getter for map of Tag IDs to their respective state
-    public Map<TagID, Boolean> getTagValuesMap() {
-        return new LinkedHashMap<>(tagValuesMap);
+    // Returns the active tags as a bitmask, which locations can be compared against with Location.hasAllTags()
+    public long getActiveTagBits() {
+        return activeTagBits;
     }
 
     // Getter for map of Tag display names to their respective Tag IDs
@@ -57,15 +53,20 @@ public class TagMapper {
         return new LinkedHashMap<>(tagDisplayNameMap);
     }
 
-    // Removes a tag from both internal maps
+    // Removes a tag from the mapper (a removed tag is inactive)
     public void removeTagFromMapper(TagID tag) {
-        tagValuesMap.remove(tag);
+        setTagValue(tag, false);
         tagDisplayNameMap.remove(tag.displayName);
     }
 
-    // Adds a tag to both internal maps
+    // Adds a tag to the mapper
     public void addTagToMapper(TagID tag, boolean isActive) {
-        tagValuesMap.put(tag, isActive);
+        setTagValue(tag, isActive);
         tagDisplayNameMap.put(tag.displayName, tag);
     }
+
+    // Sets the state of a tag
+    private void setTagValue(TagID tag, boolean isActive) {
+        activeTagBits = isActive ? activeTagBits | tag.bit() : activeTagBits & ~tag.bit();
+    }
 }
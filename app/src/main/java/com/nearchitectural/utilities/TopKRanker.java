@@ -0,0 +1,183 @@
+package com.nearchitectural.utilities;
+
+import com.nearchitectural.utilities.search.ReportIndex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Version: 1.1
+ * Purpose: Returns the best scoring items a page at a time without sorting every item. The first
+ *          page is selected with a heap bounded to the page size (O(n log k) for n items and pages
+ *          of k), and only if a further page is requested are the remaining items arranged into a
+ *          heap (O(n) once), from which each further page is taken (O(k log n)). Items of equal
+ *          score keep their original order. Not thread safe
+ */
+public class TopKRanker<T> {
+
+    private static final double PROXIMITY_SCALE = 1000; // Distance (in meters) at which proximity halves relevance
+
+    // Interface through which the score of each item is found (items with higher scores are returned first)
+    public interface Scorer<T> {
+        double score(T item);
+    }
+
+    private final List<T> items; // Items being ranked
+    private final double[] scores; // Score of each item (found once, in the same order as the items)
+    private int[] remainingHeap; // Positions of the items not yet returned, best at the root (null until needed)
+    private int remainingCount; // Number of positions in the heap of remaining items
+    private int lastReturned = -1; // Position of the last item of the first page (-1 if no page returned)
+    private int returnedCount; // Number of items returned so far
+
+    public TopKRanker(List<T> items, Scorer<T> scorer) {
+        this.items = items;
+        scores = new double[items.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = scorer.score(items.get(i));
+        }
+    }
+
+    /* Returns a scorer which combines how well the location's report matches the search text (its score
+     * from the provided report matches, which may be empty), how popular it is and how close it is. Each
+     * part multiplies the score, so a well matching report which is far away may still rank highly */
+    public static <T> Scorer<T> relevance(final FilterEngine.ItemAccessor<T> accessor,
+                                          List<ReportIndex.Match> reportMatches) {
+        final Map<String, Double> reportScores = new HashMap<>(reportMatches.size() * 2);
+        for (ReportIndex.Match match : reportMatches) {
+            reportScores.put(match.getReportID(), match.getScore());
+        }
+        return new Scorer<T>() {
+            @Override
+            public double score(T item) {
+                Double reportScore = reportScores.get(accessor.getLocation(item).getReportID());
+                double textRelevance = 1 + (reportScore == null ? 0 : reportScore);
+                double popularity = 1 + Math.log1p(Math.max(0, accessor.getLocation(item).getLikes()));
+                double distance = accessor.getDistance(item);
+                double proximity = distance > 0 ? 1 / (1 + distance / PROXIMITY_SCALE) : 1;
+                return textRelevance * popularity * proximity;
+            }
+        };
+    }
+
+    // Determines if further items remain to be returned
+    public boolean hasMore() {
+        return returnedCount < items.size();
+    }
+
+    // Returns the next (at most) page size best scoring items, best first (empty once every item is returned)
+    public List<T> nextPage(int pageSize) {
+
+        int[] page;
+        if (lastReturned < 0) {
+            page = selectFirstPage(Math.min(pageSize, items.size()));
+            if (page.length > 0) {
+                lastReturned = page[page.length - 1];
+            }
+        } else {
+            if (remainingHeap == null) {
+                buildRemainingHeap();
+            }
+            page = new int[Math.min(pageSize, remainingCount)];
+            for (int i = 0; i < page.length; i++) {
+                page[i] = remainingHeap[0];
+                remainingHeap[0] = remainingHeap[--remainingCount];
+                siftDown(remainingHeap, remainingCount, 0, false);
+            }
+        }
+
+        returnedCount += page.length;
+        List<T> pageItems = new ArrayList<>(page.length);
+        for (int position : page) {
+            pageItems.add(items.get(position));
+        }
+        return pageItems;
+    }
+
+    /* Selects the best items by keeping the best seen so far in a heap with the worst of them at the
+     * root, which is replaced whenever a better item is found. Returns their positions, best first */
+    private int[] selectFirstPage(int pageSize) {
+
+        int[] heap = new int[pageSize];
+        int heapSize = 0;
+        for (int position = 0; position < scores.length && pageSize > 0; position++) {
+            if (heapSize < pageSize) {
+                heap[heapSize++] = position;
+                siftUp(heap, heapSize - 1, true);
+            } else if (ranksBefore(position, heap[0])) {
+                heap[0] = position;
+                siftDown(heap, heapSize, 0, true);
+            }
+        }
+
+        // The worst remaining item is removed from the root each time, so the page is filled from the end
+        int[] page = new int[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            page[i] = heap[0];
+            heap[0] = heap[i];
+            siftDown(heap, i, 0, true);
+        }
+        return page;
+    }
+
+    // Arranges every item ranked after the first page into a heap with the best item at the root
+    private void buildRemainingHeap() {
+        remainingHeap = new int[items.size() - returnedCount];
+        remainingCount = 0;
+        for (int position = 0; position < scores.length; position++) {
+            if (ranksBefore(lastReturned, position)) {
+                remainingHeap[remainingCount++] = position;
+            }
+        }
+        for (int i = remainingCount / 2 - 1; i >= 0; i--) {
+            siftDown(remainingHeap, remainingCount, i, false);
+        }
+    }
+
+    // Determines if the first item ranks before the second (a higher score, or an equal score and earlier position)
+    private boolean ranksBefore(int first, int second) {
+        int comparison = Double.compare(scores[first], scores[second]);
+        return comparison > 0 || comparison == 0 && first < second;
+    }
+
+    // Determines if the first item belongs above the second in a heap (which holds either the worst or best at its root)
+    private boolean belongsAbove(int first, int second, boolean worstAtRoot) {
+        return worstAtRoot ? ranksBefore(second, first) : ranksBefore(first, second);
+    }
+
+    // Moves the item at the provided index of the heap up until it is below an item which belongs above it
+    private void siftUp(int[] heap, int index, boolean worstAtRoot) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!belongsAbove(heap[index], heap[parent], worstAtRoot)) {
+                return;
+            }
+            swap(heap, index, parent);
+            index = parent;
+        }
+    }
+
+    // Moves the item at the provided index of the heap down until every item below it belongs below it
+    private void siftDown(int[] heap, int heapSize, int index, boolean worstAtRoot) {
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                return;
+            }
+            if (child + 1 < heapSize && belongsAbove(heap[child + 1], heap[child], worstAtRoot)) {
+                child++;
+            }
+            if (!belongsAbove(heap[child], heap[index], worstAtRoot)) {
+                return;
+            }
+            swap(heap, index, child);
+            index = child;
+        }
+    }
+
+    private static void swap(int[] heap, int first, int second) {
+        int temp = heap[first];
+        heap[first] = heap[second];
+        heap[second] = temp;
+    }
+}
@@ -4,15 +4,18 @@ import com.nearchitectural.utilities.TagID;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /* Author:  Kristiyan Doykov, Joel Bell-Wilding
  * Since:   12/12/19
- * Version: 1.0
+ * Version: 1.1
  * Purpose: Record-like class which stores information regarding a given location
  */
 public class Location {
 
+    // Incremented whenever the tags of any location change after it was created (e.g. when liked)
+    private static final AtomicInteger tagVersion = new AtomicInteger();
+
     private final String id; // Unique ID String for a given location
     private String name; // Location name
     private int yearOpened; // year location was opened initially
@@ -22,12 +25,12 @@ public class Location {
     private String summary; // Brief information about location
     private final double latitude; // Latitude of location
     private final double longitude; // Longitude of location
-    private Map<TagID, Boolean> tags; // Mapping of Tag ID to active state
+    private long tagBits; // Active tags of the location (one bit per Tag ID, see TagID.bit())
     private String thumbnailURL; // URL for thumbnail image used for displaying on UI
     private final String reportID; // Reference ID for corresponding report in database
 
     public Location(String id, String name, int yearOpened, int likes, String type, String summary, double latitude,
-                    double longitude, Map<TagID, Boolean> tags, String thumbnailURL, String reportID) {
+                    double longitude, long tagBits, String thumbnailURL, String reportID) {
 
         this.id = id;
         this.name = name;
@@ -39,7 +42,7 @@ public class Location {
         this.summary = summary;
         this.latitude = latitude;
         this.longitude = longitude;
-        this.tags = tags;
+        this.tagBits = tagBits;
         this.thumbnailURL = thumbnailURL;
         this.reportID = reportID;
     }
@@ -69,23 +72,43 @@ public class Location {
         return longitude;
     }
 
-    public Map<TagID, Boolean> getAllTags() {
-        return tags;
+    public long getTagBits() {
+        return tagBits;
     }
 
     // Returns only active tags from tags list
     public List<TagID> getActiveTags() {
         List<TagID> activeTags = new ArrayList<>();
-        for (TagID tag : tags.keySet()) {
-            if (tags.get(tag))
+        for (TagID tag : TagID.values()) {
+            if (getTagValue(tag))
                 activeTags.add(tag);
         }
         return activeTags;
     }
 
     // Returns a boolean representing if a tag is active or not when provided with TagID
-    public Boolean getTagValue(TagID tagID) {
-        return tags.get(tagID);
+    public boolean getTagValue(TagID tagID) {
+        return (tagBits & tagID.bit()) != 0;
+    }
+
+    // Determines if every tag in the provided bitmask is active for the location
+    public boolean hasAllTags(long requiredTagBits) {
+        return (tagBits & requiredTagBits) == requiredTagBits;
+    }
+
+    // Sets a tag to active or inactive (e.g. when the user likes or unlikes the location)
+    public void setTagValue(TagID tagID, boolean isActive) {
+        long newTagBits = isActive ? tagBits | tagID.bit() : tagBits & ~tagID.bit();
+        if (newTagBits != tagBits) {
+            tagBits = newTagBits;
+            tagVersion.incrementAndGet();
+        }
+    }
+
+    /* Returns the number of tag changes made to existing locations, so results filtered by tag can
+     * be recognised as outdated even though the locations themselves are the same objects */
+    public static int getTagVersion() {
+        return tagVersion.get();
     }
 
     public String getThumbnailURL() {
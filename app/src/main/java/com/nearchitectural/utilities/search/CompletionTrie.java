@@ -0,0 +1,365 @@
+package com.nearchitectural.utilities.search;
+
+import com.nearchitectural.utilities.models.Location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Version: 1.0
+ * Purpose: Immutable prefix trie over the names and place types of a set of locations, used to
+ *          suggest completions as the search text is typed. Each completion is weighted by the
+ *          total likes of the locations it leads to, and is found from the start of any of its
+ *          words (e.g. "cas" completes to "Alnwick Castle"). The trie is compact: chains of single
+ *          children are merged into one node whose label is read from the completion text, nodes
+ *          are stored in parallel arrays, and each node holds its best completions, so a lookup
+ *          only follows the typed characters down the trie
+ */
+public class CompletionTrie {
+
+    public static final int MAX_COMPLETIONS = 8; // Most completions kept (and returned) for each prefix
+
+    private final String[] completions; // Text of each completion (a location name or place type)
+    private final String[] keys; // Lower case text of each completion (trie labels are read from these)
+
+    // Each trie node, stored in parallel arrays by node number (the root is node 0)
+    private final int[] labelKey; // Completion whose key contains the node's label
+    private final int[] labelStart; // Start of the label within that key
+    private final int[] labelEnd; // End of the label within that key (the depth of the node)
+    private final int[] firstChild; // Node number of the first child (children are numbered in order of their labels)
+    private final int[] childCount; // Number of children
+    private final int[] bestStart; // Start of the node's best completions in bestCompletions
+    private final int[] bestCount; // Number of the node's best completions
+    private final int[] bestCompletions; // Best completions of every node, best first
+
+    // Creates a trie over the names and place types of the provided locations
+    public CompletionTrie(List<Location> locations) {
+
+        // Locations sharing a name or place type (ignoring case) share one completion, weighted by their total likes
+        Map<String, Integer> completionsByKey = new LinkedHashMap<>();
+        List<String> completionTexts = new ArrayList<>();
+        final List<Long> completionWeights = new ArrayList<>();
+        for (Location location : locations) {
+            for (String text : new String[]{location.getName(), location.getType()}) {
+                if (text == null || text.trim().isEmpty()) {
+                    continue;
+                }
+                String key = normalise(text);
+                Integer completion = completionsByKey.get(key);
+                if (completion == null) {
+                    completion = completionTexts.size();
+                    completionsByKey.put(key, completion);
+                    completionTexts.add(text.trim());
+                    completionWeights.add(0L);
+                }
+                completionWeights.set(completion, completionWeights.get(completion) + Math.max(0, location.getLikes()));
+            }
+        }
+        completions = completionTexts.toArray(new String[0]);
+        keys = completionsByKey.keySet().toArray(new String[0]);
+
+        // Completions are ranked by weight, then alphabetically, so node lists can be merged by rank alone
+        Integer[] byRank = new Integer[completions.length];
+        for (int i = 0; i < byRank.length; i++) {
+            byRank[i] = i;
+        }
+        Arrays.sort(byRank, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                int comparison = completionWeights.get(second).compareTo(completionWeights.get(first));
+                return comparison != 0 ? comparison : keys[first].compareTo(keys[second]);
+            }
+        });
+        int[] rank = new int[completions.length];
+        for (int i = 0; i < byRank.length; i++) {
+            rank[byRank[i]] = i;
+        }
+
+        // Every word of every completion starts an entry, which is its key from that word to the end
+        IntList entryCompletions = new IntList();
+        IntList entryOffsets = new IntList();
+        for (int completion = 0; completion < keys.length; completion++) {
+            String key = keys[completion];
+            for (int offset = 0; offset < key.length(); offset++) {
+                if (Character.isLetterOrDigit(key.charAt(offset))
+                        && (offset == 0 || !Character.isLetterOrDigit(key.charAt(offset - 1)))) {
+                    entryCompletions.add(completion);
+                    entryOffsets.add(offset);
+                }
+            }
+        }
+
+        Builder builder = new Builder(keys, rank, entryCompletions.toArray(), entryOffsets.toArray());
+        builder.build();
+        labelKey = builder.labelKey.toArray();
+        labelStart = builder.labelStart.toArray();
+        labelEnd = builder.labelEnd.toArray();
+        firstChild = builder.firstChild.toArray();
+        childCount = builder.childCount.toArray();
+        bestStart = builder.bestStart.toArray();
+        bestCount = builder.bestCount.toArray();
+        bestCompletions = builder.bestCompletions.toArray();
+    }
+
+    // Returns a trie containing no completions
+    public static CompletionTrie empty() {
+        return new CompletionTrie(new ArrayList<Location>());
+    }
+
+    // Returns the number of distinct completions
+    public int size() {
+        return completions.length;
+    }
+
+    /* Returns up to the provided number (at most MAX_COMPLETIONS) of the most liked completions which
+     * have a word starting with the typed text (ignoring case), most liked first */
+    public List<String> complete(String typed, int limit) {
+
+        String prefix = normalise(typed);
+        int node = 0;
+        int position = 0;
+        while (position < prefix.length()) {
+            node = findChild(node, prefix.charAt(position));
+            if (node < 0) {
+                return Collections.emptyList();
+            }
+            // Every character of the child's label must match (the prefix may end part way through it)
+            String key = keys[labelKey[node]];
+            for (int i = labelStart[node]; i < labelEnd[node] && position < prefix.length(); i++, position++) {
+                if (key.charAt(i) != prefix.charAt(position)) {
+                    return Collections.emptyList();
+                }
+            }
+        }
+
+        int count = Math.min(Math.max(limit, 0), bestCount[node]);
+        List<String> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            results.add(completions[bestCompletions[bestStart[node] + i]]);
+        }
+        return results;
+    }
+
+    // Returns the child of the node whose label starts with the provided character (or -1 if none)
+    private int findChild(int node, char character) {
+        int low = firstChild[node];
+        int high = low + childCount[node] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char label = keys[labelKey[middle]].charAt(labelStart[middle]);
+            if (label < character) {
+                low = middle + 1;
+            } else if (label > character) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /* Normalises text for matching in the same way as the search filter (lower case), ignoring spaces at
+     * either end so a completion's key always agrees with its (trimmed) text */
+    private static String normalise(String text) {
+        return text == null ? "" : text.trim().toLowerCase();
+    }
+
+    // Builds the nodes of the trie from the entries sorted by their keys (used during construction only)
+    private static class Builder {
+
+        private final String[] keys; // Lower case text of each completion
+        private final int[] rank; // Rank of each completion (lower ranks are better)
+        private final int[] entryCompletions; // Completion of each entry (in key order once sorted)
+        private final int[] entryOffsets; // Offset of each entry's key within its completion's key
+
+        private final IntList labelKey = new IntList();
+        private final IntList labelStart = new IntList();
+        private final IntList labelEnd = new IntList();
+        private final IntList firstChild = new IntList();
+        private final IntList childCount = new IntList();
+        private final IntList bestStart = new IntList();
+        private final IntList bestCount = new IntList();
+        private final IntList bestCompletions = new IntList();
+
+        Builder(String[] keys, int[] rank, int[] entryCompletions, int[] entryOffsets) {
+            this.keys = keys;
+            this.rank = rank;
+
+            // Entries are sorted by their keys, so the entries below any node form one contiguous range
+            Integer[] order = new Integer[entryCompletions.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            final int[] completions = entryCompletions;
+            final int[] offsets = entryOffsets;
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer first, Integer second) {
+                    String firstKey = keys[completions[first]];
+                    String secondKey = keys[completions[second]];
+                    int firstOffset = offsets[first];
+                    int secondOffset = offsets[second];
+                    int length = Math.min(firstKey.length() - firstOffset, secondKey.length() - secondOffset);
+                    for (int i = 0; i < length; i++) {
+                        char firstChar = firstKey.charAt(firstOffset + i);
+                        char secondChar = secondKey.charAt(secondOffset + i);
+                        if (firstChar != secondChar) {
+                            return firstChar < secondChar ? -1 : 1;
+                        }
+                    }
+                    return (firstKey.length() - firstOffset) - (secondKey.length() - secondOffset);
+                }
+            });
+            this.entryCompletions = new int[order.length];
+            this.entryOffsets = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                this.entryCompletions[i] = completions[order[i]];
+                this.entryOffsets[i] = offsets[order[i]];
+            }
+        }
+
+        // Builds the root (which has an empty label) and every node below it
+        void build() {
+            addNode(0, 0, 0);
+            buildNode(0, 0, entryCompletions.length, 0);
+        }
+
+        /* Builds the children of a node whose label ends at the provided depth, from the entries in the
+         * provided range, and collects the node's best completions */
+        private void buildNode(int node, int low, int high, int depth) {
+
+            // Entries which end at this node are completions of the node itself
+            int entry = low;
+            IntList candidates = new IntList();
+            while (entry < high && keyLength(entry) == depth) {
+                candidates.add(entryCompletions[entry]);
+                entry++;
+            }
+
+            // Remaining entries are grouped by their next character, one child per group. Children are
+            // numbered before any of their descendants, so the children of each node are contiguous
+            IntList groupStarts = new IntList();
+            while (entry < high) {
+                groupStarts.add(entry);
+                char next = keyChar(entry, depth);
+                while (entry < high && keyChar(entry, depth) == next) {
+                    entry++;
+                }
+            }
+            groupStarts.add(high);
+
+            int childNumber = labelKey.size();
+            firstChild.set(node, childNumber);
+            childCount.set(node, groupStarts.size() - 1);
+            for (int group = 0; group < groupStarts.size() - 1; group++) {
+                int groupLow = groupStarts.get(group);
+                // The child's label runs to where the first and last entries of the group differ (as they are sorted)
+                int childDepth = commonLength(groupLow, groupStarts.get(group + 1) - 1, depth + 1);
+                addNode(entryCompletions[groupLow], entryOffsets[groupLow] + depth,
+                        entryOffsets[groupLow] + childDepth);
+            }
+            for (int group = 0; group < groupStarts.size() - 1; group++) {
+                int child = childNumber + group;
+                buildNode(child, groupStarts.get(group), groupStarts.get(group + 1),
+                        labelEnd.get(child) - entryOffsets[groupStarts.get(group)]);
+                for (int i = 0; i < bestCount.get(child); i++) {
+                    candidates.add(bestCompletions.get(bestStart.get(child) + i));
+                }
+            }
+
+            // The node's best completions are the best of its own and its children's
+            int[] ranked = candidates.toArray();
+            for (int i = 0; i < ranked.length; i++) {
+                ranked[i] = rank[ranked[i]];
+            }
+            Arrays.sort(ranked);
+            bestStart.set(node, bestCompletions.size());
+            int count = 0;
+            for (int i = 0; i < ranked.length && count < MAX_COMPLETIONS; i++) {
+                if (i == 0 || ranked[i] != ranked[i - 1]) {
+                    bestCompletions.add(ranked[i]);
+                    count++;
+                }
+            }
+            bestCount.set(node, count);
+            // Ranks are converted back to completions once selected
+            for (int i = bestStart.get(node); i < bestCompletions.size(); i++) {
+                bestCompletions.set(i, completionOfRank(bestCompletions.get(i)));
+            }
+        }
+
+        // Adds a node whose label is part of a completion's key (its children and completions are set once built)
+        private void addNode(int completion, int start, int end) {
+            labelKey.add(completion);
+            labelStart.add(start);
+            labelEnd.add(end);
+            firstChild.add(0);
+            childCount.add(0);
+            bestStart.add(0);
+            bestCount.add(0);
+        }
+
+        private int[] completionsByRank; // Completion of each rank (created when first needed)
+
+        private int completionOfRank(int completionRank) {
+            if (completionsByRank == null) {
+                completionsByRank = new int[rank.length];
+                for (int completion = 0; completion < rank.length; completion++) {
+                    completionsByRank[rank[completion]] = completion;
+                }
+            }
+            return completionsByRank[completionRank];
+        }
+
+        // Returns the depth at which the keys of two entries first differ (at least the provided depth)
+        private int commonLength(int first, int second, int depth) {
+            int length = Math.min(keyLength(first), keyLength(second));
+            while (depth < length && keyChar(first, depth) == keyChar(second, depth)) {
+                depth++;
+            }
+            return depth;
+        }
+
+        private int keyLength(int entry) {
+            return keys[entryCompletions[entry]].length() - entryOffsets[entry];
+        }
+
+        private char keyChar(int entry, int depth) {
+            return keys[entryCompletions[entry]].charAt(entryOffsets[entry] + depth);
+        }
+    }
+
+    // Growable list of integers (used while building the trie)
+    private static class IntList {
+
+        private int[] values = new int[16]; // Integers added so far
+        private int size; // Number of integers added
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        void set(int index, int value) {
+            values[index] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.nearchitectural.utilities.search;
+
+import android.app.SearchManager;
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.nearchitectural.utilities.LocationRepository;
+
+import java.util.List;
+
+/* Version: 1.0
+ * Purpose: Provides the search view with suggested completions of the typed text (see
+ *          res/xml/searchable.xml). Suggestions are read from the completion trie which the
+ *          location repository rebuilds in the background, so each query is only a trie lookup
+ */
+public class LocationSuggestionProvider extends ContentProvider {
+
+    public static final String AUTHORITY = "com.nearchitectural.suggestions"; // Must match the manifest and searchable.xml
+
+    private static final String[] COLUMNS = { // Columns the search view reads for each suggestion
+            BaseColumns._ID,
+            SearchManager.SUGGEST_COLUMN_TEXT_1,
+            SearchManager.SUGGEST_COLUMN_QUERY
+    };
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    // Returns the best completions of the typed text (passed as the selection argument by the search view)
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+                        @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+
+        String typed = selectionArgs != null && selectionArgs.length > 0 ? selectionArgs[0] : uri.getLastPathSegment();
+        List<String> completions = LocationRepository.getInstance().getCompletionTrie()
+                .complete(typed, getLimit(uri));
+
+        MatrixCursor cursor = new MatrixCursor(COLUMNS, completions.size());
+        for (int i = 0; i < completions.size(); i++) {
+            cursor.addRow(new Object[]{i, completions.get(i), completions.get(i)});
+        }
+        return cursor;
+    }
+
+    // Returns the number of suggestions requested by the search view (at most CompletionTrie.MAX_COMPLETIONS)
+    private static int getLimit(Uri uri) {
+        String limit = uri.getQueryParameter(SearchManager.SUGGEST_PARAMETER_LIMIT);
+        if (limit != null) {
+            try {
+                return Math.min(Integer.parseInt(limit), CompletionTrie.MAX_COMPLETIONS);
+            } catch (NumberFormatException e) {
+                // The default limit is used
+            }
+        }
+        return CompletionTrie.MAX_COMPLETIONS;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return SearchManager.SUGGEST_MIME_TYPE;
+    }
+
+    // Suggestions are read only, so nothing is ever inserted, deleted or updated
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection,
+                      @Nullable String[] selectionArgs) {
+        return 0;
+    }
+}
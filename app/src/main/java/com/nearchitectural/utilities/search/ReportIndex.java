@@ -0,0 +1,633 @@
+package com.nearchitectural.utilities.search;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/* Version: 1.0
+ * Purpose: Full-text index over the paragraphs of location reports, so reports can be searched
+ *          on the device without being downloaded for each search. Report text is split into
+ *          lower case words, common words are ignored and simple word endings (plurals, -ing, -ed)
+ *          are removed so that e.g. "castles" matches "castle". A report matches a query if it
+ *          contains every word of the query (the last word may be partially typed, in which case
+ *          any form of a word starting with it matches), and matches are ranked by BM25 score.
+ *          Reports can be added, updated and removed individually, and the index can be saved to
+ *          and read from a file on the device. All methods are thread safe
+ */
+public class ReportIndex {
+
+    private static final int MAGIC_NUMBER = 0x4E455249; // Identifies a report index file
+    static final int FORMAT_VERSION = 2; // Incremented whenever the file layout changes
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int FINGERPRINT_LENGTH = 20; // Length of a SHA-1 digest of the report paragraphs
+    private static final int MIN_REPORT_BYTES = 2 * 4 + FINGERPRINT_LENGTH; // Fewest bytes a stored report can occupy
+    private static final int MIN_WORD_BYTES = 2 * 4; // Fewest bytes a stored word can occupy
+
+    private static final int MIN_WORD_LENGTH = 2; // Shorter words are not indexed or searched for
+    private static final int MIN_PREFIX_LENGTH = 3; // Partially typed words shorter than this are ignored
+    private static final double K1 = 1.2; // BM25 term frequency saturation
+    private static final double B = 0.75; // BM25 report length normalisation
+    // Common words which are too frequent to be useful for searching
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "an", "and", "are", "as", "at", "be", "but", "by", "for", "from", "had", "has", "have",
+            "he", "her", "his", "in", "into", "is", "it", "its", "of", "on", "or", "that", "the",
+            "their", "there", "this", "to", "was", "were", "which", "with"));
+
+    private final Map<String, Integer> ordinals; // Ordinal of each indexed report mapped by report ID
+    private final List<IndexedReport> reports; // Indexed reports by ordinal (null once removed)
+    private final Map<String, Posting> postings; // Reports containing each word stem, by ascending ordinal
+    private final TreeMap<String, int[]> vocabulary; // Number of reports containing each (unstemmed) word
+    private long totalWords; // Number of indexed words across all reports
+    private int version; // Incremented with every change to the indexed reports
+
+    public ReportIndex() {
+        ordinals = new HashMap<>();
+        reports = new ArrayList<>();
+        postings = new HashMap<>();
+        vocabulary = new TreeMap<>();
+    }
+
+    // A report returned by a search along with its BM25 score (higher scores are more relevant)
+    public static class Match {
+
+        private final String reportID; // ID of the matching report
+        private final double score; // BM25 score of the report for the query
+
+        Match(String reportID, double score) {
+            this.reportID = reportID;
+            this.score = score;
+        }
+
+        public String getReportID() {
+            return reportID;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    /* Indexes the paragraphs of a report, replacing any previous version of the report. Returns
+     * false (leaving the index unchanged) if the report is already indexed with the same text */
+    public synchronized boolean addReport(String reportID, List<String> paragraphs) {
+
+        List<String> text = paragraphs == null ? Collections.<String>emptyList() : paragraphs;
+        byte[] fingerprint = fingerprint(text);
+        Integer existing = ordinals.get(reportID);
+        if (existing != null) {
+            if (Arrays.equals(reports.get(existing).fingerprint, fingerprint)) {
+                return false;
+            }
+            removeOrdinal(existing);
+        }
+
+        // Count the occurrences of each word across all paragraphs
+        Map<String, Integer> wordCounts = new LinkedHashMap<>();
+        for (String paragraph : text) {
+            for (String word : splitWords(paragraph)) {
+                if (!STOP_WORDS.contains(word)) {
+                    Integer count = wordCounts.get(word);
+                    wordCounts.put(word, count == null ? 1 : count + 1);
+                }
+            }
+        }
+
+        String[] words = new String[wordCounts.size()];
+        int[] frequencies = new int[words.length];
+        int i = 0;
+        for (Map.Entry<String, Integer> wordCount : wordCounts.entrySet()) {
+            words[i] = wordCount.getKey();
+            frequencies[i++] = wordCount.getValue();
+        }
+        addIndexedReport(new IndexedReport(reportID, fingerprint, words, frequencies));
+        return true;
+    }
+
+    // Removes a report from the index. Returns false if the report was not indexed
+    public synchronized boolean removeReport(String reportID) {
+        Integer ordinal = ordinals.get(reportID);
+        if (ordinal == null) {
+            return false;
+        }
+        removeOrdinal(ordinal);
+        return true;
+    }
+
+    // Removes every report which is not one of the provided reports. Returns the number removed
+    public synchronized int retainReports(Collection<String> reportIDs) {
+        Set<String> reportsToKeep = new HashSet<>(reportIDs);
+        List<String> reportsToRemove = new ArrayList<>();
+        for (String reportID : ordinals.keySet()) {
+            if (!reportsToKeep.contains(reportID)) {
+                reportsToRemove.add(reportID);
+            }
+        }
+        for (String reportID : reportsToRemove) {
+            removeOrdinal(ordinals.get(reportID));
+        }
+        return reportsToRemove.size();
+    }
+
+    public synchronized boolean containsReport(String reportID) {
+        return ordinals.containsKey(reportID);
+    }
+
+    // Returns the number of indexed reports
+    public synchronized int size() {
+        return ordinals.size();
+    }
+
+    // Returns a number which changes whenever reports are added, updated or removed
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    /* Returns every report containing all words of the query, most relevant first. Unless the query
+     * ends with a space or punctuation, the last word matches any word starting with it (and other
+     * forms of those words). A query without any searchable words (e.g. only common words) matches
+     * no reports */
+    public synchronized List<Match> search(String query) {
+
+        List<QueryWord> queryWords = parseQuery(query);
+        if (queryWords.isEmpty() || ordinals.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // Find the reports containing each query word, starting with the word in fewest reports
+        List<Posting> wordPostings = new ArrayList<>(queryWords.size());
+        for (QueryWord queryWord : queryWords) {
+            Posting posting = findPosting(queryWord);
+            if (posting.size == 0) {
+                return new ArrayList<>();
+            }
+            wordPostings.add(posting);
+        }
+        Collections.sort(wordPostings, new Comparator<Posting>() {
+            @Override
+            public int compare(Posting first, Posting second) {
+                return first.size - second.size;
+            }
+        });
+
+        // Only reports containing the rarest word can contain every word, so only those are scored
+        double reportCount = ordinals.size();
+        double averageLength = Math.max(1, totalWords / reportCount);
+        Posting rarest = wordPostings.get(0);
+        double[] idfs = new double[wordPostings.size()];
+        for (int j = 0; j < idfs.length; j++) {
+            int reportsWithWord = wordPostings.get(j).size;
+            idfs[j] = Math.log(1 + (reportCount - reportsWithWord + 0.5) / (reportsWithWord + 0.5));
+        }
+
+        // Ordinals are ascending in every posting, so each is searched for after the previous one found
+        int[] searchStarts = new int[wordPostings.size()];
+        List<Match> matches = new ArrayList<>();
+        for (int i = 0; i < rarest.size; i++) {
+            int ordinal = rarest.ordinals[i];
+            double lengthNorm = K1 * (1 - B + B * reports.get(ordinal).length / averageLength);
+            double score = 0;
+            boolean containsAllWords = true;
+            for (int j = 0; j < idfs.length; j++) {
+                Posting posting = wordPostings.get(j);
+                int frequency;
+                if (j == 0) {
+                    frequency = rarest.frequencies[i];
+                } else {
+                    int position = Arrays.binarySearch(posting.ordinals, searchStarts[j], posting.size, ordinal);
+                    searchStarts[j] = position >= 0 ? position + 1 : -(position + 1);
+                    frequency = position >= 0 ? posting.frequencies[position] : 0;
+                }
+                if (frequency == 0) {
+                    containsAllWords = false;
+                    break;
+                }
+                score += idfs[j] * frequency * (K1 + 1) / (frequency + lengthNorm);
+            }
+            if (containsAllWords) {
+                matches.add(new Match(reports.get(ordinal).reportID, score));
+            }
+        }
+
+        Collections.sort(matches, new Comparator<Match>() {
+            @Override
+            public int compare(Match first, Match second) {
+                int scoreComparison = Double.compare(second.score, first.score);
+                return scoreComparison != 0 ? scoreComparison : first.reportID.compareTo(second.reportID);
+            }
+        });
+        return matches;
+    }
+
+    /* Determines if every report matching the query also matches the previous query (e.g. as more
+     * of a word is typed), in which case results can be narrowed from those of the previous query.
+     * This may return false for some narrower queries but never returns true for a wider query */
+    public static boolean isNarrowing(String previousQuery, String query) {
+
+        List<QueryWord> previousWords = parseQuery(previousQuery);
+        List<QueryWord> words = parseQuery(query);
+        if (previousWords.isEmpty()) {
+            // The previous query matched no reports, so only a query which matches none narrows it
+            return words.isEmpty();
+        }
+
+        // Each previous word must be required again, or replaced by a longer partially typed word
+        for (QueryWord previousWord : previousWords) {
+            boolean required = false;
+            for (QueryWord word : words) {
+                if (previousWord.partial
+                        ? word.partial && word.text.startsWith(previousWord.text)
+                        : !word.partial && word.text.equals(previousWord.text)) {
+                    required = true;
+                    break;
+                }
+            }
+            if (!required) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Saves every indexed report to the provided file. Only the list of reports is copied while locked
+     * (indexed reports are never modified), so searches are not held up while the index is written.
+     * A temporary file is written and synced to the disk first and then renamed, so a partial index is
+     * never read (even after a power loss). The temporary file is removed if the write fails */
+    public void write(File indexFile) throws IOException {
+
+        List<IndexedReport> indexedReports;
+        synchronized (this) {
+            indexedReports = new ArrayList<>(ordinals.size());
+            for (IndexedReport report : reports) {
+                if (report != null) {
+                    indexedReports.add(report);
+                }
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC_NUMBER);
+        output.writeInt(FORMAT_VERSION);
+        output.writeInt(indexedReports.size());
+        for (IndexedReport report : indexedReports) {
+            writeString(output, report.reportID);
+            output.write(report.fingerprint);
+            output.writeInt(report.words.length);
+            for (int i = 0; i < report.words.length; i++) {
+                writeString(output, report.words[i]);
+                output.writeInt(report.frequencies[i]);
+            }
+        }
+        output.close();
+
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        boolean replaced = false;
+        try {
+            FileOutputStream fileOutput = new FileOutputStream(tempFile);
+            try {
+                bytes.writeTo(fileOutput);
+                fileOutput.getFD().sync();
+            } finally {
+                fileOutput.close();
+            }
+            replaced = tempFile.renameTo(indexFile);
+        } finally {
+            if (!replaced) {
+                tempFile.delete();
+            }
+        }
+
+        if (!replaced) {
+            throw new IOException("Unable to replace report index " + indexFile.getPath());
+        }
+    }
+
+    /* Reads an index saved with write(). Returns null if no index exists or if it was written with a
+     * different format version. Reports are indexed from their saved words, so no text is split again */
+    public static ReportIndex read(File indexFile) throws IOException {
+
+        if (!indexFile.exists()) {
+            return null;
+        }
+
+        // Lengths read from the file can never exceed its size unless the file is corrupt
+        long fileLength = indexFile.length();
+        DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile), BUFFER_SIZE));
+        try {
+            if (input.readInt() != MAGIC_NUMBER || input.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            ReportIndex index = new ReportIndex();
+            int count = readLength(input, fileLength / MIN_REPORT_BYTES);
+            for (int i = 0; i < count; i++) {
+                String reportID = readString(input, fileLength);
+                byte[] fingerprint = new byte[FINGERPRINT_LENGTH];
+                input.readFully(fingerprint);
+                String[] words = new String[readLength(input, fileLength / MIN_WORD_BYTES)];
+                int[] frequencies = new int[words.length];
+                for (int j = 0; j < words.length; j++) {
+                    words[j] = readString(input, fileLength);
+                    frequencies[j] = input.readInt();
+                }
+                index.addIndexedReport(new IndexedReport(reportID, fingerprint, words, frequencies));
+            }
+            return index;
+        } finally {
+            input.close();
+        }
+    }
+
+    // Splits text into lower case words of letters and digits (shorter words are dropped)
+    static List<String> splitWords(String text) {
+
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char character = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(character)) {
+                word.append(Character.toLowerCase(character));
+            } else if (word.length() > 0) {
+                if (word.length() >= MIN_WORD_LENGTH) {
+                    words.add(word.toString());
+                }
+                word.setLength(0);
+            }
+        }
+        return words;
+    }
+
+    /* Removes common English word endings so different forms of a word share a stem (plurals first,
+     * then -ing and -ed). Deliberately simple, so some forms (e.g. irregular plurals) are not joined */
+    static String stem(String word) {
+
+        String stem = word;
+        if (stem.length() > 4 && stem.endsWith("ies")) {
+            stem = stem.substring(0, stem.length() - 3) + "y";
+        } else if (stem.endsWith("sses")) {
+            stem = stem.substring(0, stem.length() - 2);
+        } else if (stem.length() > 3 && stem.endsWith("s")
+                && !stem.endsWith("ss") && !stem.endsWith("us") && !stem.endsWith("is")) {
+            stem = stem.substring(0, stem.length() - 1);
+        }
+
+        if (stem.length() > 5 && stem.endsWith("ing")) {
+            stem = stem.substring(0, stem.length() - 3);
+        } else if (stem.length() > 4 && stem.endsWith("ed")) {
+            stem = stem.substring(0, stem.length() - 2);
+        }
+        return stem;
+    }
+
+    /* Splits a query into the words which restrict its matches: complete words which are not common
+     * words (as stems), and the last word if it is still being typed and long enough (as typed) */
+    private static List<QueryWord> parseQuery(String query) {
+
+        List<QueryWord> queryWords = new ArrayList<>();
+        if (query == null) {
+            return queryWords;
+        }
+        List<String> words = splitWords(query);
+
+        // The last word is partial if the query ends within it (and it was not dropped for being short)
+        int trailingLength = 0;
+        while (trailingLength < query.length()
+                && Character.isLetterOrDigit(query.charAt(query.length() - 1 - trailingLength))) {
+            trailingLength++;
+        }
+        int partialWord = trailingLength >= MIN_WORD_LENGTH ? words.size() - 1 : -1;
+
+        Set<String> seenWords = new LinkedHashSet<>();
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+            if (i == partialWord) {
+                if (word.length() >= MIN_PREFIX_LENGTH) {
+                    queryWords.add(new QueryWord(word, true));
+                }
+            } else if (!STOP_WORDS.contains(word) && seenWords.add(stem(word))) {
+                queryWords.add(new QueryWord(stem(word), false));
+            }
+        }
+        return queryWords;
+    }
+
+    // Returns the reports containing a query word (and its frequency in each)
+    private Posting findPosting(QueryWord queryWord) {
+
+        if (!queryWord.partial) {
+            Posting posting = postings.get(queryWord.text);
+            return posting == null ? new Posting() : posting;
+        }
+
+        // A partially typed word matches every stem of every indexed word starting with it
+        Set<String> stems = new LinkedHashSet<>();
+        for (String word : vocabulary.subMap(queryWord.text, queryWord.text + Character.MAX_VALUE).keySet()) {
+            stems.add(stem(word));
+        }
+        if (stems.size() == 1) {
+            Posting posting = postings.get(stems.iterator().next());
+            return posting == null ? new Posting() : posting;
+        }
+
+        // Frequencies are summed across stems (e.g. "cast" counts both "castle" and "casting")
+        Map<Integer, Integer> frequencies = new HashMap<>();
+        for (String stem : stems) {
+            Posting posting = postings.get(stem);
+            for (int i = 0; posting != null && i < posting.size; i++) {
+                Integer frequency = frequencies.get(posting.ordinals[i]);
+                frequencies.put(posting.ordinals[i], (frequency == null ? 0 : frequency) + posting.frequencies[i]);
+            }
+        }
+        Integer[] matchingOrdinals = frequencies.keySet().toArray(new Integer[0]);
+        Arrays.sort(matchingOrdinals);
+        Posting merged = new Posting();
+        for (Integer ordinal : matchingOrdinals) {
+            merged.add(ordinal, frequencies.get(ordinal));
+        }
+        return merged;
+    }
+
+    // Adds a report to the postings of its words under the next ordinal (so postings stay in order)
+    private void addIndexedReport(IndexedReport report) {
+
+        int ordinal = reports.size();
+        reports.add(report);
+        ordinals.put(report.reportID, ordinal);
+
+        Map<String, Integer> stemFrequencies = new LinkedHashMap<>();
+        for (int i = 0; i < report.words.length; i++) {
+            String stem = stem(report.words[i]);
+            Integer frequency = stemFrequencies.get(stem);
+            stemFrequencies.put(stem, (frequency == null ? 0 : frequency) + report.frequencies[i]);
+
+            int[] reportCount = vocabulary.get(report.words[i]);
+            if (reportCount == null) {
+                vocabulary.put(report.words[i], new int[]{1});
+            } else {
+                reportCount[0]++;
+            }
+        }
+        for (Map.Entry<String, Integer> stemFrequency : stemFrequencies.entrySet()) {
+            Posting posting = postings.get(stemFrequency.getKey());
+            if (posting == null) {
+                posting = new Posting();
+                postings.put(stemFrequency.getKey(), posting);
+            }
+            posting.add(ordinal, stemFrequency.getValue());
+        }
+        totalWords += report.length;
+        version++;
+    }
+
+    // Removes a report from the postings of its words (its ordinal is not reused)
+    private void removeOrdinal(int ordinal) {
+
+        IndexedReport report = reports.get(ordinal);
+        reports.set(ordinal, null);
+        ordinals.remove(report.reportID);
+
+        Set<String> stems = new HashSet<>();
+        for (String word : report.words) {
+            stems.add(stem(word));
+            int[] reportCount = vocabulary.get(word);
+            if (--reportCount[0] == 0) {
+                vocabulary.remove(word);
+            }
+        }
+        for (String stem : stems) {
+            Posting posting = postings.get(stem);
+            posting.remove(ordinal);
+            if (posting.size == 0) {
+                postings.remove(stem);
+            }
+        }
+        totalWords -= report.length;
+        version++;
+    }
+
+    /* Returns a SHA-1 digest of the paragraphs of a report. Each paragraph is preceded by its length,
+     * so moving text between paragraphs changes the digest too */
+    private static byte[] fingerprint(List<String> paragraphs) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e); // Every Java platform provides SHA-1
+        }
+        for (String paragraph : paragraphs) {
+            byte[] bytes = (paragraph == null ? "" : paragraph).getBytes(UTF_8);
+            digest.update(new byte[]{(byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16),
+                    (byte) (bytes.length >>> 8), (byte) bytes.length});
+            digest.update(bytes);
+        }
+        return digest.digest();
+    }
+
+    // Writes a length-prefixed UTF-8 string (unlike writeUTF, not limited to 64KB)
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input, long fileLength) throws IOException {
+        byte[] bytes = new byte[readLength(input, fileLength)];
+        input.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    // Reads a stored length or count, rejecting values a valid index could not contain
+    private static int readLength(DataInputStream input, long maximum) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > maximum) {
+            throw new IOException("Corrupt report index: invalid length " + length);
+        }
+        return length;
+    }
+
+    // An indexed report and the words it contains (kept so the report can be removed or saved)
+    private static class IndexedReport {
+
+        private final String reportID; // ID of the report
+        private final byte[] fingerprint; // SHA-1 digest of the report paragraphs (to detect unchanged reports)
+        private final String[] words; // Each distinct word of the report
+        private final int[] frequencies; // Number of occurrences of each word
+        private final int length; // Total number of indexed words in the report
+
+        IndexedReport(String reportID, byte[] fingerprint, String[] words, int[] frequencies) {
+            this.reportID = reportID;
+            this.fingerprint = fingerprint;
+            this.words = words;
+            this.frequencies = frequencies;
+            int wordCount = 0;
+            for (int frequency : frequencies) {
+                wordCount += frequency;
+            }
+            this.length = wordCount;
+        }
+    }
+
+    // A word (stem or partially typed word) of a query
+    private static class QueryWord {
+
+        private final String text; // Stem of a complete word, or a partially typed word as typed
+        private final boolean partial; // Flags that the word may still be being typed
+
+        QueryWord(String text, boolean partial) {
+            this.text = text;
+            this.partial = partial;
+        }
+    }
+
+    // Growable list of ascending report ordinals along with the frequency of a word in each
+    private static class Posting {
+
+        private int[] ordinals = new int[4]; // Ordinals of the reports containing the word
+        private int[] frequencies = new int[4]; // Occurrences of the word in each report
+        private int size; // Number of reports containing the word
+
+        void add(int ordinal, int frequency) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            ordinals[size] = ordinal;
+            frequencies[size++] = frequency;
+        }
+
+        void remove(int ordinal) {
+            int position = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (position >= 0) {
+                System.arraycopy(ordinals, position + 1, ordinals, position, size - position - 1);
+                System.arraycopy(frequencies, position + 1, frequencies, position, size - position - 1);
+                size--;
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.nearchitectural.utilities.search;
+
+import com.nearchitectural.utilities.IndexChanges;
+import com.nearchitectural.utilities.models.Location;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Version: 1.1
+ * Purpose: Immutable inverted index over the names and place types of a set of locations. Every
+ *          substring of up to three characters (n-gram) of each lower case name and type is mapped
+ *          to the ordinals of the locations containing it, so a search only examines the locations
+ *          sharing the query's n-grams rather than every location. Queries of up to three characters
+ *          are answered directly from a single posting list, and longer queries intersect the posting
+ *          lists of their trigrams before confirming each remaining candidate. Changes to the
+ *          locations can be applied without rebuilding the posting lists (see IndexChanges)
+ */
+public class SearchIndex {
+
+    private static final int MAX_GRAM_LENGTH = 3; // Length of the longest indexed substrings
+
+    private final List<Location> locations; // Locations the postings were built with (positions are their ordinals)
+    private final String[] names; // Lower case name of each location by ordinal
+    private final String[] types; // Lower case place type of each location by ordinal
+    private final Map<Long, int[]> postings; // Ascending ordinals of the locations containing each n-gram
+    private final IndexChanges changes; // Locations changed since the postings were built
+
+    // Creates an index over the provided locations
+    public SearchIndex(List<Location> locations) {
+
+        int size = locations.size();
+        this.locations = Collections.unmodifiableList(new ArrayList<>(locations));
+        names = new String[size];
+        types = new String[size];
+
+        // Posting lists are built in ordinal order, so each is sorted without needing a sort
+        Map<Long, PostingBuilder> builders = new HashMap<>();
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            Location location = this.locations.get(ordinal);
+            names[ordinal] = normalise(location.getName());
+            types[ordinal] = normalise(location.getType());
+            addGrams(builders, names[ordinal], ordinal);
+            addGrams(builders, types[ordinal], ordinal);
+        }
+
+        postings = new HashMap<>(builders.size() * 2);
+        for (Map.Entry<Long, PostingBuilder> builder : builders.entrySet()) {
+            postings.put(builder.getKey(), builder.getValue().build());
+        }
+        changes = IndexChanges.none();
+    }
+
+    // Creates an index sharing the postings of another index, with further changes applied
+    private SearchIndex(SearchIndex index, IndexChanges changes) {
+        locations = index.locations;
+        names = index.names;
+        types = index.types;
+        postings = index.postings;
+        this.changes = changes;
+    }
+
+    // Returns an index containing no locations
+    public static SearchIndex empty() {
+        return new SearchIndex(new ArrayList<Location>());
+    }
+
+    /* Returns an index with the provided changes applied, which shares this index's postings. The cost
+     * grows with the number of changes since the postings were built rather than the number of locations */
+    public SearchIndex withChanges(List<Location> updatedLocations, Collection<String> removedLocationIDs) {
+        return new SearchIndex(this, changes.with(updatedLocations, removedLocationIDs));
+    }
+
+    // Returns the locations changed since the postings were built (e.g. to decide when to rebuild the index)
+    public IndexChanges getChanges() {
+        return changes;
+    }
+
+    /* Returns the indexed locations (positions in this list are the ordinals returned by searches).
+     * Locations changed since the postings were built follow the locations they were built with,
+     * whose replaced versions are never returned by a search */
+    public List<Location> getLocations() {
+        final List<Location> changedLocations = changes.getChangedLocations();
+        if (changedLocations.isEmpty()) {
+            return locations;
+        }
+        return new AbstractList<Location>() {
+            @Override
+            public Location get(int ordinal) {
+                return ordinal < locations.size()
+                        ? locations.get(ordinal) : changedLocations.get(ordinal - locations.size());
+            }
+
+            @Override
+            public int size() {
+                return locations.size() + changedLocations.size();
+            }
+        };
+    }
+
+    /* Returns the ascending ordinals of every location whose name or place type contains the query
+     * (ignoring case). An empty query matches every location */
+    public int[] search(String query) {
+
+        String normalisedQuery = normalise(query);
+        if (normalisedQuery.isEmpty()) {
+            int[] allOrdinals = new int[locations.size()];
+            for (int i = 0; i < allOrdinals.length; i++) {
+                allOrdinals[i] = i;
+            }
+            return applyChanges(allOrdinals, normalisedQuery);
+        }
+
+        // Short queries are themselves an indexed n-gram, so their posting list is the exact result
+        if (normalisedQuery.length() <= MAX_GRAM_LENGTH) {
+            int[] posting = postings.get(gramKey(normalisedQuery, 0, normalisedQuery.length()));
+            return applyChanges(posting == null ? new int[0] : posting.clone(), normalisedQuery);
+        }
+
+        // Every location containing the query contains each of its trigrams
+        int gramCount = normalisedQuery.length() - MAX_GRAM_LENGTH + 1;
+        int[][] gramPostings = new int[gramCount][];
+        for (int i = 0; i < gramCount; i++) {
+            gramPostings[i] = postings.get(gramKey(normalisedQuery, i, i + MAX_GRAM_LENGTH));
+            if (gramPostings[i] == null) {
+                return applyChanges(new int[0], normalisedQuery);
+            }
+        }
+        int[] candidates = intersect(gramPostings);
+
+        // Sharing every trigram does not guarantee the trigrams appear together, so confirm each candidate
+        int matchCount = 0;
+        for (int ordinal : candidates) {
+            if (names[ordinal].contains(normalisedQuery) || types[ordinal].contains(normalisedQuery)) {
+                candidates[matchCount++] = ordinal;
+            }
+        }
+        return applyChanges(Arrays.copyOf(candidates, matchCount), normalisedQuery);
+    }
+
+    /* Removes the ordinals of locations which have been updated or removed since the postings were
+     * built from the matches, then adds the ordinals of changed locations matching the query */
+    private int[] applyChanges(int[] ordinals, String normalisedQuery) {
+
+        List<Location> changedLocations = changes.getChangedLocations();
+        if (changes.size() == 0) {
+            return ordinals;
+        }
+
+        int matchCount = 0;
+        for (int ordinal : ordinals) {
+            if (!changes.isReplaced(locations.get(ordinal).getId())) {
+                ordinals[matchCount++] = ordinal;
+            }
+        }
+        // Changed locations follow the indexed locations, so the ordinals remain ascending
+        int[] matches = Arrays.copyOf(ordinals, matchCount + changedLocations.size());
+        for (int i = 0; i < changedLocations.size(); i++) {
+            Location location = changedLocations.get(i);
+            if (normalise(location.getName()).contains(normalisedQuery)
+                    || normalise(location.getType()).contains(normalisedQuery)) {
+                matches[matchCount++] = locations.size() + i;
+            }
+        }
+        return Arrays.copyOf(matches, matchCount);
+    }
+
+    // Returns the ordinals present in every posting list, starting from the shortest list
+    private static int[] intersect(int[][] gramPostings) {
+
+        int shortest = 0;
+        for (int i = 1; i < gramPostings.length; i++) {
+            if (gramPostings[i].length < gramPostings[shortest].length) {
+                shortest = i;
+            }
+        }
+
+        int[] result = gramPostings[shortest].clone();
+        int resultSize = result.length;
+        for (int i = 0; i < gramPostings.length && resultSize > 0; i++) {
+            if (i == shortest) {
+                continue;
+            }
+            // Both lists are ascending, so each ordinal is searched for after the previous one found
+            int[] posting = gramPostings[i];
+            int searchStart = 0;
+            int keptSize = 0;
+            for (int j = 0; j < resultSize && searchStart < posting.length; j++) {
+                int position = Arrays.binarySearch(posting, searchStart, posting.length, result[j]);
+                if (position >= 0) {
+                    result[keptSize++] = result[j];
+                    searchStart = position + 1;
+                } else {
+                    searchStart = -(position + 1);
+                }
+            }
+            resultSize = keptSize;
+        }
+        return Arrays.copyOf(result, resultSize);
+    }
+
+    // Adds the location ordinal to the posting list of every n-gram of the text
+    private static void addGrams(Map<Long, PostingBuilder> builders, String text, int ordinal) {
+        for (int start = 0; start < text.length(); start++) {
+            for (int end = start + 1; end <= Math.min(start + MAX_GRAM_LENGTH, text.length()); end++) {
+                Long key = gramKey(text, start, end);
+                PostingBuilder builder = builders.get(key);
+                if (builder == null) {
+                    builder = new PostingBuilder();
+                    builders.put(key, builder);
+                }
+                builder.add(ordinal);
+            }
+        }
+    }
+
+    // Packs an n-gram of up to three characters (and its length) into a single key
+    private static long gramKey(String text, int start, int end) {
+        long key = end - start;
+        for (int i = start; i < end; i++) {
+            key = (key << 16) | text.charAt(i);
+        }
+        return key;
+    }
+
+    // Normalises text for matching in the same way as the search filter (lower case)
+    private static String normalise(String text) {
+        return text == null ? "" : text.toLowerCase();
+    }
+
+    // Growable list of ascending ordinals (each ordinal is only stored once)
+    private static class PostingBuilder {
+
+        private int[] ordinals = new int[4]; // Ordinals added so far
+        private int size; // Number of ordinals added
+
+        void add(int ordinal) {
+            // A location may contain the same n-gram several times, but ordinals arrive in order
+            if (size > 0 && ordinals[size - 1] == ordinal) {
+                return;
+            }
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            ordinals[size++] = ordinal;
+        }
+
+        int[] build() {
+            return Arrays.copyOf(ordinals, size);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.nearchitectural.utilities.search;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* Version: 1.0
+ * Purpose: Runs searches on a worker thread so that filtering never blocks the main thread. Bursts
+ *          of input (e.g. typing or dragging a slider) are debounced so only the last search of
+ *          the burst is run, and each search supersedes every earlier one: superseded searches
+ *          still waiting are skipped and the results of those already running are discarded, so
+ *          only the result of the newest search is delivered. Must be used on the main thread
+ */
+public class SearchScheduler<R> {
+
+    // Interface for a search run on the worker thread
+    public interface SearchTask<R> {
+        R run();
+    }
+
+    // Interface for receiving the result of the newest search on the main thread
+    public interface OnResultListener<R> {
+        void onResult(R result);
+    }
+
+    private final Executor worker; // Executor on which searches are run
+    private final OnResultListener<R> resultListener; // Receives the result of the newest search
+    private final Handler mainThreadHandler; // Delays searches and returns their results to the main thread
+    private final AtomicInteger generation; // Number of the newest search (read by the worker thread)
+    private Runnable pendingSearch; // Search waiting for its debounce delay to pass (if any)
+
+    public SearchScheduler(Executor worker, OnResultListener<R> resultListener) {
+        this.worker = worker;
+        this.resultListener = resultListener;
+        mainThreadHandler = new Handler(Looper.getMainLooper());
+        generation = new AtomicInteger();
+    }
+
+    /* Runs the search once no newer search has been scheduled for the provided delay (a delay of 0
+     * starts the search straight away), superseding every search scheduled before it */
+    public void schedule(final SearchTask<R> task, long delayMillis) {
+
+        final int searchGeneration = generation.incrementAndGet();
+        removePendingSearch();
+
+        pendingSearch = new Runnable() {
+            @Override
+            public void run() {
+                pendingSearch = null;
+                worker.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // A newer search was scheduled while this one waited for the worker
+                        if (searchGeneration != generation.get()) {
+                            return;
+                        }
+                        final R result = task.run();
+                        mainThreadHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                // Results are only delivered if no newer search was scheduled while running
+                                if (searchGeneration == generation.get()) {
+                                    resultListener.onResult(result);
+                                }
+                            }
+                        });
+                    }
+                });
+            }
+        };
+
+        if (delayMillis > 0) {
+            mainThreadHandler.postDelayed(pendingSearch, delayMillis);
+        } else {
+            pendingSearch.run();
+        }
+    }
+
+    // Discards every scheduled search and any result still to be delivered (e.g. once the screen closes)
+    public void cancel() {
+        generation.incrementAndGet();
+        removePendingSearch();
+    }
+
+    private void removePendingSearch() {
+        if (pendingSearch != null) {
+            mainThreadHandler.removeCallbacks(pendingSearch);
+            pendingSearch = null;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.nearchitectural.utilities.spatial;
+
+import com.nearchitectural.utilities.DistanceCalculator;
+import com.nearchitectural.utilities.IndexChanges;
+import com.nearchitectural.utilities.models.Location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/* Version: 1.3
+ * Purpose: Immutable grid index over the coordinates of a set of locations. Locations are grouped
+ *          into cells of a fixed size in degrees so that radius queries only examine the locations
+ *          in cells overlapping the query area, rather than every location. Changes to the
+ *          locations can be applied without rebuilding the grid (see IndexChanges)
+ */
+public class SpatialIndex {
+
+    static final double CELL_SIZE = 0.1; // Width and height of each grid cell in degrees (~11km of latitude)
+    private static final int ROWS = (int) Math.ceil(180 / CELL_SIZE); // Number of rows covering all latitudes
+    private static final int COLUMNS = (int) Math.ceil(360 / CELL_SIZE); // Number of columns covering all longitudes
+    private static final double EARTH_RADIUS_METERS = DistanceCalculator.EARTH_RADIUS * 1000.0; // As used for exact distances
+    private static final double EARTH_HALF_CIRCUMFERENCE = 20015087; // Furthest possible distance between points (meters)
+
+    private final List<Location> locations; // Indexed locations (positions in this list are their ordinals)
+    private final double[] latitudes; // Latitude of each location by ordinal
+    private final double[] longitudes; // Longitude of each location by ordinal
+    private final int[] cellKeys; // Sorted keys of all non-empty cells
+    private final int[] cellStarts; // Position in cellOrdinals at which each cell begins (plus end position)
+    private final int[] cellOrdinals; // Ordinals of locations, grouped by cell in key order
+    private final IndexChanges changes; // Locations changed since the grid was built
+
+    // Creates an index over the provided locations
+    public SpatialIndex(List<Location> locations) {
+
+        int size = locations.size();
+        this.locations = Collections.unmodifiableList(new ArrayList<>(locations));
+        latitudes = new double[size];
+        longitudes = new double[size];
+
+        /* Pack each location's cell key and ordinal into a single long so all locations
+         * can be grouped by cell with one primitive sort */
+        long[] keyedOrdinals = new long[size];
+        for (int i = 0; i < size; i++) {
+            Location location = this.locations.get(i);
+            latitudes[i] = location.getLatitude();
+            longitudes[i] = location.getLongitude();
+            long key = cellKey(row(latitudes[i]), column(longitudes[i]));
+            keyedOrdinals[i] = (key << 32) | i;
+        }
+        Arrays.sort(keyedOrdinals);
+
+        // Count distinct cells to size the cell arrays
+        int cellCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || (keyedOrdinals[i] >>> 32) != (keyedOrdinals[i - 1] >>> 32)) {
+                cellCount++;
+            }
+        }
+
+        cellKeys = new int[cellCount];
+        cellStarts = new int[cellCount + 1];
+        cellOrdinals = new int[size];
+        int cell = -1;
+        for (int i = 0; i < size; i++) {
+            int key = (int) (keyedOrdinals[i] >>> 32);
+            if (cell < 0 || cellKeys[cell] != key) {
+                cell++;
+                cellKeys[cell] = key;
+                cellStarts[cell] = i;
+            }
+            cellOrdinals[i] = (int) keyedOrdinals[i];
+        }
+        cellStarts[cellCount] = size;
+        changes = IndexChanges.none();
+    }
+
+    // Creates an index sharing the grid of another index, with further changes applied
+    private SpatialIndex(SpatialIndex index, IndexChanges changes) {
+        locations = index.locations;
+        latitudes = index.latitudes;
+        longitudes = index.longitudes;
+        cellKeys = index.cellKeys;
+        cellStarts = index.cellStarts;
+        cellOrdinals = index.cellOrdinals;
+        this.changes = changes;
+    }
+
+    // Returns an index containing no locations
+    public static SpatialIndex empty() {
+        return new SpatialIndex(new ArrayList<Location>());
+    }
+
+    /* Returns an index with the provided changes applied, which shares this index's grid. The cost
+     * grows with the number of changes since the grid was built rather than the number of locations */
+    public SpatialIndex withChanges(List<Location> updatedLocations, Collection<String> removedLocationIDs) {
+        return new SpatialIndex(this, changes.with(updatedLocations, removedLocationIDs));
+    }
+
+    // Returns the locations changed since the grid was built (e.g. to decide when to rebuild the index)
+    public IndexChanges getChanges() {
+        return changes;
+    }
+
+    /* Returns all locations within the provided distance (in meters) of a point. An infinite
+     * or very large radius returns every location */
+    public List<Location> withinRadius(double latitude, double longitude, double radiusMeters) {
+
+        List<Location> results = new ArrayList<>();
+        if (radiusMeters < 0 || Double.isNaN(radiusMeters)) {
+            return results;
+        }
+        if (radiusMeters >= EARTH_HALF_CIRCUMFERENCE) {
+            for (Location location : locations) {
+                if (!changes.isReplaced(location.getId())) {
+                    results.add(location);
+                }
+            }
+            results.addAll(changes.getChangedLocations());
+            return results;
+        }
+
+        /* Bounding box of the radius in degrees, using the same earth radius as the exact distance check
+         * so no location within the radius falls outside it. No point within the radius can differ in
+         * longitude by more than the angle it covers widened by the latitude (all longitudes if the
+         * radius reaches a pole) */
+        double angularRadius = radiusMeters / EARTH_RADIUS_METERS;
+        double latitudeDelta = Math.toDegrees(angularRadius);
+        double south = Math.max(-90, latitude - latitudeDelta);
+        double north = Math.min(90, latitude + latitudeDelta);
+        double longitudeSine = Math.sin(angularRadius) / Math.cos(Math.toRadians(latitude));
+        double longitudeDelta = angularRadius >= Math.PI / 2 || longitudeSine >= 1
+                ? 180 : Math.toDegrees(Math.asin(longitudeSine));
+
+        int[] columnRanges = columnRanges(longitude - longitudeDelta, longitude + longitudeDelta);
+        for (int row = row(south); row <= row(north); row++) {
+            for (int range = 0; range < columnRanges.length; range += 2) {
+                int start = firstCellAtOrAfter(cellKey(row, columnRanges[range]));
+                int lastKey = cellKey(row, columnRanges[range + 1]);
+                for (int cell = start; cell < cellKeys.length && cellKeys[cell] <= lastKey; cell++) {
+                    // Only locations in overlapping cells have their exact distance calculated
+                    for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+                        int ordinal = cellOrdinals[i];
+                        if (DistanceCalculator.calculateDistance(latitude, latitudes[ordinal],
+                                longitude, longitudes[ordinal]) <= radiusMeters
+                                && !changes.isReplaced(locations.get(ordinal).getId())) {
+                            results.add(locations.get(ordinal));
+                        }
+                    }
+                }
+            }
+        }
+
+        // Locations changed since the grid was built are checked one by one
+        for (Location location : changes.getChangedLocations()) {
+            if (DistanceCalculator.calculateDistance(latitude, location.getLatitude(),
+                    longitude, location.getLongitude()) <= radiusMeters) {
+                results.add(location);
+            }
+        }
+        return results;
+    }
+
+    /* Returns pairs of first and last columns covering a longitude range, split in two
+     * if the range wraps around the 180th meridian */
+    private static int[] columnRanges(double west, double east) {
+        if (east - west >= 360) {
+            return new int[] {0, COLUMNS - 1};
+        }
+        if (west < -180) {
+            return new int[] {column(west + 360), COLUMNS - 1, 0, column(east)};
+        }
+        if (east > 180) {
+            return new int[] {column(west), COLUMNS - 1, 0, column(east - 360)};
+        }
+        return new int[] {column(west), column(east)};
+    }
+
+    // Returns the position of the first non-empty cell with a key at or after the provided key
+    private int firstCellAtOrAfter(int key) {
+        int index = Arrays.binarySearch(cellKeys, key);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    private static int row(double latitude) {
+        return clamp((int) Math.floor((latitude + 90) / CELL_SIZE), ROWS - 1);
+    }
+
+    private static int column(double longitude) {
+        return clamp((int) Math.floor((longitude + 180) / CELL_SIZE), COLUMNS - 1);
+    }
+
+    // Keys are ordered by row then column, so the cells of one row are contiguous
+    private static int cellKey(int row, int column) {
+        return row * COLUMNS + column;
+    }
+
+    private static int clamp(int value, int max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+}
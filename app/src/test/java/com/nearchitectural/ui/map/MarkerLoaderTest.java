@@ -0,0 +1,173 @@
+package com.nearchitectural.ui.map;
+
+import android.view.Choreographer;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.nearchitectural.utilities.models.Location;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for adding markers to the map over successive frames.
+ */
+public class MarkerLoaderTest {
+
+    private static final LatLng CENTRE = new LatLng(55, -1.6);
+
+    @Test
+    public void load_addsNearestMarkersFirst() {
+        final List<String> addedKeys = new ArrayList<>();
+        FrameQueue frames = new FrameQueue();
+        MarkerLoader loader = new MarkerLoader(new MarkerLoader.MarkerAdder() {
+            @Override
+            public void addMarker(Cluster cluster, MarkerOptions options) {
+                addedKeys.add(cluster.getKey());
+            }
+        }, frames);
+        Progress progress = new Progress();
+        loader.setOnProgressListener(progress);
+
+        List<Cluster> clusters = new ArrayList<>();
+        clusters.add(createCluster("far", 0.3));
+        clusters.add(createCluster("near", 0.1));
+        clusters.add(createCluster("middle", 0.2));
+        loader.load(clusters, optionsFor(clusters), CENTRE);
+        frames.runAll();
+
+        assertEquals(3, addedKeys.size());
+        assertEquals("near", addedKeys.get(0));
+        assertEquals("far", addedKeys.get(2));
+        assertEquals(Collections.singletonList(3), progress.completedTotals);
+    }
+
+    @Test
+    public void load_replacingTheQueueMidLoadRestartsTheCounts() {
+        FrameQueue frames = new FrameQueue();
+        // Each marker takes longer than a frame's budget, so a single marker is added each frame
+        MarkerLoader loader = new MarkerLoader(new MarkerLoader.MarkerAdder() {
+            @Override
+            public void addMarker(Cluster cluster, MarkerOptions options) {
+                long start = System.nanoTime();
+                while (System.nanoTime() - start < 9000000) {
+                    Thread.yield();
+                }
+            }
+        }, frames);
+        Progress progress = new Progress();
+        loader.setOnProgressListener(progress);
+
+        List<Cluster> firstClusters = createClusters("first", 5);
+        loader.load(firstClusters, optionsFor(firstClusters), CENTRE);
+        frames.runNext();
+        assertEquals(1, progress.lastAdded);
+        assertEquals(5, progress.lastTotal);
+
+        // The camera settles elsewhere before the first markers have all been added
+        List<Cluster> secondClusters = createClusters("second", 3);
+        loader.load(secondClusters, optionsFor(secondClusters), CENTRE);
+        frames.runNext();
+        assertEquals(1, progress.lastAdded);
+        assertEquals(3, progress.lastTotal);
+        frames.runAll();
+
+        assertEquals(3, progress.lastAdded);
+        assertEquals(3, progress.lastTotal);
+        assertEquals(Collections.singletonList(3), progress.completedTotals);
+    }
+
+    @Test
+    public void cancel_stopsAddingMarkers() {
+        final List<String> addedKeys = new ArrayList<>();
+        FrameQueue frames = new FrameQueue();
+        MarkerLoader loader = new MarkerLoader(new MarkerLoader.MarkerAdder() {
+            @Override
+            public void addMarker(Cluster cluster, MarkerOptions options) {
+                addedKeys.add(cluster.getKey());
+            }
+        }, frames);
+
+        List<Cluster> clusters = createClusters("cluster", 10);
+        loader.load(clusters, optionsFor(clusters), CENTRE);
+        loader.cancel();
+        frames.runAll();
+
+        assertTrue(addedKeys.isEmpty());
+    }
+
+    private static List<Cluster> createClusters(String prefix, int count) {
+        List<Cluster> clusters = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            clusters.add(createCluster(prefix + i, i * 0.01));
+        }
+        return clusters;
+    }
+
+    // Creates a cluster of one location the provided number of degrees north of the centre
+    private static Cluster createCluster(String key, double offset) {
+        LatLng position = new LatLng(CENTRE.latitude + offset, CENTRE.longitude);
+        Location location = new Location(key, "Castle", 1800, 0, "Castle", "Summary",
+                position.latitude, position.longitude, 0, "", "report" + key);
+        return new Cluster(key, position, Collections.singletonList(location));
+    }
+
+    private static List<MarkerOptions> optionsFor(List<Cluster> clusters) {
+        List<MarkerOptions> options = new ArrayList<>(clusters.size());
+        for (Cluster cluster : clusters) {
+            options.add(new MarkerOptions());
+        }
+        return options;
+    }
+
+    // Runs frame callbacks when told to, in place of the Choreographer
+    private static class FrameQueue implements MarkerLoader.FrameScheduler {
+
+        private final List<Choreographer.FrameCallback> callbacks = new ArrayList<>();
+
+        @Override
+        public void postFrameCallback(Choreographer.FrameCallback callback) {
+            callbacks.add(callback);
+        }
+
+        @Override
+        public void removeFrameCallback(Choreographer.FrameCallback callback) {
+            callbacks.remove(callback);
+        }
+
+        void runNext() {
+            callbacks.remove(0).doFrame(System.nanoTime());
+        }
+
+        void runAll() {
+            while (!callbacks.isEmpty()) {
+                runNext();
+            }
+        }
+    }
+
+    // Records the progress reported by a loader
+    private static class Progress implements MarkerLoader.OnProgressListener {
+
+        private int lastAdded;
+        private int lastTotal;
+        private final List<Integer> completedTotals = new ArrayList<>();
+
+        @Override
+        public void onProgress(int addedMarkers, int totalMarkers) {
+            assertTrue(addedMarkers <= totalMarkers);
+            lastAdded = addedMarkers;
+            lastTotal = totalMarkers;
+        }
+
+        @Override
+        public void onLoadComplete(int totalMarkers, long elapsedMillis) {
+            completedTotals.add(totalMarkers);
+        }
+    }
+}
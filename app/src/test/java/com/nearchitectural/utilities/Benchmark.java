@@ -0,0 +1,35 @@
+package com.nearchitectural.utilities;
+
+/**
+ * Times the microbenchmarks of the local unit tests. JVM timings vary between machines and say
+ * little about performance on a device, so benchmarks only print their timings and are marked
+ * with {@code @Ignore(Benchmark.IGNORED)} so they are only run by hand.
+ */
+public final class Benchmark {
+
+    public static final String IGNORED = "Benchmark: prints timings only, run by hand";
+
+    // Code being timed
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    private Benchmark() {
+    }
+
+    // Returns the shortest time (in nanoseconds) the task took over the provided number of rounds
+    public static long bestOf(int rounds, Task task) throws Exception {
+        long bestNanos = Long.MAX_VALUE;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            task.run();
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+        return bestNanos;
+    }
+
+    // Prints a timing in milliseconds
+    public static void report(String description, long nanos) {
+        System.out.println(description + ": " + nanos / 1e6 + "ms");
+    }
+}
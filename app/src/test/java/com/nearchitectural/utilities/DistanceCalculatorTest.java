@@ -0,0 +1,121 @@
+package com.nearchitectural.utilities;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests and microbenchmark for the batched distance calculation.
+ */
+public class DistanceCalculatorTest {
+
+    private static final int DATASET_SIZE = 50000;
+    private static final int BENCHMARK_ROUNDS = 15;
+    private static final double ORIGIN_LATITUDE = 54.9695;
+    private static final double ORIGIN_LONGITUDE = -1.6074;
+
+    @Test
+    public void calculateDistances_matchesSingleCalculation() {
+        double[] latitudes = new double[DATASET_SIZE];
+        double[] longitudes = new double[DATASET_SIZE];
+        createDataset(latitudes, longitudes);
+        double[] distances = new double[DATASET_SIZE];
+
+        int withinDistance = DistanceCalculator.calculateDistances(ORIGIN_LATITUDE, ORIGIN_LONGITUDE,
+                latitudes, longitudes, Double.POSITIVE_INFINITY, distances);
+
+        assertEquals(DATASET_SIZE, withinDistance);
+        for (int i = 0; i < DATASET_SIZE; i++) {
+            double expected = DistanceCalculator.calculateDistance(ORIGIN_LATITUDE, latitudes[i],
+                    ORIGIN_LONGITUDE, longitudes[i]);
+            assertEquals(expected, distances[i], 1e-6 * Math.max(1, expected));
+        }
+    }
+
+    @Test
+    public void calculateDistances_prefilterOnlyRejectsDistantPoints() {
+        double[] latitudes = new double[DATASET_SIZE];
+        double[] longitudes = new double[DATASET_SIZE];
+        createDataset(latitudes, longitudes);
+        double[] distances = new double[DATASET_SIZE];
+        double maxDistance = 20000;
+
+        int withinDistance = DistanceCalculator.calculateDistances(ORIGIN_LATITUDE, ORIGIN_LONGITUDE,
+                latitudes, longitudes, maxDistance, distances);
+
+        int expectedWithin = 0;
+        for (int i = 0; i < DATASET_SIZE; i++) {
+            double expected = DistanceCalculator.calculateDistance(ORIGIN_LATITUDE, latitudes[i],
+                    ORIGIN_LONGITUDE, longitudes[i]);
+            if (expected <= maxDistance) {
+                expectedWithin++;
+                assertEquals(expected, distances[i], 1e-6 * Math.max(1, expected));
+            } else {
+                assertTrue(distances[i] > maxDistance);
+            }
+        }
+        assertEquals(expectedWithin, withinDistance);
+        assertTrue(withinDistance > 0);
+    }
+
+    @Test
+    public void calculateDistances_handlesTheAntimeridian() {
+        double[] distances = new double[1];
+        DistanceCalculator.calculateDistances(0, 179.9, new double[] {0}, new double[] {-179.9}, 50000, distances);
+        assertEquals(DistanceCalculator.calculateDistance(0, 0, 179.9, -179.9), distances[0], 1e-3);
+    }
+
+    @Ignore(Benchmark.IGNORED)
+    @Test
+    public void benchmark_batchAgainstSingleCalculation() {
+        double[] latitudes = new double[DATASET_SIZE];
+        double[] longitudes = new double[DATASET_SIZE];
+        createDataset(latitudes, longitudes);
+        double[] distances = new double[DATASET_SIZE];
+
+        // Alternate which calculation runs first so neither benefits from the other's warm up
+        long singleNanos = Long.MAX_VALUE;
+        long batchNanos = Long.MAX_VALUE;
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            if (round % 2 == 0) {
+                singleNanos = Math.min(singleNanos, timeSingle(latitudes, longitudes, distances));
+                batchNanos = Math.min(batchNanos, timeBatch(latitudes, longitudes, distances));
+            } else {
+                batchNanos = Math.min(batchNanos, timeBatch(latitudes, longitudes, distances));
+                singleNanos = Math.min(singleNanos, timeSingle(latitudes, longitudes, distances));
+            }
+        }
+
+        Benchmark.report("Single calculation of " + DATASET_SIZE + " distances", singleNanos);
+        Benchmark.report("Batch calculation of " + DATASET_SIZE + " distances", batchNanos);
+    }
+
+    // Recomputes every distance the way callers did before the batch calculation was added
+    private static long timeSingle(double[] latitudes, double[] longitudes, double[] distances) {
+        long start = System.nanoTime();
+        for (int i = 0; i < latitudes.length; i++) {
+            distances[i] = DistanceCalculator.calculateDistance(ORIGIN_LATITUDE, latitudes[i],
+                    ORIGIN_LONGITUDE, longitudes[i]);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long timeBatch(double[] latitudes, double[] longitudes, double[] distances) {
+        long start = System.nanoTime();
+        DistanceCalculator.calculateDistances(ORIGIN_LATITUDE, ORIGIN_LONGITUDE,
+                latitudes, longitudes, Double.POSITIVE_INFINITY, distances);
+        return System.nanoTime() - start;
+    }
+
+    // Creates a dataset spread over Great Britain
+    private static void createDataset(double[] latitudes, double[] longitudes) {
+        Random random = new Random(42);
+        for (int i = 0; i < latitudes.length; i++) {
+            latitudes[i] = 50 + random.nextDouble() * 8.5;
+            longitudes[i] = -6 + random.nextDouble() * 7.5;
+        }
+    }
+}
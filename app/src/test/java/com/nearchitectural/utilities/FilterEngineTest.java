@@ -0,0 +1,439 @@
+package com.nearchitectural.utilities;
+
+import com.nearchitectural.utilities.models.Location;
+import com.nearchitectural.utilities.search.ReportIndex;
+import com.nearchitectural.utilities.search.SearchIndex;
+import com.nearchitectural.utilities.spatial.SpatialIndex;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests and microbenchmark for the single-pass filter engine.
+ */
+public class FilterEngineTest {
+
+    private static final int DATASET_SIZE = 50000;
+    private static final int BENCHMARK_ROUNDS = 3;
+    private static final String[] NAMES = {"Castle", "Bridge", "Abbey", "Church", "Tower", "Hall"};
+    private static final String[] TYPES = {"Castle", "Bridge", "Church", "Museum", "Monument"};
+    private static final String[] QUERIES = {"", "c", "cas", "castle", "BRIDGE 1", "mus", "xyz"};
+    private static final double[] DISTANCES = {0, 1000, 25000, Double.MAX_VALUE};
+
+    @Test
+    public void filter_matchesEveryCriterion() {
+        List<Item> items = createItems(3000);
+        SearchIndex index = new SearchIndex(locationsOf(items));
+        FilterEngine<Item> engine = createEngine();
+        long[] tagCombinations = {0, TagID.FREE_ENTRY.bit(), TagID.FREE_ENTRY.bit() | TagID.CHILD_FRIENDLY.bit()};
+
+        for (String query : QUERIES) {
+            for (double distance : DISTANCES) {
+                for (long tagBits : tagCombinations) {
+                    FilterCriteria criteria = new FilterCriteria(query, distance, tagBits);
+                    List<Item> expected = bruteForce(items, criteria);
+                    assertEquals(expected, createEngine().filter(items, criteria, index));
+                    assertEquals(expected, createEngine().filter(items, criteria, null));
+                    assertEquals(expected, engine.filter(items, criteria, index));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void criteria_normaliseQueryAndDistance() {
+        // Text differing only in case and spacing, and distances within one step, are the same criteria
+        FilterCriteria criteria = new FilterCriteria("castle keep", 25000, 1000, 0);
+        assertEquals(criteria, new FilterCriteria("  Castle \t keep ", 24800.5, 1000, 0));
+        assertEquals(criteria.hashCode(), new FilterCriteria("  Castle \t keep ", 24800.5, 1000, 0).hashCode());
+        assertEquals("castle keep", new FilterCriteria(" Castle  Keep ", 0, 0).getQuery());
+        assertNotEquals(criteria, new FilterCriteria("castle keep", 26000, 1000, 0));
+        // Every step of the slider in miles is kept exactly, and a limit never rounds to no limit
+        assertEquals(3 * 1609, new FilterCriteria("", 3 * 1609.0, 1609, 0).getMaxDistance(), 0);
+        assertTrue(new FilterCriteria("", 0.2, 0).hasMaxDistance());
+        assertFalse(new FilterCriteria("", Double.MAX_VALUE, 1000, 0).hasMaxDistance());
+    }
+
+    @Test
+    public void filter_matchesLegacyFilter() {
+        List<Item> items = createItems(3000);
+        SearchIndex index = new SearchIndex(locationsOf(items));
+        FilterCriteria criteria = new FilterCriteria("", 25000, TagID.WHEELCHAIR_ACCESSIBLE.bit());
+        assertEquals(legacyFilter(items, "", 25000, wheelchairAccessibleOnly()),
+                createEngine().filter(items, criteria, index));
+    }
+
+    @Test
+    public void filter_findsLocationsInRangeFromSpatialIndex() {
+        // Locations spread around the user, each with its exact distance from the user
+        Random random = new Random(11);
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            double latitude = 54.5 + random.nextDouble();
+            double longitude = -2.1 + random.nextDouble();
+            Location location = new Location("location" + i, NAMES[random.nextInt(NAMES.length)] + " " + i,
+                    1800, 0, TYPES[random.nextInt(TYPES.length)], "Summary", latitude, longitude,
+                    random.nextBoolean() ? TagID.FREE_ENTRY.bit() : 0, "", "report" + i);
+            items.add(new Item(location, DistanceCalculator.calculateDistance(55, latitude, -1.6, longitude)));
+        }
+        SearchIndex index = new SearchIndex(locationsOf(items));
+        SpatialIndex spatialIndex = new SpatialIndex(locationsOf(items));
+        FilterEngine<Item> engine = createEngine();
+
+        for (String query : QUERIES) {
+            for (double distance : DISTANCES) {
+                FilterCriteria criteria = new FilterCriteria(query, distance, TagID.FREE_ENTRY.bit());
+                assertEquals(bruteForce(items, criteria),
+                        engine.filterWithTagCounts(items, criteria, index, null, spatialIndex, 55, -1.6).getItems());
+            }
+        }
+
+        // Results for one position are not reused once the user has moved
+        FilterCriteria criteria = new FilterCriteria("", 5000, 0);
+        List<Item> nearUser = engine.filterWithTagCounts(items, criteria, index, null, spatialIndex, 55, -1.6)
+                .getItems();
+        List<Item> elsewhere = engine.filterWithTagCounts(items, criteria, index, null, spatialIndex, 50, 0)
+                .getItems();
+        assertFalse(nearUser.isEmpty());
+        assertTrue(elsewhere.isEmpty());
+    }
+
+    @Test
+    public void filter_reflectsTagsChangedInPlace() {
+        List<Item> items = createItems(100);
+        SearchIndex index = new SearchIndex(locationsOf(items));
+        FilterEngine<Item> engine = createEngine();
+        FilterCriteria likedOnly = new FilterCriteria("", Double.MAX_VALUE, TagID.LIKED_BY_YOU.bit());
+        List<Item> likedBefore = engine.filter(items, likedOnly, index);
+
+        // Liking a location changes its tags without changing the items or indexes
+        Location location = items.get(0).location;
+        location.setTagValue(TagID.LIKED_BY_YOU, !location.getTagValue(TagID.LIKED_BY_YOU));
+
+        List<Item> likedAfter = engine.filter(items, likedOnly, index);
+        assertEquals(bruteForce(items, likedOnly), likedAfter);
+        assertNotEquals(likedBefore.contains(items.get(0)), likedAfter.contains(items.get(0)));
+    }
+
+    @Ignore(Benchmark.IGNORED)
+    @Test
+    public void benchmark_filterAgainstLegacyFilter() throws Exception {
+        final List<Item> items = createItems(DATASET_SIZE);
+        final SearchIndex index = new SearchIndex(locationsOf(items));
+        final Map<TagID, Boolean> activeTags = wheelchairAccessibleOnly();
+        final FilterCriteria criteria = new FilterCriteria("", 25000, TagID.WHEELCHAIR_ACCESSIBLE.bit());
+
+        long legacyNanos = Benchmark.bestOf(BENCHMARK_ROUNDS, new Benchmark.Task() {
+            @Override
+            public void run() {
+                legacyFilter(items, "", 25000, activeTags);
+            }
+        });
+        long engineNanos = Benchmark.bestOf(BENCHMARK_ROUNDS, new Benchmark.Task() {
+            @Override
+            public void run() {
+                createEngine().filter(items, criteria, index);
+            }
+        });
+
+        Benchmark.report("Legacy filter at " + DATASET_SIZE + " locations", legacyNanos);
+        Benchmark.report("Filter engine at " + DATASET_SIZE + " locations", engineNanos);
+    }
+
+    @Test
+    public void filter_refinesLastResults() {
+        List<Item> items = createItems(3000);
+        SearchIndex index = new SearchIndex(locationsOf(items));
+        FilterEngine<Item> engine = createEngine();
+        Random random = new Random(7);
+
+        // Criteria are narrowed and widened at random, as when a query is typed and deleted
+        String query = "";
+        double distance = 0;
+        long tagBits = 0;
+        for (int step = 0; step < 500; step++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    query = random.nextBoolean() || query.isEmpty()
+                            ? query + "castle 12".charAt(query.length() % 9)
+                            : query.substring(0, query.length() - 1);
+                    break;
+                case 1:
+                    distance = random.nextInt(3) == 0 ? 0 : random.nextDouble() * 50000;
+                    break;
+                case 2:
+                    tagBits ^= TagID.values()[random.nextInt(TagID.values().length)].bit();
+                    break;
+                default:
+                    // Items are replaced (e.g. after the dataset changes) without any criteria changing
+                    items = new ArrayList<>(items);
+            }
+            FilterCriteria criteria = new FilterCriteria(query, distance, tagBits);
+            assertEquals(bruteForce(items, criteria), engine.filter(items, criteria, index));
+        }
+    }
+
+    @Test
+    public void filter_matchesReportText() {
+        List<Item> items = createItems(3000);
+        SearchIndex index = new SearchIndex(locationsOf(items));
+        ReportIndex reportIndex = new ReportIndex();
+        for (int i = 0; i < items.size(); i++) {
+            reportIndex.addReport("report" + i, Collections.singletonList(i % 10 == 0
+                    ? "The Norman keep of the castle." : "A later country house."));
+        }
+        FilterEngine<Item> engine = createEngine();
+
+        // Results narrowed from the last results while typing must match those of a full scan
+        String typedQuery = "norman keep";
+        for (int length = 0; length <= typedQuery.length(); length++) {
+            FilterCriteria criteria = new FilterCriteria(typedQuery.substring(0, length), 0, 0);
+            assertEquals(createEngine().filter(items, criteria, index, reportIndex),
+                    engine.filter(items, criteria, index, reportIndex));
+        }
+        assertEquals(300, engine.filter(items, new FilterCriteria(typedQuery, 0, 0), index, reportIndex).size());
+
+        // The report matches are kept to rank the results by relevance, but only while searching
+        assertEquals(300, engine.filterWithTagCounts(items, new FilterCriteria(typedQuery, 0, 0), index,
+                reportIndex).getReportMatches().size());
+        assertNull(engine.filterWithTagCounts(items, new FilterCriteria("", 0, 0), index,
+                reportIndex).getReportMatches());
+
+        // A change to the reports prevents results being narrowed from outdated matches
+        reportIndex.addReport("report1", Collections.singletonList("A Norman keep."));
+        assertEquals(301, engine.filter(items, new FilterCriteria(typedQuery, 0, 0), index, reportIndex).size());
+    }
+
+    @Ignore(Benchmark.IGNORED)
+    @Test
+    public void benchmark_narrowingQueries() throws Exception {
+        final List<Item> items = createItems(DATASET_SIZE);
+        final String typedQuery = "castle 1234";
+
+        // Each prefix of the query is filtered as it is typed, remembering or forgetting the last results
+        long incrementalNanos = Benchmark.bestOf(BENCHMARK_ROUNDS, new Benchmark.Task() {
+            @Override
+            public void run() {
+                FilterEngine<Item> engine = createEngine();
+                for (int length = 0; length <= typedQuery.length(); length++) {
+                    engine.filter(items, new FilterCriteria(typedQuery.substring(0, length), 0, 0), null);
+                }
+            }
+        });
+        long fullScanNanos = Benchmark.bestOf(BENCHMARK_ROUNDS, new Benchmark.Task() {
+            @Override
+            public void run() {
+                for (int length = 0; length <= typedQuery.length(); length++) {
+                    createEngine().filter(items, new FilterCriteria(typedQuery.substring(0, length), 0, 0), null);
+                }
+            }
+        });
+
+        Benchmark.report("Typing \"" + typedQuery + "\" with full scans at " + DATASET_SIZE + " locations",
+                fullScanNanos);
+        Benchmark.report("Typing \"" + typedQuery + "\" with refined filters at " + DATASET_SIZE + " locations",
+                incrementalNanos);
+    }
+
+    @Test
+    public void filter_cachesRecentResults() {
+        List<Item> items = createItems(3000);
+        SearchIndex index = new SearchIndex(locationsOf(items));
+        FilterEngine<Item> engine = createEngine();
+        FilterCriteria withTag = new FilterCriteria("castle", 25000, TagID.FREE_ENTRY.bit());
+        FilterCriteria withoutTag = new FilterCriteria("castle", 25000, 0);
+
+        // Toggling a tag back returns the cached results of the earlier criteria
+        List<Item> firstResults = engine.filter(items, withoutTag, index);
+        engine.filter(items, withTag, index);
+        List<Item> toggledResults = engine.filter(items, new FilterCriteria("Castle", 25000, 0), index);
+        assertSame(firstResults, toggledResults);
+        assertEquals(1, engine.getResultCache().getHitCount());
+        assertEquals(2, engine.getResultCache().getMissCount());
+
+        // New items (e.g. distances updated after the user moves) invalidate every cached result
+        List<Item> movedItems = new ArrayList<>(items);
+        Collections.reverse(movedItems);
+        List<Item> movedResults = engine.filter(movedItems, withoutTag, index);
+        assertNotSame(firstResults, movedResults);
+        assertEquals(bruteForce(movedItems, withoutTag), movedResults);
+        assertEquals(1, engine.getResultCache().size());
+        assertEquals(3, engine.getResultCache().getMissCount());
+
+        // Only the most recently used results are kept
+        for (int distance = 1; distance <= 20; distance++) {
+            engine.filter(movedItems, new FilterCriteria("", distance * 1000, 0), index);
+        }
+        assertEquals(16, engine.getResultCache().size());
+    }
+
+    @Test
+    public void filter_countsTagsOfResults() {
+        List<Item> items = createItems(3000);
+        SearchIndex index = new SearchIndex(locationsOf(items));
+        FilterEngine<Item> engine = createEngine();
+
+        // Counts must be the same whether results are filtered in full, narrowed or cached
+        String[] queries = {"", "c", "ca", "castle", "ca", "", "bridge"};
+        for (String query : queries) {
+            FilterCriteria criteria = new FilterCriteria(query, 25000, TagID.CHILD_FRIENDLY.bit());
+            FilterResults<Item> results = engine.filterWithTagCounts(items, criteria, index, null);
+            assertEquals(bruteForce(items, criteria), results.getItems());
+            for (TagID tag : TagID.values()) {
+                int expectedCount = 0;
+                for (Item item : results.getItems()) {
+                    if (item.location.getTagValue(tag)) {
+                        expectedCount++;
+                    }
+                }
+                assertEquals(expectedCount, results.getTagCount(tag));
+                assertEquals(expectedCount, (int) results.getTagCounts().get(tag));
+            }
+            // Every result has the required tag
+            assertEquals(results.getItems().size(), results.getTagCount(TagID.CHILD_FRIENDLY));
+        }
+    }
+
+    private static FilterEngine<Item> createEngine() {
+        return new FilterEngine<>(new FilterEngine.ItemAccessor<Item>() {
+            @Override
+            public Location getLocation(Item item) {
+                return item.location;
+            }
+
+            @Override
+            public double getDistance(Item item) {
+                return item.distance;
+            }
+        });
+    }
+
+    // Returns the active tags of the legacy filter with only wheelchair access required
+    private static Map<TagID, Boolean> wheelchairAccessibleOnly() {
+        Map<TagID, Boolean> activeTags = new EnumMap<>(TagID.class);
+        for (TagID tag : TagID.values()) {
+            activeTags.put(tag, tag == TagID.WHEELCHAIR_ACCESSIBLE);
+        }
+        return activeTags;
+    }
+
+    // Checks every item against every criterion directly
+    private static List<Item> bruteForce(List<Item> items, FilterCriteria criteria) {
+        List<Item> results = new ArrayList<>();
+        for (Item item : items) {
+            boolean tagsMatch = (item.location.getTagBits() & criteria.getRequiredTagBits())
+                    == criteria.getRequiredTagBits();
+            boolean inRange = !criteria.hasMaxDistance() || item.distance <= criteria.getMaxDistance();
+            boolean textMatch = item.location.getName().toLowerCase().contains(criteria.getQuery())
+                    || item.location.getType().toLowerCase().contains(criteria.getQuery());
+            if (tagsMatch && inRange && textMatch) {
+                results.add(item);
+            }
+        }
+        return results;
+    }
+
+    /* The filter previously used by SearchableActivity (with distances in meters), kept as the
+     * benchmark baseline. Locations without the active tags are collected and removed afterwards,
+     * so removeAll compares every remaining location with every rejected one */
+    private static List<Item> legacyFilter(List<Item> items, String query, double distanceSelected,
+                                           Map<TagID, Boolean> activeTags) {
+
+        final List<Item> filteredModelList = new ArrayList<>();
+        final String lowerCaseQuery = query.toLowerCase();
+
+        for (Item item : items) {
+
+            final String titleText = item.location.getName().toLowerCase();
+            final String placeTypeText = item.location.getType().toLowerCase();
+            final double distance = item.distance;
+
+            boolean textMatchFound = titleText.contains(lowerCaseQuery)
+                    || placeTypeText.contains(lowerCaseQuery);
+
+            if (distanceSelected == 0) {
+                if (textMatchFound) {
+                    filteredModelList.add(item);
+                }
+            } else {
+                if (textMatchFound && (distanceSelected > 0 && distanceSelected >= distance)) {
+                    filteredModelList.add(item);
+                }
+            }
+        }
+
+        List<Item> nonMatchModels = new ArrayList<>();
+        for (Item item : filteredModelList) {
+            for (TagID tag : TagID.values()) {
+                if (activeTags.get(tag) && !item.location.getTagValue(tag)) {
+                    nonMatchModels.add(item);
+                }
+            }
+        }
+        filteredModelList.removeAll(nonMatchModels);
+
+        return filteredModelList;
+    }
+
+    // Creates items at random distances whose locations have random names, types and tags
+    private static List<Item> createItems(int count) {
+        Random random = new Random(42);
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // Most locations have each tag, as with the real dataset
+            long tagBits = 0;
+            for (TagID tag : TagID.values()) {
+                if (random.nextInt(10) != 0) {
+                    tagBits |= tag.bit();
+                }
+            }
+            Location location = new Location("location" + i, NAMES[random.nextInt(NAMES.length)] + " " + i,
+                    1800, 0, TYPES[random.nextInt(TYPES.length)], "Summary", 55, -1.6, tagBits,
+                    "https://example.com/" + i, "report" + i);
+            items.add(new Item(location, random.nextDouble() * 50000));
+        }
+        return items;
+    }
+
+    private static List<Location> locationsOf(List<Item> items) {
+        List<Location> locations = new ArrayList<>(items.size());
+        for (Item item : items) {
+            locations.add(item.location);
+        }
+        return locations;
+    }
+
+    // Location paired with its distance from the user, compared in the same way as LocationModel
+    private static class Item {
+
+        private final Location location;
+        private final double distance;
+
+        Item(Location location, double distance) {
+            this.location = location;
+            this.distance = distance;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Item item = (Item) o;
+            return location.equals(item.location) && distance == item.distance;
+        }
+
+        @Override
+        public int hashCode() {
+            return location.hashCode();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.nearchitectural.utilities;
+
+import com.nearchitectural.utilities.models.Location;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the single-pass location decoder.
+ */
+public class LocationDecoderTest {
+
+    @Before
+    public void setUp() {
+        Settings.getInstance().setLikedLocations(new HashSet<String>());
+    }
+
+    @Test
+    public void decode_readsAllFields() {
+        Map<String, Object> document = createDocument(1);
+        Settings.getInstance().addLikedLocation("location1");
+
+        Location location = new LocationDecoder().decode("location1", document);
+
+        assertEquals("Castle 1", location.getName());
+        assertEquals("Castle", location.getType());
+        assertEquals("Summary 1", location.getSummary());
+        assertEquals("report1", location.getReportID());
+        assertEquals(1101, location.getYearOpened());
+        assertEquals(1, location.getLikes());
+        assertEquals(55.001, location.getLatitude(), 0);
+        assertEquals(-1.601, location.getLongitude(), 0);
+        assertTrue(location.getTagValue(TagID.FREE_ENTRY));
+        assertFalse(location.getTagValue(TagID.CHEAP_ENTRY));
+        assertTrue(location.getTagValue(TagID.LIKED_BY_YOU));
+    }
+
+    @Test
+    public void decode_coercesMismatchedNumberTypes() {
+        Map<String, Object> document = new HashMap<>();
+        document.put("name", "Keep");
+        document.put("latitude", "54.97");
+        document.put("longitude", -2L);
+        document.put("yearOpened", 1080.0);
+        document.put("likes", "not a number");
+
+        LocationDecoder decoder = new LocationDecoder();
+        Location location = decoder.decode("keep", document);
+
+        assertEquals(54.97, location.getLatitude(), 0);
+        assertEquals(-2, location.getLongitude(), 0);
+        assertEquals(1080, location.getYearOpened());
+        assertEquals(0, location.getLikes());
+        assertEquals("Unknown", location.getType());
+        assertEquals(1, decoder.getDecodedDocuments());
+        assertEquals(1, decoder.getFailedFields());
+        assertEquals(1, decoder.getCoercedFields());
+    }
+
+    @Test
+    public void isNumber_rejectsMalformedNumbers() {
+        assertTrue(LocationDecoder.isNumber(" -1.5e3 "));
+        assertTrue(LocationDecoder.isNumber(".5"));
+        assertFalse(LocationDecoder.isNumber(""));
+        assertFalse(LocationDecoder.isNumber("-"));
+        assertFalse(LocationDecoder.isNumber("1e"));
+        assertFalse(LocationDecoder.isNumber("12a"));
+    }
+
+    private static Map<String, Object> createDocument(int i) {
+        Map<String, Object> document = new HashMap<>();
+        document.put("name", "Castle " + i);
+        document.put("placeType", "Castle");
+        document.put("summary", "Summary " + i);
+        document.put("thumbnail", "https://example.com/" + i + ".jpg");
+        document.put("reportID", "report" + i);
+        document.put("yearOpened", 1100L + i);
+        document.put("likes", (long) (i % 20));
+        document.put("latitude", 55 + i / 1000.0);
+        document.put("longitude", -1.6 - i / 1000.0);
+        document.put("freeEntry", i % 2 == 1);
+        document.put("cheapEntry", false);
+        document.put("childFriendly", i % 3 == 0);
+        return document;
+    }
+}
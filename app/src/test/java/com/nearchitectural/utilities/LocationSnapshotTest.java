@@ -0,0 +1,169 @@
+package com.nearchitectural.utilities;
+
+import com.nearchitectural.utilities.models.Location;
+
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the on-device location snapshot.
+ */
+public class LocationSnapshotTest {
+
+    private static final int SNAPSHOT_SIZE = 50000;
+    private static final int BENCHMARK_ROUNDS = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void snapshot_roundTripsAllFields() throws Exception {
+        LocationSnapshot snapshot = new LocationSnapshot(new File(folder.getRoot(), "locations.snapshot"));
+        List<Location> written = createLocations(10);
+        snapshot.write(written);
+
+        Set<String> liked = new HashSet<>(Collections.singletonList("location3"));
+        List<Location> read = snapshot.read(liked);
+
+        assertEquals(written.size(), read.size());
+        for (int i = 0; i < written.size(); i++) {
+            Location expected = written.get(i);
+            Location actual = read.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getType(), actual.getType());
+            assertEquals(expected.getSummary(), actual.getSummary());
+            assertEquals(expected.getThumbnailURL(), actual.getThumbnailURL());
+            assertEquals(expected.getReportID(), actual.getReportID());
+            assertEquals(expected.getYearOpened(), actual.getYearOpened());
+            assertEquals(expected.getLikes(), actual.getLikes());
+            assertEquals(expected.getLatitude(), actual.getLatitude(), 0);
+            assertEquals(expected.getLongitude(), actual.getLongitude(), 0);
+            assertEquals(expected.getTagValue(TagID.FREE_ENTRY), actual.getTagValue(TagID.FREE_ENTRY));
+            assertEquals(expected.getTagValue(TagID.CHILD_FRIENDLY), actual.getTagValue(TagID.CHILD_FRIENDLY));
+            assertEquals(actual.getId().equals("location3"), actual.getTagValue(TagID.LIKED_BY_YOU));
+        }
+    }
+
+    @Test
+    public void snapshot_missingFileReturnsNull() throws Exception {
+        LocationSnapshot snapshot = new LocationSnapshot(new File(folder.getRoot(), "missing.snapshot"));
+        assertNull(snapshot.read(null));
+    }
+
+    @Test
+    public void snapshot_corruptStringLengthThrowsIOException() throws Exception {
+        File file = new File(folder.getRoot(), "locations.snapshot");
+        LocationSnapshot snapshot = new LocationSnapshot(file);
+        snapshot.write(createLocations(3));
+
+        // Overwrite the length of the first location's ID (after the magic number, version and count)
+        RandomAccessFile corrupt = new RandomAccessFile(file, "rw");
+        try {
+            corrupt.seek(12);
+            corrupt.writeInt(Integer.MAX_VALUE);
+        } finally {
+            corrupt.close();
+        }
+
+        try {
+            snapshot.read(null);
+            fail("Expected a corrupt snapshot to be rejected");
+        } catch (IOException expected) {
+            // The repository discards the snapshot when this is thrown
+        }
+    }
+
+    @Test
+    public void snapshot_corruptLocationCountThrowsIOException() throws Exception {
+        File file = new File(folder.getRoot(), "locations.snapshot");
+        LocationSnapshot snapshot = new LocationSnapshot(file);
+        snapshot.write(createLocations(3));
+
+        RandomAccessFile corrupt = new RandomAccessFile(file, "rw");
+        try {
+            corrupt.seek(8);
+            corrupt.writeInt(-1);
+        } finally {
+            corrupt.close();
+        }
+
+        try {
+            snapshot.read(null);
+            fail("Expected a corrupt snapshot to be rejected");
+        } catch (IOException expected) {
+            // The repository discards the snapshot when this is thrown
+        }
+    }
+
+    @Test
+    public void snapshot_failedWriteRemovesTemporaryFile() throws Exception {
+        // A non-empty directory in place of the snapshot cannot be replaced, so the rename fails
+        File file = new File(folder.getRoot(), "locations.snapshot");
+        assertTrue(new File(file, "child").mkdirs());
+        LocationSnapshot snapshot = new LocationSnapshot(file);
+
+        try {
+            snapshot.write(createLocations(3));
+            fail("Expected the snapshot write to fail");
+        } catch (IOException expected) {
+            assertFalse(new File(file.getPath() + ".tmp").exists());
+        }
+    }
+
+    @Test
+    public void snapshot_loadsFiftyThousandLocations() throws Exception {
+        LocationSnapshot snapshot = new LocationSnapshot(new File(folder.getRoot(), "locations.snapshot"));
+        List<Location> locations = createLocations(SNAPSHOT_SIZE);
+        snapshot.write(locations);
+
+        List<Location> read = snapshot.read(null);
+        assertEquals(SNAPSHOT_SIZE, read.size());
+        assertEquals(locations.get(SNAPSHOT_SIZE - 1).getId(), read.get(SNAPSHOT_SIZE - 1).getId());
+    }
+
+    @Ignore(Benchmark.IGNORED)
+    @Test
+    public void benchmark_snapshotLoad() throws Exception {
+        final LocationSnapshot snapshot = new LocationSnapshot(new File(folder.getRoot(), "locations.snapshot"));
+        snapshot.write(createLocations(SNAPSHOT_SIZE));
+
+        long readNanos = Benchmark.bestOf(BENCHMARK_ROUNDS, new Benchmark.Task() {
+            @Override
+            public void run() throws Exception {
+                snapshot.read(null);
+            }
+        });
+        Benchmark.report("Snapshot load of " + SNAPSHOT_SIZE + " locations", readNanos);
+    }
+
+    private static List<Location> createLocations(int count) {
+        List<Location> locations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long tags = 0;
+            for (TagID tag : TagID.values()) {
+                if (tag != TagID.LIKED_BY_YOU && (i + tag.ordinal()) % 3 == 0) {
+                    tags |= tag.bit();
+                }
+            }
+            locations.add(new Location("location" + i, "Castle " + i, 1000 + i % 900, i % 50,
+                    "Castle", "A castle overlooking the river, number " + i,
+                    54 + (i % 1000) / 1000.0, -1.5 - (i % 700) / 1000.0, tags,
+                    "https://example.com/thumbnails/" + i + ".jpg", "report" + i));
+        }
+        return locations;
+    }
+}
@@ -0,0 +1,197 @@
+package com.nearchitectural.utilities;
+
+import com.nearchitectural.utilities.models.Location;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests and microbenchmark for sorting by precomputed ranks.
+ */
+public class SortRanksTest {
+
+    private static final int DATASET_SIZE = 50000;
+    private static final int BENCHMARK_ROUNDS = 3;
+    private static final String[] NAMES = {"Castle", "castle", "Ch\u00e2teau", "Abbey", "\u00c9glise", "Bridge", "bridge", "Tower"};
+
+    @Test
+    public void sort_matchesComparatorSort() {
+        List<Item> items = createItems(3000, new Random(42));
+        SortRanks<Item> ranks = createRanker().rank(items);
+        Random random = new Random(7);
+
+        // Random subsets of the dataset (e.g. filtered results) are sorted in every order
+        for (int subset = 0; subset < 20; subset++) {
+            List<Item> results = new ArrayList<>();
+            for (Item item : items) {
+                if (random.nextInt(4) == 0) {
+                    results.add(item);
+                }
+            }
+            for (SortOrder order : SortOrder.values()) {
+                // Relevance depends on the search text, so is scored rather than ranked
+                if (order == SortOrder.RELEVANCE) {
+                    continue;
+                }
+                List<Item> expected = new ArrayList<>(results);
+                Collections.sort(expected, comparatorFor(order));
+                assertEquals("Order: " + order, expected, sortByRank(ranks, results, order));
+            }
+        }
+    }
+
+    @Test
+    public void rank_onlyRanksDistancesAgainWhenUserMoves() {
+        SortRanker<Item> ranker = createRanker();
+        List<Item> items = createItems(1000, new Random(42));
+        SortRanks<Item> ranks = ranker.rank(items);
+
+        // The same locations at new distances reuse every rank except distance
+        List<Item> movedItems = new ArrayList<>();
+        Random random = new Random(3);
+        for (Item item : items) {
+            movedItems.add(new Item(item.location, random.nextDouble() * 50000));
+        }
+        SortRanks<Item> movedRanks = ranker.rank(movedItems);
+        assertSame(ranks.getRanks(SortOrder.ALPHABETICAL), movedRanks.getRanks(SortOrder.ALPHABETICAL));
+        assertSame(ranks.getRanks(SortOrder.NEWEST_FIRST), movedRanks.getRanks(SortOrder.NEWEST_FIRST));
+        List<Item> expected = new ArrayList<>(movedItems);
+        Collections.sort(expected, comparatorFor(SortOrder.NEAREST_FIRST));
+        assertEquals(expected, sortByRank(movedRanks, movedItems, SortOrder.NEAREST_FIRST));
+
+        // A renamed location requires names to be ranked again
+        Location renamed = new Location(items.get(0).location.getId(), "Aaa", 1900, 0, "Castle", "Summary",
+                55, -1.6, 0, "https://example.com/0", "report0");
+        movedItems.set(0, new Item(renamed, movedItems.get(0).distance));
+        SortRanks<Item> renamedRanks = ranker.rank(movedItems);
+        assertEquals(0, renamedRanks.getRank(renamed.getId(), SortOrder.ALPHABETICAL));
+
+        // Items which were not ranked are placed last
+        Item unranked = createItems(1, new Random(5)).get(0);
+        List<Item> results = new ArrayList<>(movedItems.subList(0, 10));
+        results.add(0, unranked);
+        List<Item> sorted = sortByRank(renamedRanks, results, SortOrder.ALPHABETICAL);
+        assertSame(unranked, sorted.get(sorted.size() - 1));
+    }
+
+    @Ignore(Benchmark.IGNORED)
+    @Test
+    public void benchmark_sortAgainstComparatorSort() throws Exception {
+        final List<Item> items = createItems(DATASET_SIZE, new Random(42));
+        final SortRanks<Item> ranks = createRanker().rank(items);
+        final Comparator<Item> comparator = comparatorFor(SortOrder.ALPHABETICAL);
+
+        long comparatorNanos = Benchmark.bestOf(BENCHMARK_ROUNDS, new Benchmark.Task() {
+            @Override
+            public void run() {
+                Collections.sort(new ArrayList<>(items), comparator);
+            }
+        });
+        long rankNanos = Benchmark.bestOf(BENCHMARK_ROUNDS, new Benchmark.Task() {
+            @Override
+            public void run() {
+                sortByRank(ranks, items, SortOrder.ALPHABETICAL);
+            }
+        });
+
+        Benchmark.report("Sorting " + DATASET_SIZE + " locations by name with a comparator", comparatorNanos);
+        Benchmark.report("Sorting " + DATASET_SIZE + " locations by name with ranks", rankNanos);
+    }
+
+    // Returns every item in the provided order, selected by rank as the search results are
+    private static List<Item> sortByRank(SortRanks<Item> ranks, List<Item> items, SortOrder order) {
+        return new TopKRanker<>(items, ranks.scorer(order)).nextPage(Math.max(1, items.size()));
+    }
+
+    // Returns a comparator which sorts items in the provided order without any ranks
+    private static Comparator<Item> comparatorFor(SortOrder order) {
+        switch (order) {
+            case ALPHABETICAL:
+                final Collator collator = Collator.getInstance();
+                collator.setStrength(Collator.PRIMARY);
+                return new Comparator<Item>() {
+                    @Override
+                    public int compare(Item first, Item second) {
+                        return collator.compare(first.location.getName(), second.location.getName());
+                    }
+                };
+            case NEAREST_FIRST:
+                return new Comparator<Item>() {
+                    @Override
+                    public int compare(Item first, Item second) {
+                        return Double.compare(first.distance, second.distance);
+                    }
+                };
+            case MOST_LIKED:
+                return new Comparator<Item>() {
+                    @Override
+                    public int compare(Item first, Item second) {
+                        return second.location.getLikes() - first.location.getLikes();
+                    }
+                };
+            case NEWEST_FIRST:
+                return new Comparator<Item>() {
+                    @Override
+                    public int compare(Item first, Item second) {
+                        return second.location.getYearOpened() - first.location.getYearOpened();
+                    }
+                };
+            case OLDEST_FIRST:
+                return new Comparator<Item>() {
+                    @Override
+                    public int compare(Item first, Item second) {
+                        return first.location.getYearOpened() - second.location.getYearOpened();
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("No comparator for " + order);
+        }
+    }
+
+    private static SortRanker<Item> createRanker() {
+        return new SortRanker<>(new FilterEngine.ItemAccessor<Item>() {
+            @Override
+            public Location getLocation(Item item) {
+                return item.location;
+            }
+
+            @Override
+            public double getDistance(Item item) {
+                return item.distance;
+            }
+        });
+    }
+
+    // Creates items at random distances whose locations have names, years and likes which are often equal
+    private static List<Item> createItems(int count, Random random) {
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Location location = new Location("location" + random.nextInt(), NAMES[random.nextInt(NAMES.length)]
+                    + " " + random.nextInt(count), 1000 + random.nextInt(1000), random.nextInt(50), "Castle", "Summary",
+                    55, -1.6, 0, "https://example.com/" + i, "report" + i);
+            items.add(new Item(location, random.nextInt(10) == 0 ? 0 : random.nextDouble() * 50000));
+        }
+        return items;
+    }
+
+    // Location paired with its distance from the user
+    private static class Item {
+
+        private final Location location;
+        private final double distance;
+
+        Item(Location location, double distance) {
+            this.location = location;
+            this.distance = distance;
+        }
+    }
+}
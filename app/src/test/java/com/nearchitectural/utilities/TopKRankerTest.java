@@ -0,0 +1,158 @@
+package com.nearchitectural.utilities;
+
+import com.nearchitectural.utilities.models.Location;
+import com.nearchitectural.utilities.search.ReportIndex;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests and microbenchmark for selecting the best scoring items a page at a time.
+ */
+public class TopKRankerTest {
+
+    private static final int DATASET_SIZE = 50000;
+    private static final int BENCHMARK_ROUNDS = 5;
+    private static final int PAGE_SIZE = 40;
+    private static final FilterEngine.ItemAccessor<Item> ACCESSOR = new FilterEngine.ItemAccessor<Item>() {
+        @Override
+        public Location getLocation(Item item) {
+            return item.location;
+        }
+
+        @Override
+        public double getDistance(Item item) {
+            return item.distance;
+        }
+    };
+    private static final TopKRanker.Scorer<Item> NEAREST = new TopKRanker.Scorer<Item>() {
+        @Override
+        public double score(Item item) {
+            return -item.distance;
+        }
+    };
+    private static final TopKRanker.Scorer<Item> MOST_LIKED = new TopKRanker.Scorer<Item>() {
+        @Override
+        public double score(Item item) {
+            return item.location.getLikes();
+        }
+    };
+
+    @Test
+    public void nextPage_matchesFullSort() {
+        List<Item> items = createItems(2000, new Random(42));
+        Random random = new Random(7);
+        List<TopKRanker.Scorer<Item>> scorers = new ArrayList<>();
+        scorers.add(NEAREST);
+        scorers.add(MOST_LIKED);
+        scorers.add(TopKRanker.<Item>relevance(ACCESSOR, Collections.<ReportIndex.Match>emptyList()));
+
+        for (TopKRanker.Scorer<Item> scorer : scorers) {
+            List<Item> expected = fullSort(items, scorer);
+
+            // Pages of random sizes together must return every item in the same order as a full sort
+            TopKRanker<Item> ranker = new TopKRanker<>(items, scorer);
+            List<Item> paged = new ArrayList<>();
+            while (ranker.hasMore()) {
+                List<Item> page = ranker.nextPage(1 + random.nextInt(300));
+                assertFalse(page.isEmpty());
+                paged.addAll(page);
+            }
+            assertEquals(expected, paged);
+            assertTrue(ranker.nextPage(PAGE_SIZE).isEmpty());
+        }
+
+        // Pages larger than the items return every item at once
+        assertEquals(3, new TopKRanker<>(items.subList(0, 3), NEAREST).nextPage(PAGE_SIZE).size());
+        assertTrue(new TopKRanker<>(new ArrayList<Item>(), NEAREST).nextPage(PAGE_SIZE).isEmpty());
+    }
+
+    @Test
+    public void relevance_combinesReportMatchesLikesAndDistance() {
+        Location matching = new Location("matching", "Keep", 1080, 0, "Castle", "Summary", 55, -1.6, 0, "", "report1");
+        Location liked = new Location("liked", "Hall", 1700, 500, "House", "Summary", 55, -1.6, 0, "", "report2");
+        Location plain = new Location("plain", "Hall", 1700, 0, "House", "Summary", 55, -1.6, 0, "", "report3");
+        ReportIndex reportIndex = new ReportIndex();
+        reportIndex.addReport("report1", Collections.singletonList("The Norman keep."));
+        TopKRanker.Scorer<Item> scorer = TopKRanker.relevance(ACCESSOR, reportIndex.search("norman keep"));
+
+        assertTrue(scorer.score(new Item(matching, 1000)) > scorer.score(new Item(plain, 1000)));
+        assertTrue(scorer.score(new Item(liked, 1000)) > scorer.score(new Item(plain, 1000)));
+        assertTrue(scorer.score(new Item(plain, 100)) > scorer.score(new Item(plain, 10000)));
+    }
+
+    @Test
+    public void nextPage_firstPageMatchesSortedPrefix() {
+        List<Item> items = createItems(DATASET_SIZE, new Random(42));
+        TopKRanker.Scorer<Item> scorer = NEAREST;
+        assertEquals(fullSort(items, scorer).subList(0, PAGE_SIZE),
+                new TopKRanker<>(items, scorer).nextPage(PAGE_SIZE));
+    }
+
+    @Ignore(Benchmark.IGNORED)
+    @Test
+    public void benchmark_firstPageAgainstFullSort() throws Exception {
+        final List<Item> items = createItems(DATASET_SIZE, new Random(42));
+        final TopKRanker.Scorer<Item> scorer = NEAREST;
+
+        long fullSortNanos = Benchmark.bestOf(BENCHMARK_ROUNDS, new Benchmark.Task() {
+            @Override
+            public void run() {
+                fullSort(items, scorer);
+            }
+        });
+        long firstPageNanos = Benchmark.bestOf(BENCHMARK_ROUNDS, new Benchmark.Task() {
+            @Override
+            public void run() {
+                new TopKRanker<>(items, scorer).nextPage(PAGE_SIZE);
+            }
+        });
+
+        Benchmark.report("Full sort of the nearest of " + DATASET_SIZE + " locations", fullSortNanos);
+        Benchmark.report("First page of the nearest " + PAGE_SIZE + " of " + DATASET_SIZE + " locations",
+                firstPageNanos);
+    }
+
+    // Sorts every item by score (best first), keeping the original order of items with equal scores
+    private static List<Item> fullSort(List<Item> items, final TopKRanker.Scorer<Item> scorer) {
+        List<Item> sorted = new ArrayList<>(items);
+        Collections.sort(sorted, new Comparator<Item>() {
+            @Override
+            public int compare(Item first, Item second) {
+                return Double.compare(scorer.score(second), scorer.score(first));
+            }
+        });
+        return sorted;
+    }
+
+    // Creates items at random distances (often equal) whose locations have random likes
+    private static List<Item> createItems(int count, Random random) {
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Location location = new Location("location" + i, "Castle " + i, 1800, random.nextInt(100), "Castle",
+                    "Summary", 55, -1.6, 0, "https://example.com/" + i, "report" + i);
+            items.add(new Item(location, random.nextInt(5) == 0 ? 1000 : random.nextDouble() * 50000));
+        }
+        return items;
+    }
+
+    // Location paired with its distance from the user
+    private static class Item {
+
+        private final Location location;
+        private final double distance;
+
+        Item(Location location, double distance) {
+            this.location = location;
+            this.distance = distance;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.nearchitectural.utilities.search;
+
+import com.nearchitectural.utilities.Benchmark;
+import com.nearchitectural.utilities.models.Location;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests and microbenchmark for suggesting search completions from a prefix trie.
+ */
+public class CompletionTrieTest {
+
+    private static final int DATASET_SIZE = 50000;
+    private static final int BENCHMARK_ROUNDS = 5;
+    private static final int BENCHMARK_LOOKUPS = 100000;
+    private static final String[] WORDS = {"castle", "cathedral", "church", "chapel", "hall", "house", "abbey",
+            "priory", "tower", "bridge", "keep", "manor", "mill", "market", "museum", "north", "new", "old"};
+    private static final String[] TYPES = {"Castle", "Church", "House", "Bridge", "Museum", "Tower"};
+
+    @Test
+    public void complete_matchesWordStartsByLikes() {
+        List<Location> locations = new ArrayList<>();
+        locations.add(createLocation("1", "Alnwick Castle", "Castle", 40));
+        locations.add(createLocation("2", "Bamburgh Castle", "Castle", 90));
+        locations.add(createLocation("3", "Durham Cathedral", "Cathedral", 70));
+        locations.add(createLocation("4", "Castle Keep", "Castle", 10));
+        locations.add(createLocation("5", "alnwick castle", "Castle", 5));
+        CompletionTrie trie = new CompletionTrie(locations);
+
+        // Completions start at any word, ignoring case, and are ordered by total likes
+        assertEquals(Arrays.asList("Castle", "Bamburgh Castle", "Alnwick Castle", "Castle Keep"),
+                trie.complete("CAS", CompletionTrie.MAX_COMPLETIONS));
+        // Completions with equal likes are ordered alphabetically
+        assertEquals(Arrays.asList("Cathedral", "Durham Cathedral"), trie.complete("cath", 8));
+        assertEquals(Arrays.asList("Castle", "Bamburgh Castle"), trie.complete("cas", 2));
+        // Prefixes may end part way through a merged label, or span words
+        assertEquals(Collections.singletonList("Alnwick Castle"), trie.complete("  alnwick c", 8));
+        assertEquals(Collections.singletonList("Castle Keep"), trie.complete("kee", 8));
+        assertTrue(trie.complete("castlex", 8).isEmpty());
+        assertTrue(trie.complete("stle", 8).isEmpty());
+        assertTrue(trie.complete("cas", 0).isEmpty());
+        // Everything is a completion of the empty prefix
+        assertEquals(Arrays.asList("Castle", "Bamburgh Castle", "Cathedral"), trie.complete("", 3));
+        assertEquals(6, trie.size());
+
+        assertTrue(CompletionTrie.empty().complete("cas", 8).isEmpty());
+        assertTrue(CompletionTrie.empty().complete("", 8).isEmpty());
+    }
+
+    @Test
+    public void complete_mergesTextDifferingOnlyInSurroundingSpaces() {
+        List<Location> locations = new ArrayList<>();
+        locations.add(createLocation("1", "Castle", "Keep", 30));
+        locations.add(createLocation("2", "Castle ", "Keep", 20));
+        locations.add(createLocation("3", " Castle Howard", "House", 40));
+        CompletionTrie trie = new CompletionTrie(locations);
+
+        // "Castle" and "Castle " are one completion carrying the likes of both locations
+        assertEquals(Arrays.asList("Castle", "Castle Howard"), trie.complete("castle", 8));
+        assertEquals(Arrays.asList("Castle", "Castle Howard"), trie.complete("castle ", 8));
+        assertEquals(4, trie.size());
+    }
+
+    @Test
+    public void complete_matchesBruteForce() {
+        List<Location> locations = createLocations(3000, new Random(42));
+        CompletionTrie trie = new CompletionTrie(locations);
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            String prefix = randomPrefix(random);
+            assertEquals(prefix, bruteForce(locations, prefix, CompletionTrie.MAX_COMPLETIONS),
+                    trie.complete(prefix, CompletionTrie.MAX_COMPLETIONS));
+        }
+    }
+
+    @Ignore(Benchmark.IGNORED)
+    @Test
+    public void benchmark_buildAndComplete() throws Exception {
+        final List<Location> locations = createLocations(DATASET_SIZE, new Random(42));
+        long buildNanos = Benchmark.bestOf(BENCHMARK_ROUNDS, new Benchmark.Task() {
+            @Override
+            public void run() {
+                new CompletionTrie(locations);
+            }
+        });
+
+        final CompletionTrie trie = new CompletionTrie(locations);
+        Random random = new Random(7);
+        final String[] prefixes = new String[BENCHMARK_LOOKUPS];
+        for (int i = 0; i < prefixes.length; i++) {
+            prefixes[i] = randomPrefix(random);
+        }
+        long lookupNanos = Benchmark.bestOf(BENCHMARK_ROUNDS, new Benchmark.Task() {
+            @Override
+            public void run() {
+                for (String prefix : prefixes) {
+                    trie.complete(prefix, CompletionTrie.MAX_COMPLETIONS);
+                }
+            }
+        });
+
+        Benchmark.report("Completion trie build at " + DATASET_SIZE + " locations (" + trie.size()
+                + " completions)", buildNanos);
+        Benchmark.report("Completion trie lookup", lookupNanos / BENCHMARK_LOOKUPS);
+    }
+
+    // Returns the most liked completions with a word starting with the prefix by checking every location
+    private static List<String> bruteForce(List<Location> locations, String prefix, int limit) {
+        final Map<String, String> texts = new LinkedHashMap<>();
+        final Map<String, Long> weights = new HashMap<>();
+        for (Location location : locations) {
+            for (String text : new String[]{location.getName(), location.getType()}) {
+                String key = text.toLowerCase();
+                if (!texts.containsKey(key)) {
+                    texts.put(key, text);
+                    weights.put(key, 0L);
+                }
+                weights.put(key, weights.get(key) + location.getLikes());
+            }
+        }
+        String lowerPrefix = prefix.trim().toLowerCase();
+        List<String> matches = new ArrayList<>();
+        for (String key : texts.keySet()) {
+            for (int offset = 0; offset < key.length(); offset++) {
+                boolean wordStart = offset == 0 || !Character.isLetterOrDigit(key.charAt(offset - 1));
+                if (wordStart && Character.isLetterOrDigit(key.charAt(offset))
+                        && key.startsWith(lowerPrefix, offset)) {
+                    matches.add(key);
+                    break;
+                }
+            }
+        }
+        Collections.sort(matches, new Comparator<String>() {
+            @Override
+            public int compare(String first, String second) {
+                int comparison = weights.get(second).compareTo(weights.get(first));
+                return comparison != 0 ? comparison : first.compareTo(second);
+            }
+        });
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, matches.size()); i++) {
+            results.add(texts.get(matches.get(i)));
+        }
+        return results;
+    }
+
+    // Returns the start of a random word (sometimes followed by the start of another)
+    private static String randomPrefix(Random random) {
+        String word = WORDS[random.nextInt(WORDS.length)];
+        String prefix = word.substring(0, 1 + random.nextInt(word.length()));
+        if (prefix.equals(word) && random.nextBoolean()) {
+            String next = WORDS[random.nextInt(WORDS.length)];
+            prefix += " " + next.substring(0, 1 + random.nextInt(next.length()));
+        }
+        return random.nextInt(4) == 0 ? prefix.toUpperCase() : prefix;
+    }
+
+    // Creates locations whose names are random combinations of words (often repeated) with random likes
+    private static List<Location> createLocations(int count, Random random) {
+        List<Location> locations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder();
+            int words = 1 + random.nextInt(3);
+            for (int word = 0; word < words; word++) {
+                String text = WORDS[random.nextInt(WORDS.length)];
+                name.append(word == 0 ? Character.toUpperCase(text.charAt(0)) + text.substring(1) : " " + text);
+            }
+            if (random.nextInt(3) == 0) {
+                name.append(" ").append(random.nextInt(1000));
+            }
+            locations.add(createLocation("location" + i, name.toString(), TYPES[random.nextInt(TYPES.length)],
+                    random.nextInt(100)));
+        }
+        return locations;
+    }
+
+    private static Location createLocation(String id, String name, String type, int likes) {
+        return new Location(id, name, 1800, likes, type, "Summary", 55, -1.6, 0, "", "report" + id);
+    }
+}
@@ -0,0 +1,328 @@
+package com.nearchitectural.utilities.search;
+
+import com.nearchitectural.utilities.Benchmark;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests and microbenchmark for the report full-text index.
+ */
+public class ReportIndexTest {
+
+    private static final int DATASET_SIZE = 20000;
+    private static final int BENCHMARK_ROUNDS = 20;
+    private static final String[] WORDS = {"norman", "keep", "keeps", "castle", "castles", "built", "tower",
+            "stone", "walls", "church", "abbey", "bridge", "river", "century", "medieval", "roman", "fort",
+            "restored", "restoring", "gardens", "visitors", "the", "of", "and", "was", "in", "north", "gate"};
+    private static final String[] QUERIES = {"norman keep", "Norman keep", "castle", "castles", "keeps ",
+            "cas", "no", "restor", "the", "roman fort", "walls of the castle", "missing", "norman k", ""};
+
+    @Test
+    public void splitWordsAndStem() {
+        assertEquals(Arrays.asList("the", "castle", "keep", "was", "built", "in", "1080"),
+                ReportIndex.splitWords("The castle's keep was built in 1080."));
+        assertEquals("castle", ReportIndex.stem("castles"));
+        assertEquals("century", ReportIndex.stem("centuries"));
+        assertEquals("build", ReportIndex.stem("buildings"));
+        assertEquals("restor", ReportIndex.stem("restored"));
+        assertEquals("glass", ReportIndex.stem("glass"));
+        assertEquals("campus", ReportIndex.stem("campus"));
+    }
+
+    @Test
+    public void search_matchesEveryWordAndRanksByRelevance() {
+        ReportIndex index = new ReportIndex();
+        index.addReport("keep", paragraphs("The Norman keep was built of stone.", "The keep is a keep tower."));
+        index.addReport("castle", paragraphs("A Norman castle with a later keep and gardens."));
+        index.addReport("bridge", paragraphs("A medieval bridge over the river."));
+
+        // Both words are required and the report mentioning the keep most often ranks first
+        assertEquals(Arrays.asList("keep", "castle"), reportIDs(index.search("Norman keep")));
+        assertEquals(Collections.singletonList("castle"), reportIDs(index.search("castles ")));
+        // Partially typed words match any word starting with them, complete words only match whole words
+        assertEquals(new HashSet<>(Arrays.asList("keep", "castle")), new HashSet<>(reportIDs(index.search("norm"))));
+        assertTrue(index.search("norm ").isEmpty());
+        // Common words alone are not searched for
+        assertTrue(index.search("the ").isEmpty());
+        assertTrue(index.search("").isEmpty());
+    }
+
+    @Test
+    public void addReport_updatesAndRemovesReports() {
+        ReportIndex index = new ReportIndex();
+        assertTrue(index.addReport("report1", paragraphs("A Norman keep.")));
+        int version = index.getVersion();
+
+        // Unchanged reports are not indexed again
+        assertFalse(index.addReport("report1", paragraphs("A Norman keep.")));
+        assertEquals(version, index.getVersion());
+
+        assertTrue(index.addReport("report1", paragraphs("A Roman fort.")));
+        // Edits are indexed even if the old and new text have the same hash code ("Aa" and "BB" do)
+        assertEquals(paragraphs("Aa fort.").hashCode(), paragraphs("BB fort.").hashCode());
+        assertTrue(index.addReport("report3", paragraphs("Aa fort.")));
+        assertTrue(index.addReport("report3", paragraphs("BB fort.")));
+        assertEquals(Collections.singletonList("report3"), reportIDs(index.search("bb ")));
+        assertTrue(index.removeReport("report3"));
+        assertTrue(index.search("norman").isEmpty());
+        assertEquals(Collections.singletonList("report1"), reportIDs(index.search("roman fort")));
+
+        index.addReport("report2", paragraphs("A Roman road."));
+        assertEquals(1, index.retainReports(Collections.singletonList("report2")));
+        assertEquals(Collections.singletonList("report2"), reportIDs(index.search("roman")));
+        assertTrue(index.removeReport("report2"));
+        assertEquals(0, index.size());
+        assertTrue(index.search("roman").isEmpty());
+    }
+
+    @Test
+    public void search_matchesBruteForceAfterUpdates() {
+        Random random = new Random(42);
+        ReportIndex index = new ReportIndex();
+        List<List<String>> reports = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            reports.add(createParagraphs(random));
+            index.addReport("report" + i, reports.get(i));
+        }
+        // Some reports are changed and some removed, as during a sync
+        for (int i = 0; i < 100; i++) {
+            int report = random.nextInt(reports.size());
+            if (random.nextBoolean()) {
+                reports.set(report, createParagraphs(random));
+                index.addReport("report" + report, reports.get(report));
+            } else {
+                reports.set(report, null);
+                index.removeReport("report" + report);
+            }
+        }
+
+        for (String query : QUERIES) {
+            Set<String> expected = new HashSet<>();
+            for (int i = 0; i < reports.size(); i++) {
+                if (reports.get(i) != null && bruteForceMatches(reports, reports.get(i), query)) {
+                    expected.add("report" + i);
+                }
+            }
+            assertEquals("Query: " + query, expected, new HashSet<>(reportIDs(index.search(query))));
+        }
+    }
+
+    @Test
+    public void isNarrowing_neverWidensMatches() {
+        Random random = new Random(7);
+        ReportIndex index = new ReportIndex();
+        for (int i = 0; i < 300; i++) {
+            index.addReport("report" + i, createParagraphs(random));
+        }
+
+        // Queries are typed one character at a time, with words deleted at random
+        String typed = "norman keep castle restored north gate ";
+        String query = "";
+        for (int step = 0; step < 400; step++) {
+            String nextQuery = random.nextInt(5) == 0 && !query.isEmpty()
+                    ? query.substring(0, query.length() - 1)
+                    : query + typed.charAt(query.length() % typed.length());
+            if (ReportIndex.isNarrowing(query, nextQuery)) {
+                Set<String> previousMatches = new HashSet<>(reportIDs(index.search(query)));
+                assertTrue("Query: " + nextQuery, previousMatches.containsAll(reportIDs(index.search(nextQuery))));
+            }
+            query = nextQuery;
+        }
+        assertTrue(ReportIndex.isNarrowing("norm", "norma"));
+        assertTrue(ReportIndex.isNarrowing("norman ", "norman keep"));
+        assertFalse(ReportIndex.isNarrowing("norman keep", "norman"));
+        assertFalse(ReportIndex.isNarrowing("no", "nor"));
+    }
+
+    @Test
+    public void write_readsBackTheSameIndex() throws Exception {
+        Random random = new Random(3);
+        ReportIndex index = new ReportIndex();
+        for (int i = 0; i < 200; i++) {
+            index.addReport("report" + i, createParagraphs(random));
+        }
+        index.removeReport("report5");
+
+        File indexFile = File.createTempFile("reports", ".index");
+        try {
+            index.write(indexFile);
+            ReportIndex restored = ReportIndex.read(indexFile);
+
+            assertEquals(index.size(), restored.size());
+            for (String query : QUERIES) {
+                List<ReportIndex.Match> expected = index.search(query);
+                List<ReportIndex.Match> actual = restored.search(query);
+                assertEquals(reportIDs(expected), reportIDs(actual));
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 1e-9);
+                }
+            }
+        } finally {
+            indexFile.delete();
+        }
+        assertNull(ReportIndex.read(new File(indexFile.getPath() + ".missing")));
+    }
+
+    @Test
+    public void read_rejectsCorruptLengths() throws Exception {
+        ReportIndex index = new ReportIndex();
+        index.addReport("report1", paragraphs("A Norman keep."));
+
+        File indexFile = File.createTempFile("reports", ".index");
+        try {
+            // Offset 8 holds the report count and offset 12 the length of the first report ID
+            for (long offset : new long[]{8, 12}) {
+                index.write(indexFile);
+                RandomAccessFile corrupt = new RandomAccessFile(indexFile, "rw");
+                try {
+                    corrupt.seek(offset);
+                    corrupt.writeInt(offset == 8 ? -1 : Integer.MAX_VALUE);
+                } finally {
+                    corrupt.close();
+                }
+
+                try {
+                    ReportIndex.read(indexFile);
+                    fail("Expected a corrupt index to be rejected at offset " + offset);
+                } catch (IOException expected) {
+                    // The repository discards the index when this is thrown
+                }
+            }
+        } finally {
+            indexFile.delete();
+        }
+    }
+
+    @Test
+    public void write_failureRemovesTemporaryFile() throws Exception {
+        ReportIndex index = new ReportIndex();
+        index.addReport("report1", paragraphs("A Norman keep."));
+
+        // A non-empty directory in place of the index cannot be replaced, so the rename fails
+        File indexFile = File.createTempFile("reports", ".index");
+        assertTrue(indexFile.delete());
+        File child = new File(indexFile, "child");
+        assertTrue(child.mkdirs());
+        try {
+            index.write(indexFile);
+            fail("Expected the index write to fail");
+        } catch (IOException expected) {
+            assertFalse(new File(indexFile.getPath() + ".tmp").exists());
+        } finally {
+            child.delete();
+            indexFile.delete();
+        }
+    }
+
+    @Ignore(Benchmark.IGNORED)
+    @Test
+    public void benchmark_search() throws Exception {
+        Random random = new Random(11);
+        final ReportIndex index = new ReportIndex();
+        for (int i = 0; i < DATASET_SIZE; i++) {
+            index.addReport("report" + i, createParagraphs(random));
+        }
+
+        long nanos = Benchmark.bestOf(BENCHMARK_ROUNDS, new Benchmark.Task() {
+            @Override
+            public void run() {
+                index.search("Norman keep");
+            }
+        });
+
+        Benchmark.report("Report index search for \"Norman keep\" across " + DATASET_SIZE + " reports", nanos);
+    }
+
+    /* Determines if the report contains every query word by comparing the words of the report directly.
+     * A partially typed word matches any form of any word starting with it in any of the reports */
+    private static boolean bruteForceMatches(List<List<String>> reports, List<String> paragraphs, String query) {
+
+        List<String> queryWords = ReportIndex.splitWords(query);
+        boolean lastWordPartial = !query.isEmpty() && Character.isLetterOrDigit(query.charAt(query.length() - 1))
+                && !queryWords.isEmpty() && query.toLowerCase().endsWith(queryWords.get(queryWords.size() - 1));
+        Set<String> stopWords = new HashSet<>(Arrays.asList("the", "of", "and", "was", "in"));
+
+        List<String> reportWords = new ArrayList<>();
+        for (String paragraph : paragraphs) {
+            reportWords.addAll(ReportIndex.splitWords(paragraph));
+        }
+
+        boolean anyWordSearched = false;
+        for (int i = 0; i < queryWords.size(); i++) {
+            String queryWord = queryWords.get(i);
+            boolean partial = lastWordPartial && i == queryWords.size() - 1;
+            if (partial ? queryWord.length() < 3 : stopWords.contains(queryWord)) {
+                continue;
+            }
+            anyWordSearched = true;
+            Set<String> stems = new HashSet<>();
+            if (partial) {
+                for (List<String> report : reports) {
+                    for (String paragraph : report == null ? new ArrayList<String>() : report) {
+                        for (String word : ReportIndex.splitWords(paragraph)) {
+                            if (!stopWords.contains(word) && word.startsWith(queryWord)) {
+                                stems.add(ReportIndex.stem(word));
+                            }
+                        }
+                    }
+                }
+            } else {
+                stems.add(ReportIndex.stem(queryWord));
+            }
+            boolean found = false;
+            for (String word : reportWords) {
+                if (!stopWords.contains(word) && stems.contains(ReportIndex.stem(word))) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return anyWordSearched;
+    }
+
+    /* Creates a few paragraphs of random sentences, in which an eighth of the words are test words
+     * and the rest are drawn from a larger vocabulary (so test words are not in every report) */
+    private static List<String> createParagraphs(Random random) {
+        List<String> paragraphs = new ArrayList<>();
+        int paragraphCount = 1 + random.nextInt(4);
+        for (int paragraph = 0; paragraph < paragraphCount; paragraph++) {
+            StringBuilder text = new StringBuilder();
+            int wordCount = 10 + random.nextInt(40);
+            for (int word = 0; word < wordCount; word++) {
+                text.append(random.nextInt(8) == 0 ? WORDS[random.nextInt(WORDS.length)] : "word" + random.nextInt(5000))
+                        .append(word % 9 == 8 ? ". " : " ");
+            }
+            paragraphs.add(text.toString());
+        }
+        return paragraphs;
+    }
+
+    private static List<String> paragraphs(String... paragraphs) {
+        return Arrays.asList(paragraphs);
+    }
+
+    private static List<String> reportIDs(List<ReportIndex.Match> matches) {
+        List<String> reportIDs = new ArrayList<>();
+        for (ReportIndex.Match match : matches) {
+            reportIDs.add(match.getReportID());
+        }
+        return reportIDs;
+    }
+}
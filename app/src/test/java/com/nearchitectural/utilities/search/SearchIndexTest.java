@@ -0,0 +1,157 @@
+package com.nearchitectural.utilities.search;
+
+import com.nearchitectural.utilities.Benchmark;
+import com.nearchitectural.utilities.models.Location;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests and microbenchmark for the n-gram search index.
+ */
+public class SearchIndexTest {
+
+    private static final int DATASET_SIZE = 100000;
+    private static final int BENCHMARK_ROUNDS = 10;
+    private static final String[] WORDS = {"castle", "bridge", "abbey", "church", "tower", "hall", "priory",
+            "north", "new", "old", "high", "st", "mary", "cuthbert", "aln", "wick", "tyne", "dun", "stan", "ton"};
+    private static final String[] TYPES = {"Castle", "Bridge", "Church", "Museum", "Monument", "Country House"};
+    private static final String[] QUERIES = {"c", "Ca", "cas", "castle", "astle", "st mary", "Tyne Bridge",
+            "north tower", "wick", "e", "xyz", "abbeyx", "ton hall", "mus", "country house", "  "};
+
+    @Test
+    public void search_matchesContainsOfNameOrType() {
+        List<Location> locations = createLocations(5000);
+        SearchIndex index = new SearchIndex(locations);
+
+        for (String query : QUERIES) {
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < locations.size(); i++) {
+                if (locations.get(i).getName().toLowerCase().contains(query.toLowerCase())
+                        || locations.get(i).getType().toLowerCase().contains(query.toLowerCase())) {
+                    expected.add(i);
+                }
+            }
+            int[] actual = index.search(query);
+            assertEquals("Query: " + query, expected.size(), actual.length);
+            for (int i = 0; i < actual.length; i++) {
+                assertEquals("Query: " + query, (int) expected.get(i), actual[i]);
+            }
+        }
+    }
+
+    @Test
+    public void search_emptyQueryMatchesEverything() {
+        SearchIndex index = new SearchIndex(createLocations(100));
+        assertEquals(100, index.search("").length);
+        assertEquals(0, SearchIndex.empty().search("castle").length);
+    }
+
+    @Test
+    public void withChanges_matchesRebuiltIndex() {
+        Random random = new Random(7);
+        Map<String, Location> current = new LinkedHashMap<>();
+        for (Location location : createLocations(2000)) {
+            current.put(location.getId(), location);
+        }
+        SearchIndex index = new SearchIndex(new ArrayList<>(current.values()));
+
+        // Batches of renamed, added and removed locations are applied without rebuilding the postings
+        for (int batch = 0; batch < 10; batch++) {
+            List<Location> updated = new ArrayList<>();
+            List<String> removed = new ArrayList<>();
+            List<String> ids = new ArrayList<>(current.keySet());
+            Set<String> changedIDs = new HashSet<>();
+            for (int i = 0; i < 20; i++) {
+                String id = random.nextInt(4) == 0 ? "added" + batch + "-" + i : ids.get(random.nextInt(ids.size()));
+                // Each sync reports a location at most once
+                if (!changedIDs.add(id)) {
+                    continue;
+                }
+                if (random.nextInt(3) == 0) {
+                    removed.add(id);
+                    current.remove(id);
+                } else {
+                    Location location = new Location(id, WORDS[random.nextInt(WORDS.length)] + " "
+                            + WORDS[random.nextInt(WORDS.length)], 1800, 0, TYPES[random.nextInt(TYPES.length)],
+                            "Summary", 55, -1.6, 0, "", "report" + id);
+                    updated.add(location);
+                    current.put(id, location);
+                }
+            }
+            index = index.withChanges(updated, removed);
+
+            SearchIndex rebuilt = new SearchIndex(new ArrayList<>(current.values()));
+            for (String query : QUERIES) {
+                int[] ordinals = index.search(query);
+                for (int i = 1; i < ordinals.length; i++) {
+                    assertTrue(ordinals[i - 1] < ordinals[i]);
+                }
+                assertEquals("Query: " + query, idsOf(rebuilt, rebuilt.search(query)), idsOf(index, ordinals));
+            }
+        }
+        assertTrue(index.getChanges().size() > 0);
+    }
+
+    @Ignore(Benchmark.IGNORED)
+    @Test
+    public void benchmark_typedQueries() throws Exception {
+        final SearchIndex index = new SearchIndex(createLocations(DATASET_SIZE));
+
+        // Each prefix of a query is searched, as happens while the query is typed
+        int keystrokes = 0;
+        for (String query : QUERIES) {
+            keystrokes += query.length();
+        }
+        long nanos = Benchmark.bestOf(BENCHMARK_ROUNDS, new Benchmark.Task() {
+            @Override
+            public void run() {
+                for (String query : QUERIES) {
+                    for (int length = 1; length <= query.length(); length++) {
+                        index.search(query.substring(0, length));
+                    }
+                }
+            }
+        });
+
+        Benchmark.report("Search index keystroke at " + DATASET_SIZE + " locations", nanos / keystrokes);
+    }
+
+    // Returns the IDs of the locations found by a search (checking no location is found twice)
+    private static Set<String> idsOf(SearchIndex index, int[] ordinals) {
+        Set<String> ids = new HashSet<>();
+        for (int ordinal : ordinals) {
+            assertTrue(ids.add(index.getLocations().get(ordinal).getId()));
+        }
+        return ids;
+    }
+
+    // Creates locations with names made from random combinations of common place name words
+    private static List<Location> createLocations(int count) {
+        Random random = new Random(42);
+        List<Location> locations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder();
+            int words = 1 + random.nextInt(3);
+            for (int word = 0; word < words; word++) {
+                String text = WORDS[random.nextInt(WORDS.length)];
+                name.append(word == 0 ? Character.toUpperCase(text.charAt(0)) + text.substring(1) : text);
+                name.append(word == words - 1 ? "" : " ");
+            }
+            locations.add(new Location("location" + i, name.toString(), 1800, 0,
+                    TYPES[random.nextInt(TYPES.length)], "Summary", 55, -1.6,
+                    0, "https://example.com/" + i, "report" + i));
+        }
+        return locations;
+    }
+}
@@ -0,0 +1,143 @@
+package com.nearchitectural.utilities.spatial;
+
+import com.nearchitectural.utilities.DistanceCalculator;
+import com.nearchitectural.utilities.models.Location;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for radius queries over the grid spatial index.
+ */
+public class SpatialIndexTest {
+
+    private static final double RADIUS = 10000; // Radius of each query in meters
+    private static final double EARTH_RADIUS_METERS = DistanceCalculator.EARTH_RADIUS * 1000.0;
+
+    @Test
+    public void withinRadius_includesLocationsAtTheEdge() {
+        double radiusDegrees = Math.toDegrees(RADIUS / EARTH_RADIUS_METERS);
+        /* The origin is placed so that the northern edge of the radius lies just past a row of cells
+         * (rows start at multiples of the cell size from -90), with the point due north just inside it */
+        double originLatitude = 50.1 - radiusDegrees + 0.00005;
+        double originLongitude = -1.65;
+        Location north = createLocation("north", originLatitude + radiusDegrees * (1 - 1e-7), originLongitude);
+        Location beyond = createLocation("beyond", originLatitude + radiusDegrees * (1 + 1e-7), originLongitude);
+
+        /* The point furthest east within the radius is slightly north of the origin's latitude, and
+         * differs in longitude by more than the radius divided by the cosine of the origin's latitude */
+        double angle = RADIUS * (1 - 1e-7) / EARTH_RADIUS_METERS;
+        double latitude = Math.toRadians(originLatitude);
+        Location east = createLocation("east", Math.toDegrees(Math.asin(Math.sin(latitude) / Math.cos(angle))),
+                originLongitude + Math.toDegrees(Math.asin(Math.sin(angle) / Math.cos(latitude))));
+
+        List<Location> locations = new ArrayList<>();
+        locations.add(north);
+        locations.add(beyond);
+        locations.add(east);
+        SpatialIndex index = new SpatialIndex(locations);
+
+        assertTrue(DistanceCalculator.calculateDistance(originLatitude, east.getLatitude(),
+                originLongitude, east.getLongitude()) <= RADIUS);
+        Set<String> found = idsOf(index.withinRadius(originLatitude, originLongitude, RADIUS));
+        assertTrue(found.contains("north"));
+        assertTrue(found.contains("east"));
+        assertFalse(found.contains("beyond"));
+    }
+
+    @Test
+    public void withinRadius_matchesExactDistances() {
+        Random random = new Random(42);
+        List<Location> locations = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            locations.add(createLocation("location" + i, 54 + random.nextDouble() * 2,
+                    -3 + random.nextDouble() * 3));
+        }
+        SpatialIndex index = new SpatialIndex(locations);
+
+        for (int query = 0; query < 50; query++) {
+            double latitude = 54 + random.nextDouble() * 2;
+            double longitude = -3 + random.nextDouble() * 3;
+            double radius = random.nextDouble() * 50000;
+            Set<String> expected = new HashSet<>();
+            for (Location location : locations) {
+                if (DistanceCalculator.calculateDistance(latitude, location.getLatitude(),
+                        longitude, location.getLongitude()) <= radius) {
+                    expected.add(location.getId());
+                }
+            }
+            assertEquals(expected, idsOf(index.withinRadius(latitude, longitude, radius)));
+        }
+
+        // A radius wider than the earth returns every location, and a negative radius none
+        assertEquals(locations.size(), index.withinRadius(55, -1.6, Double.POSITIVE_INFINITY).size());
+        assertTrue(index.withinRadius(55, -1.6, -1).isEmpty());
+    }
+
+    @Test
+    public void withChanges_matchesRebuiltIndex() {
+        Random random = new Random(7);
+        Map<String, Location> current = new LinkedHashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            current.put("location" + i, createLocation("location" + i, 54 + random.nextDouble() * 2,
+                    -3 + random.nextDouble() * 3));
+        }
+        SpatialIndex index = new SpatialIndex(new ArrayList<>(current.values()));
+
+        // Batches of moved, added and removed locations are applied without rebuilding the grid
+        for (int batch = 0; batch < 10; batch++) {
+            List<Location> updated = new ArrayList<>();
+            List<String> removed = new ArrayList<>();
+            List<String> ids = new ArrayList<>(current.keySet());
+            Set<String> changedIDs = new HashSet<>();
+            for (int i = 0; i < 20; i++) {
+                String id = random.nextInt(4) == 0 ? "added" + batch + "-" + i : ids.get(random.nextInt(ids.size()));
+                // Each sync reports a location at most once
+                if (!changedIDs.add(id)) {
+                    continue;
+                }
+                if (random.nextInt(3) == 0) {
+                    removed.add(id);
+                    current.remove(id);
+                } else {
+                    Location location = createLocation(id, 54 + random.nextDouble() * 2, -3 + random.nextDouble() * 3);
+                    updated.add(location);
+                    current.put(id, location);
+                }
+            }
+            index = index.withChanges(updated, removed);
+
+            SpatialIndex rebuilt = new SpatialIndex(new ArrayList<>(current.values()));
+            for (int query = 0; query < 10; query++) {
+                double latitude = 54 + random.nextDouble() * 2;
+                double longitude = -3 + random.nextDouble() * 3;
+                double radius = random.nextDouble() * 50000;
+                List<Location> found = index.withinRadius(latitude, longitude, radius);
+                assertEquals(idsOf(rebuilt.withinRadius(latitude, longitude, radius)), idsOf(found));
+                assertEquals(idsOf(found).size(), found.size());
+            }
+            assertEquals(current.size(), index.withinRadius(55, -1.6, Double.POSITIVE_INFINITY).size());
+        }
+    }
+
+    private static Set<String> idsOf(List<Location> locations) {
+        Set<String> ids = new HashSet<>();
+        for (Location location : locations) {
+            ids.add(location.getId());
+        }
+        return ids;
+    }
+
+    private static Location createLocation(String id, double latitude, double longitude) {
+        return new Location(id, "Castle", 1800, 0, "Castle", "Summary", latitude, longitude, 0, "", "report" + id);
+    }
+}